@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput and allocation rate of JsonConverter and of the
+ * TaskRepository operations over generated datasets of tasks.
+ * <p>
+ * Each benchmark runs a number of warmup iterations followed by measured
+ * iterations of fixed duration, in which its operation is called repeatedly.
+ * Allocation is read from the allocation counter of the benchmark thread, so
+ * it only includes the memory allocated by the operation itself.
+ * <p>
+ * The repository benchmarks use the storage engine selected with the
+ * "tasktracker.storage" system property, and keep their files under
+ * src/main/resources relative to the working directory, so they must be run
+ * from a directory without tasks.
+ */
+public class TaskBenchmark {
+    private static final int[] DEFAULT_SIZES = {1_000, 100_000, 1_000_000};
+    private static final int WARMUP_ITERATIONS =
+            Integer.getInteger("bench.warmup", 3);
+    private static final int MEASURED_ITERATIONS =
+            Integer.getInteger("bench.iterations", 5);
+    private static final long ITERATION_MILLIS =
+            Long.getLong("bench.time", 1000);
+    // Only benchmarks whose name contains this text are run
+    private static final String FILTER = System.getProperty("bench.filter", "");
+
+    // Directory of the store, which the benchmarks own entirely, since the
+    // storage engines keep snapshots, indexes, archives and lists there too
+    private static final Path RESOURCES_PATH = Path.of("src/main/resources");
+    // Number of distinct objects the single-task benchmarks cycle through
+    private static final int SAMPLE_SIZE = 4096;
+    private static final String[] WORDS = {"write", "review", "deploy",
+            "report", "fix", "test", "call", "plan", "release", "migrate",
+            "the", "a", "new", "old", "server", "client", "database", "docs",
+            "\"urgent\"", "backlog"};
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean)
+                    ManagementFactory.getThreadMXBean();
+    private static final PrintStream OUT = System.out;
+
+    /**
+     * An operation whose throughput is measured.
+     */
+    private interface Operation {
+
+        /**
+         * Runs the operation once.
+         *
+         * @param invocation The number of the invocation within the current
+         *                   iteration, starting at 0.
+         * @throws Exception If the operation fails.
+         */
+        void run(int invocation) throws Exception;
+    }
+
+    /**
+     * Work done before each iteration, which is not measured.
+     */
+    private interface Setup {
+
+        /**
+         * Prepares the next iteration.
+         *
+         * @throws Exception If the preparation fails.
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs the benchmarks over datasets of the provided sizes.
+     *
+     * @param args Dataset sizes, or none to use 1k, 100k and 1M tasks.
+     * @throws Exception If a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        if (Files.exists(RESOURCES_PATH)) {
+            try (Stream<Path> files = Files.list(RESOURCES_PATH)) {
+                if (files.findAny().isPresent()) {
+                    OUT.println("ERROR: " + RESOURCES_PATH + " is not " +
+                            "empty. Run the benchmarks from a directory " +
+                            "without tasks.");
+                    return;
+                }
+            }
+        }
+        Files.createDirectories(RESOURCES_PATH);
+
+        // Repository operations print confirmations, which are discarded
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        OUT.printf("%-20s %10s %14s %14s %12s%n", "Benchmark", "Tasks",
+                "ops/s", "B/op", "MB/s alloc");
+        try {
+            for (int size : sizes) {
+                runConverterBenchmarks(size);
+                runRepositoryBenchmarks(size);
+            }
+        } finally {
+            deleteStore();
+        }
+    }
+
+    /**
+     * Runs the JsonConverter benchmarks.
+     *
+     * @param size The number of tasks in the dataset.
+     * @throws Exception If a benchmark fails.
+     */
+    private static void runConverterBenchmarks(int size) throws Exception {
+        List<Task> tasks = generateTasks(size);
+        String json = JsonConverter.tasksToJsonArray(tasks);
+        String[] objects = new String[Math.min(size, SAMPLE_SIZE)];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = JsonConverter.taskToJsonObject(tasks.get(i));
+        }
+
+        measure("jsonArrayToTasks", size, null, Integer.MAX_VALUE,
+                invocation -> JsonConverter.jsonArrayToTasks(json));
+        measure("tasksToJsonArray", size, null, Integer.MAX_VALUE,
+                invocation -> JsonConverter.tasksToJsonArray(tasks));
+        WritableByteChannel discard =
+                Channels.newChannel(OutputStream.nullOutputStream());
+        measure("writeJsonArray", size, null, Integer.MAX_VALUE,
+                invocation -> JsonConverter.tasksToJsonArray(tasks, discard));
+        measure("taskToJsonObject", size, null, Integer.MAX_VALUE,
+                invocation -> JsonConverter.taskToJsonObject(
+                        tasks.get(invocation % size)));
+        measure("jsonObjectToTask", size, null, Integer.MAX_VALUE,
+                invocation -> JsonConverter.jsonObjectToTask(
+                        objects[invocation % objects.length]));
+    }
+
+    /**
+     * Runs the TaskRepository benchmarks, each one over a freshly stored
+     * dataset.
+     *
+     * @param size The number of tasks in the dataset.
+     * @throws Exception If a benchmark fails.
+     */
+    private static void runRepositoryBenchmarks(int size) throws Exception {
+        List<Task> tasks = generateTasks(size);
+        TaskRepository[] repository = new TaskRepository[1];
+        Setup loadOnce = () -> {
+            if (repository[0] == null) {
+                repository[0] = createRepository(tasks);
+            }
+        };
+        // Deletions use up the dataset, so it is restored before each iteration
+        Setup reload = () -> {
+            closeRepository(repository);
+            repository[0] = createRepository(tasks);
+        };
+
+        measure("addTask", size, loadOnce, Integer.MAX_VALUE,
+                invocation -> repository[0].addTask("Benchmark task"));
+        closeRepository(repository);
+
+        TaskStatus[] statuses = TaskStatus.values();
+        measure("markTask", size, loadOnce, Integer.MAX_VALUE,
+                invocation -> repository[0].markTask(invocation % size + 1,
+                        statuses[invocation % statuses.length]));
+        closeRepository(repository);
+
+        measure("deleteTask", size, reload, size,
+                invocation -> repository[0].deleteTask(invocation + 1));
+        closeRepository(repository);
+
+        measure("listTasks", size, loadOnce, Integer.MAX_VALUE,
+                invocation -> repository[0].listTasks(new TaskQuery(),
+                        TaskPrinter.Format.TEXT));
+        closeRepository(repository);
+    }
+
+    /**
+     * Runs the warmup and measured iterations of a benchmark and prints the
+     * average results of the measured ones.
+     *
+     * @param name      The benchmark name.
+     * @param size      The number of tasks in the dataset.
+     * @param setup     The work done before each iteration, or null.
+     * @param limit     The maximum number of invocations per iteration.
+     * @param operation The measured operation.
+     * @throws Exception If the benchmark fails.
+     */
+    private static void measure(String name, int size, Setup setup, int limit,
+                                Operation operation) throws Exception {
+        if (!name.contains(FILTER)) {
+            return;
+        }
+
+        long totalInvocations = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int iteration = 0;
+             iteration < WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++) {
+            if (setup != null) {
+                setup.run();
+            }
+
+            long deadline = System.nanoTime() + ITERATION_MILLIS * 1_000_000;
+            long startBytes = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            int invocations = 0;
+            long now = start;
+            while (invocations < limit && now < deadline) {
+                operation.run(invocations++);
+                now = System.nanoTime();
+            }
+            long bytes = THREADS.getCurrentThreadAllocatedBytes() - startBytes;
+
+            if (iteration >= WARMUP_ITERATIONS) {
+                totalInvocations += invocations;
+                totalNanos += now - start;
+                totalBytes += bytes;
+            }
+        }
+
+        double seconds = totalNanos / 1e9;
+        OUT.printf("%-20s %10d %14.1f %14.0f %12.1f%n", name, size,
+                totalInvocations / seconds,
+                (double) totalBytes / totalInvocations,
+                totalBytes / seconds / (1 << 20));
+    }
+
+    /**
+     * Generates a dataset of tasks with random descriptions and statuses.
+     * The same size always produces the same tasks.
+     *
+     * @param size The number of tasks.
+     * @return The tasks, with IDs from 1 to the size.
+     */
+    private static List<Task> generateTasks(int size) {
+        Random random = new Random(size);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        TaskStatus[] statuses = TaskStatus.values();
+        List<Task> tasks = new ArrayList<>(size);
+        StringBuilder description = new StringBuilder();
+        for (int id = 1; id <= size; id++) {
+            description.setLength(0);
+            int words = 3 + random.nextInt(8);
+            for (int word = 0; word < words; word++) {
+                if (word > 0) {
+                    description.append(' ');
+                }
+                description.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+
+            Task task = new Task(id, description.toString());
+            task.setStatus(statuses[random.nextInt(statuses.length)]);
+            task.setCreatedAt(start.plusSeconds(id * 60L));
+            task.setUpdatedAt(task.getCreatedAt().plusSeconds(
+                    random.nextInt(86_400)));
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Replaces the stored tasks with a dataset and opens a repository on it.
+     *
+     * @param tasks The tasks to store.
+     * @return The repository, with the tasks loaded.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static TaskRepository createRepository(List<Task> tasks)
+            throws IOException {
+        deleteStore();
+        if (System.getProperty("tasktracker.storage", "json")
+                .equalsIgnoreCase("binary")) {
+            ChangeSet changes = new ChangeSet();
+            for (Task task : tasks) {
+                changes.put(task);
+            }
+            try (TaskStorage storage = new BinaryTaskStorage(
+                    RESOURCES_PATH.resolve("tasks.bin"),
+                    RESOURCES_PATH.resolve("tasks.heap"))) {
+                storage.save(changes, null);
+            }
+        } else {
+            Files.writeString(RESOURCES_PATH.resolve("tasks.json"),
+                    JsonConverter.tasksToJsonArray(tasks));
+        }
+        return new TaskRepository();
+    }
+
+    /**
+     * Closes the open repository, if any.
+     *
+     * @param repository The holder of the repository.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void closeRepository(TaskRepository[] repository)
+            throws IOException {
+        if (repository[0] != null) {
+            repository[0].close();
+            repository[0] = null;
+        }
+    }
+
+    /**
+     * Deletes everything in the directory of the store, which was empty when
+     * the benchmarks started, so that no file of any storage engine, index,
+     * archive or task list is left for the next benchmark.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void deleteStore() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(RESOURCES_PATH)) {
+            paths = walk.sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            if (!path.equals(RESOURCES_PATH)) {
+                Files.delete(path);
+            }
+        }
+    }
+}
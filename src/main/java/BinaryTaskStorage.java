@@ -0,0 +1,601 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Stores tasks in a memory-mapped file of fixed-width binary records, with
+ * descriptions kept apart in an append-only string heap file.
+ * <p>
+ * The records file starts with a header holding the number of records, the
+ * next ID of the sequence and the used size of the heap. Records follow in
+ * ascending ID order, since IDs are only ever assigned from the sequence, so
+ * a record is found by binary search. Changing the status of a task rewrites a
+ * few bytes of its record in place; a new description is appended to the heap
+ * and the record is pointed to it. Deleted tasks are marked in their record.
+ * <p>
+ * Compaction writes the remaining records to a new file, which then replaces
+ * the records file, so that a crash leaves either the old records or the
+ * new ones, never records half moved.
+ */
+public class BinaryTaskStorage implements TaskStorage {
+    private static final int MAGIC = 0x54544231; // "TTB1"
+    private static final int VERSION = 1;
+
+    // Header layout
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_COUNT_OFFSET = 8;
+    private static final int NEXT_ID_OFFSET = 12;
+    private static final int HEAP_SIZE_OFFSET = 16;
+
+    // Record layout
+    private static final int RECORD_SIZE = 48;
+    private static final int ID_OFFSET = 0;
+    private static final int STATUS_OFFSET = 4;
+    private static final int CREATED_SECONDS_OFFSET = 8;
+    private static final int UPDATED_SECONDS_OFFSET = 16;
+    private static final int CREATED_NANOS_OFFSET = 24;
+    private static final int UPDATED_NANOS_OFFSET = 28;
+    private static final int DESCRIPTION_OFFSET = 32;
+    private static final int DESCRIPTION_LENGTH_OFFSET = 40;
+
+    private static final byte DELETED = -1;
+    private static final int MIN_CAPACITY = 1024;
+    // Size of the parts the heap is mapped in, since a single mapping cannot
+    // exceed 2 GiB
+    private static final int HEAP_CHUNK_SIZE = 1 << 30;
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private final Path recordsPath;
+    private final Path compactPath;
+    private FileChannel recordsChannel;
+    // Identity of the records file the channel is open on, which compaction
+    // replaces
+    private Object recordsFileKey;
+    private final FileChannel heapChannel;
+    private MappedByteBuffer records;
+    private int recordCount;
+    private int nextId;
+    private long heapSize;
+    // Whether the mapped records hold changes not forced to disk yet
+    private boolean unsynced;
+
+    /**
+     * Creates a BinaryTaskStorage backed by the provided files, which are
+     * created if they do not exist yet.
+     *
+     * @param recordsPath The file of task records.
+     * @param heapPath    The file of task descriptions.
+     * @throws IOException If an I/O error occurs.
+     */
+    public BinaryTaskStorage(Path recordsPath, Path heapPath)
+            throws IOException {
+        this.recordsPath = recordsPath;
+        compactPath = recordsPath.resolveSibling(
+                recordsPath.getFileName() + ".compact");
+        openRecords();
+        heapChannel = FileChannel.open(heapPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Loads every task that is not deleted.
+     *
+     * @param tasks The index to load the tasks into.
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    @Override
+    public void load(TaskIndex tasks) throws IOException {
+        open();
+        ByteBuffer[] heap = mapHeap();
+        for (int record = 0; record < recordCount; record++) {
+            int position = HEADER_SIZE + record * RECORD_SIZE;
+            if (records.get(position + STATUS_OFFSET) != DELETED) {
+                tasks.put(readTask(position, heap));
+            }
+        }
+        tasks.advanceNextId(nextId);
+    }
+
+    /**
+     * Diffs the records against the tasks by ID and update time, which are
+     * read in place, so that only the records of tasks that changed are
+     * decoded along with their descriptions.
+     *
+     * @param tasks All tasks, as last loaded, saved or reloaded.
+     * @return True, since the records always tell which tasks changed.
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    @Override
+    public boolean reload(TaskIndex tasks) throws IOException {
+        open();
+        ByteBuffer[] heap = mapHeap();
+        BitSet liveIds = new BitSet();
+        for (int record = 0; record < recordCount; record++) {
+            int position = HEADER_SIZE + record * RECORD_SIZE;
+            if (records.get(position + STATUS_OFFSET) == DELETED) {
+                continue;
+            }
+            int id = records.getInt(position + ID_OFFSET);
+            liveIds.set(id);
+            if (!tasks.isUpdatedAt(id,
+                    records.getLong(position + UPDATED_SECONDS_OFFSET),
+                    records.getInt(position + UPDATED_NANOS_OFFSET))) {
+                tasks.put(readTask(position, heap));
+            }
+        }
+        tasks.retainAll(liveIds);
+        tasks.advanceNextId(nextId);
+        return true;
+    }
+
+    /**
+     * Loads a single task, decoding only its own record and description.
+     *
+     * @param id The task ID.
+     * @return The task, or null if there is none with that ID.
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    @Override
+    public Task load(int id) throws IOException {
+        open();
+        int record = findRecord(id);
+        if (record < 0) {
+            return null;
+        }
+        int position = HEADER_SIZE + record * RECORD_SIZE;
+        if (records.get(position + STATUS_OFFSET) == DELETED) {
+            return null;
+        }
+        return readTask(position, mapHeap());
+    }
+
+    /**
+     * Loads several tasks, decoding only their own records and descriptions.
+     *
+     * @param ids   The task IDs.
+     * @param tasks The index to load the tasks into.
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    @Override
+    public void load(int[] ids, TaskIndex tasks) throws IOException {
+        for (int id : ids) {
+            Task task = load(id);
+            if (task != null) {
+                tasks.put(task);
+            }
+        }
+    }
+
+    /**
+     * Loads the next ID of the sequence from the header.
+     *
+     * @return The next ID of the sequence.
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    @Override
+    public int loadNextId() throws IOException {
+        open();
+        return nextId;
+    }
+
+    /**
+     * Writes the changes in place: modified tasks overwrite their records, new
+     * tasks are appended and deleted tasks are marked as such. The changes are
+     * only forced to disk by sync().
+     *
+     * @param changes The changes to persist.
+     * @param tasks   All tasks, with the changes already applied, or null if
+     *                only some of the tasks have been loaded.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void save(ChangeSet changes, TaskIndex tasks) throws IOException {
+        open();
+        for (Task task : changes.getSavedTasks()) {
+            nextId = Math.max(nextId, task.getId() + 1);
+            int record = findRecord(task.getId());
+            if (record < 0) {
+                record = appendRecord(task.getId());
+            }
+            writeTask(HEADER_SIZE + record * RECORD_SIZE, task);
+        }
+        for (int id : changes.getDeletedIds()) {
+            // The task may have been added in the same commit
+            nextId = Math.max(nextId, id + 1);
+            int record = findRecord(id);
+            if (record >= 0) {
+                records.put(HEADER_SIZE + record * RECORD_SIZE + STATUS_OFFSET,
+                        DELETED);
+            }
+        }
+
+        records.putInt(RECORD_COUNT_OFFSET, recordCount);
+        records.putInt(NEXT_ID_OFFSET, nextId);
+        records.putLong(HEAP_SIZE_OFFSET, heapSize);
+        unsynced = true;
+    }
+
+    /**
+     * Removes the records of deleted tasks by writing the others, still in
+     * ascending ID order, to a new file that then replaces the records file.
+     * The heap is forced first, so that no record of the new file points to
+     * descriptions that were not written. Descriptions of deleted tasks are
+     * left in the heap, which is only ever appended to.
+     *
+     * @param tasks Not used, since the records are copied as they are.
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    @Override
+    public void compact(TaskIndex tasks) throws IOException {
+        open();
+        heapChannel.force(false);
+        int liveCount = 0;
+        try (FileChannel channel = FileChannel.open(compactPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE +
+                    MIN_CAPACITY * RECORD_SIZE);
+            buffer.put(records.slice(0, HEADER_SIZE));
+            for (int i = 0; i < recordCount; i++) {
+                int position = HEADER_SIZE + i * RECORD_SIZE;
+                if (records.get(position + STATUS_OFFSET) == DELETED) {
+                    continue;
+                }
+                if (!buffer.hasRemaining()) {
+                    write(channel, buffer);
+                }
+                buffer.put(records.slice(position, RECORD_SIZE));
+                liveCount++;
+            }
+            write(channel, buffer);
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES)
+                    .putInt(0, liveCount);
+            while (count.hasRemaining()) {
+                channel.write(count, RECORD_COUNT_OFFSET + count.position());
+            }
+            channel.force(true);
+        }
+        Files.move(compactPath, recordsPath,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        // The changes left in the old mapping were copied and forced along
+        // with the new file
+        unsynced = false;
+        records = null;
+        recordsChannel.close();
+        openRecords();
+    }
+
+    /**
+     * Forces the heap and then the mapped records to disk, so that no record
+     * points to descriptions that were not written.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void sync() throws IOException {
+        heapChannel.force(false);
+        if (unsynced) {
+            records.force();
+            unsynced = false;
+        }
+    }
+
+    /**
+     * Unmaps the records file, so that the header is read again and new
+     * records are mapped the next time it is used. Changes not forced to disk
+     * yet are forced first, since sync() can no longer reach the mapping.
+     * The file is opened again if another process replaced it by compacting
+     * it.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void refresh() throws IOException {
+        if (unsynced) {
+            records.force();
+            unsynced = false;
+        }
+        records = null;
+        Object fileKey = Files.readAttributes(recordsPath,
+                BasicFileAttributes.class).fileKey();
+        if (fileKey == null || !fileKey.equals(recordsFileKey)) {
+            recordsChannel.close();
+            openRecords();
+        }
+    }
+
+    /**
+     * Checks whether a compaction was left unfinished, which leaves its new
+     * file behind. The records file itself is still the one from before the
+     * compaction, since it is only replaced once the new file is complete.
+     *
+     * @return True if the new file of an unfinished compaction is left.
+     */
+    @Override
+    public boolean needsRecovery() {
+        return Files.exists(compactPath);
+    }
+
+    /**
+     * Deletes the new file of an unfinished compaction, keeping the records
+     * from before it, which it did not change.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void recover() throws IOException {
+        Files.deleteIfExists(compactPath);
+    }
+
+    /**
+     * Closes the files.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        recordsChannel.close();
+        heapChannel.close();
+    }
+
+    /**
+     * Opens the records file, creating it if it does not exist yet, and
+     * remembers which file it is.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void openRecords() throws IOException {
+        recordsChannel = FileChannel.open(recordsPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        recordsFileKey = Files.readAttributes(recordsPath,
+                BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Writes the content of a buffer at the end of a file and clears it.
+     *
+     * @param channel The file.
+     * @param buffer  The buffer, filled from its start.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps the records file and reads its header, unless it is already
+     * mapped. A new file is initialized with an empty header.
+     *
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    private void open() throws IOException {
+        if (records != null) {
+            return;
+        }
+
+        if (recordsChannel.size() == 0) {
+            map(MIN_CAPACITY);
+            records.putInt(MAGIC_OFFSET, MAGIC);
+            records.putInt(VERSION_OFFSET, VERSION);
+            records.putInt(NEXT_ID_OFFSET, 1);
+            records.force();
+        } else {
+            map((int) ((recordsChannel.size() - HEADER_SIZE) / RECORD_SIZE));
+            if (records.getInt(MAGIC_OFFSET) != MAGIC ||
+                    records.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Not a task records file");
+            }
+        }
+        recordCount = records.getInt(RECORD_COUNT_OFFSET);
+        nextId = records.getInt(NEXT_ID_OFFSET);
+        heapSize = records.getLong(HEAP_SIZE_OFFSET);
+    }
+
+    /**
+     * Maps the used part of the heap, so that descriptions can be read from it
+     * without copying the rest. The heap is mapped in consecutive parts of a
+     * fixed size, the last one possibly shorter.
+     *
+     * @return The mapped parts of the heap.
+     * @throws IOException If an I/O error occurs.
+     */
+    private ByteBuffer[] mapHeap() throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[(int) ((heapSize +
+                HEAP_CHUNK_SIZE - 1) / HEAP_CHUNK_SIZE)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i * HEAP_CHUNK_SIZE;
+            chunks[i] = heapChannel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(HEAP_CHUNK_SIZE, heapSize - start));
+        }
+        return chunks;
+    }
+
+    /**
+     * Reads bytes from the mapped heap, across the parts it is mapped in.
+     *
+     * @param heap   The mapped parts of the heap.
+     * @param offset The offset of the bytes in the heap.
+     * @param bytes  The array to read the bytes into, whole.
+     * @throws IOException If the bytes are beyond the used part of the heap.
+     */
+    private static void readHeap(ByteBuffer[] heap, long offset, byte[] bytes)
+            throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            long position = offset + read;
+            int chunk = (int) (position / HEAP_CHUNK_SIZE);
+            int start = (int) (position % HEAP_CHUNK_SIZE);
+            if (position < 0 || chunk >= heap.length ||
+                    start >= heap[chunk].limit()) {
+                throw new IOException("Description at offset " + offset +
+                        " is beyond the end of the heap");
+            }
+            int length = Math.min(bytes.length - read,
+                    heap[chunk].limit() - start);
+            heap[chunk].get(start, bytes, read, length);
+            read += length;
+        }
+    }
+
+    /**
+     * Maps the records file with room for the provided number of records,
+     * growing the file if needed.
+     *
+     * @param capacity The number of records.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void map(int capacity) throws IOException {
+        records = recordsChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) capacity * RECORD_SIZE);
+    }
+
+    /**
+     * Returns the number of records the current mapping has room for.
+     *
+     * @return The capacity in records.
+     */
+    private int capacity() {
+        return (records.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /**
+     * Finds the record of a task by binary search over the IDs.
+     *
+     * @param id The task ID.
+     * @return The record number, or -1 if there is no record with that ID.
+     */
+    private int findRecord(int id) {
+        int low = 0;
+        int high = recordCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = records.getInt(HEADER_SIZE + middle * RECORD_SIZE +
+                    ID_OFFSET);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a record for a new task at the end of the file, doubling the
+     * mapping if it is full.
+     *
+     * @param id The ID of the new task.
+     * @return The number of the new record.
+     * @throws IOException If an I/O error occurs or the ID is out of order.
+     */
+    private int appendRecord(int id) throws IOException {
+        if (recordCount > 0 && records.getInt(HEADER_SIZE +
+                (recordCount - 1) * RECORD_SIZE + ID_OFFSET) > id) {
+            throw new IOException("Task ID " + id + " is out of order");
+        }
+        if (recordCount == capacity()) {
+            records.force();
+            map(Math.max(MIN_CAPACITY, capacity() * 2));
+        }
+        int position = HEADER_SIZE + recordCount * RECORD_SIZE;
+        records.putInt(position + ID_OFFSET, id);
+        records.putInt(position + DESCRIPTION_LENGTH_OFFSET, -1);
+        return recordCount++;
+    }
+
+    /**
+     * Decodes the task stored in a record.
+     *
+     * @param position The position of the record in the mapping.
+     * @param heap     The mapped parts of the heap of descriptions.
+     * @return The decoded task.
+     * @throws IOException If the description is beyond the end of the heap.
+     */
+    private Task readTask(int position, ByteBuffer[] heap) throws IOException {
+        Task task = new Task();
+        task.setId(records.getInt(position + ID_OFFSET));
+        task.setStatus(STATUSES[records.get(position + STATUS_OFFSET)]);
+        task.setCreatedAt(LocalDateTime.ofEpochSecond(
+                records.getLong(position + CREATED_SECONDS_OFFSET),
+                records.getInt(position + CREATED_NANOS_OFFSET),
+                ZoneOffset.UTC));
+        task.setUpdatedAt(LocalDateTime.ofEpochSecond(
+                records.getLong(position + UPDATED_SECONDS_OFFSET),
+                records.getInt(position + UPDATED_NANOS_OFFSET),
+                ZoneOffset.UTC));
+
+        byte[] description =
+                new byte[records.getInt(position + DESCRIPTION_LENGTH_OFFSET)];
+        readHeap(heap, records.getLong(position + DESCRIPTION_OFFSET),
+                description);
+        task.setDescription(new String(description, StandardCharsets.UTF_8));
+        return task;
+    }
+
+    /**
+     * Writes a task into its record. The description is only appended to the
+     * heap if it differs from the one the record already points to.
+     *
+     * @param position The position of the record in the mapping.
+     * @param task     The task to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeTask(int position, Task task) throws IOException {
+        records.put(position + STATUS_OFFSET,
+                (byte) task.getStatus().ordinal());
+        records.putLong(position + CREATED_SECONDS_OFFSET,
+                task.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+        records.putInt(position + CREATED_NANOS_OFFSET,
+                task.getCreatedAt().getNano());
+        records.putLong(position + UPDATED_SECONDS_OFFSET,
+                task.getUpdatedAt().toEpochSecond(ZoneOffset.UTC));
+        records.putInt(position + UPDATED_NANOS_OFFSET,
+                task.getUpdatedAt().getNano());
+
+        byte[] description =
+                task.getDescription().getBytes(StandardCharsets.UTF_8);
+        int storedLength = records.getInt(position + DESCRIPTION_LENGTH_OFFSET);
+        if (storedLength == description.length) {
+            ByteBuffer stored = ByteBuffer.allocate(storedLength);
+            long storedOffset = records.getLong(position + DESCRIPTION_OFFSET);
+            while (stored.hasRemaining() && heapChannel.read(stored,
+                    storedOffset + stored.position()) >= 0) {
+                // Keep reading until the whole description is in the buffer
+            }
+            if (Arrays.equals(stored.array(), description)) {
+                return;
+            }
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap(description);
+        while (bytes.hasRemaining()) {
+            heapChannel.write(bytes, heapSize + bytes.position());
+        }
+        records.putLong(position + DESCRIPTION_OFFSET, heapSize);
+        records.putInt(position + DESCRIPTION_LENGTH_OFFSET,
+                description.length);
+        heapSize += description.length;
+    }
+}
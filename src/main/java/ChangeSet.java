@@ -0,0 +1,204 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects changes made to tasks so they can be persisted together. Only the
+ * latest change to each task is kept.
+ * <p>
+ * A change can record the base version of its task: the update time the task
+ * had when it was read, before it was changed. It is used to detect whether
+ * another process has changed the same task in the meantime.
+ */
+public class ChangeSet {
+    // Tasks by ID, in their latest state, or null if they were deleted
+    private final Map<Integer, Task> changes = new LinkedHashMap<>();
+    // Base versions by ID, or null for tasks that were added
+    private final Map<Integer, LocalDateTime> baseVersions = new HashMap<>();
+
+    /**
+     * Records that a task was added or modified.
+     *
+     * @param task The task, in its new state.
+     * @return This ChangeSet.
+     */
+    public ChangeSet put(Task task) {
+        changes.put(task.getId(), task);
+        return this;
+    }
+
+    /**
+     * Records that a task was added or modified, along with its base version.
+     * If the task was already changed, the base version of the first change is
+     * kept.
+     *
+     * @param task        The task, in its new state.
+     * @param baseVersion The update time of the task before it was modified,
+     *                    or null if the task was added.
+     * @return This ChangeSet.
+     */
+    public ChangeSet put(Task task, LocalDateTime baseVersion) {
+        setBaseVersion(task.getId(), baseVersion);
+        return put(task);
+    }
+
+    /**
+     * Records that a task was deleted.
+     *
+     * @param id The ID of the deleted task.
+     * @return This ChangeSet.
+     */
+    public ChangeSet delete(int id) {
+        changes.put(id, null);
+        return this;
+    }
+
+    /**
+     * Records that a task was deleted, along with its base version. If the
+     * task was already changed, the base version of the first change is kept.
+     *
+     * @param id          The ID of the deleted task.
+     * @param baseVersion The update time of the task before it was deleted.
+     * @return This ChangeSet.
+     */
+    public ChangeSet delete(int id, LocalDateTime baseVersion) {
+        setBaseVersion(id, baseVersion);
+        return delete(id);
+    }
+
+    /**
+     * Records all the changes of another ChangeSet, which take precedence over
+     * the ones already recorded. Base versions already recorded are kept.
+     *
+     * @param other The ChangeSet to merge.
+     */
+    public void addAll(ChangeSet other) {
+        for (Map.Entry<Integer, LocalDateTime> baseVersion :
+                other.baseVersions.entrySet()) {
+            setBaseVersion(baseVersion.getKey(), baseVersion.getValue());
+        }
+        changes.putAll(other.changes);
+    }
+
+    /**
+     * Discards the change to a task.
+     *
+     * @param id The task ID.
+     */
+    public void remove(int id) {
+        changes.remove(id);
+        baseVersions.remove(id);
+    }
+
+    /**
+     * Discards all recorded changes.
+     */
+    public void clear() {
+        changes.clear();
+        baseVersions.clear();
+    }
+
+    /**
+     * Returns the IDs of all changed tasks, in the order they were first
+     * changed.
+     *
+     * @return The changed IDs.
+     */
+    public List<Integer> getIds() {
+        return new ArrayList<>(changes.keySet());
+    }
+
+    /**
+     * Returns a changed task, in its new state.
+     *
+     * @param id The task ID.
+     * @return The task, or null if it was deleted or not changed.
+     */
+    public Task get(int id) {
+        return changes.get(id);
+    }
+
+    /**
+     * Checks whether a task was added by these changes.
+     *
+     * @param id The task ID.
+     * @return True if the task was added.
+     */
+    public boolean isAdded(int id) {
+        return baseVersions.containsKey(id) && baseVersions.get(id) == null;
+    }
+
+    /**
+     * Returns the base version of a changed task.
+     *
+     * @param id The task ID.
+     * @return The update time of the task before it was changed, or null if
+     * it was added or its base version was not recorded.
+     */
+    public LocalDateTime getBaseVersion(int id) {
+        return baseVersions.get(id);
+    }
+
+    /**
+     * Returns the added or modified tasks, in their new state.
+     *
+     * @return The saved tasks.
+     */
+    public List<Task> getSavedTasks() {
+        List<Task> savedTasks = new ArrayList<>();
+        for (Task task : changes.values()) {
+            if (task != null) {
+                savedTasks.add(task);
+            }
+        }
+        return savedTasks;
+    }
+
+    /**
+     * Returns the IDs of the deleted tasks.
+     *
+     * @return The deleted IDs.
+     */
+    public List<Integer> getDeletedIds() {
+        List<Integer> deletedIds = new ArrayList<>();
+        for (Map.Entry<Integer, Task> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deletedIds.add(change.getKey());
+            }
+        }
+        return deletedIds;
+    }
+
+    /**
+     * Checks whether any change has been recorded.
+     *
+     * @return True if there are no changes.
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Returns the number of tasks changed.
+     *
+     * @return The number of changes.
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * Records the base version of a task, unless one is already recorded.
+     *
+     * @param id          The task ID.
+     * @param baseVersion The base version, or null if the task was added.
+     */
+    private void setBaseVersion(int id, LocalDateTime baseVersion) {
+        if (!baseVersions.containsKey(id)) {
+            baseVersions.put(id, baseVersion);
+        }
+    }
+}
@@ -1,4 +1,20 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Processes and executes commands entered via the command-line.
@@ -8,27 +24,86 @@ public class CommandProcessor {
             "ERROR: Invalid argument(s)";
     private static final String ERROR_INVALID_ID =
             "ERROR: \"%s\" is not a valid ID";
+    private static final String ERROR_INVALID_LIST =
+            "ERROR: \"%s\" is not a valid list name";
     private static final String ERROR_UNKNOWN_COMMAND =
             "ERROR: Command not recognized";
+    private static final String ERROR_PREFIX = "ERROR: ";
+    private static final Pattern RELATIVE_TIME_PATTERN =
+            Pattern.compile("(\\d+)([mhdw])");
+    // Days since their last update after which done tasks are archived
+    private static final int DEFAULT_ARCHIVE_DAYS = 30;
 
-    private final TaskRepository taskRepository;
+    private final TaskRepositoryCache repositories;
+    // Task list the current command is executed on, and its repository
+    private String listName;
+    private TaskRepository taskRepository;
 
     /**
-     * Creates a CommandProcessor and initializes the task repository.
+     * Creates a CommandProcessor with its own cache of task repositories.
      */
     CommandProcessor() {
-        taskRepository = new TaskRepository();
+        this(new TaskRepositoryCache());
     }
 
     /**
-     * Processes a command and executes the corresponding action.
+     * Creates a CommandProcessor that executes commands on the task lists of
+     * an existing cache of task repositories.
+     *
+     * @param repositories The cache of task repositories.
+     */
+    CommandProcessor(TaskRepositoryCache repositories) {
+        this.repositories = repositories;
+    }
+
+    /**
+     * Processes a command and executes the corresponding action, on the task
+     * list selected with a "--list <name>" option, or on the default one.
      *
      * @param args Command-line arguments, where the first element of the array
      *             is the command name and the rest are its arguments.
      */
     public void execute(String[] args) {
-        String command = args[0];
-        String[] arguments = Arrays.copyOfRange(args, 1, args.length);
+        execute(args, TaskRepository.DEFAULT_LIST);
+    }
+
+    /**
+     * Processes a command and executes the corresponding action. The
+     * "--list <name>" option, which any command accepts anywhere among its
+     * arguments, selects the task list it is executed on.
+     *
+     * @param args        Command-line arguments, where the first element of
+     *                    the array is the command name and the rest are its
+     *                    arguments.
+     * @param defaultList The task list used without a "--list" option.
+     */
+    private void execute(String[] args, String defaultList) {
+        List<String> commandArgs = new ArrayList<>(args.length);
+        String list = defaultList;
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].equalsIgnoreCase("--list")) {
+                commandArgs.add(args[i]);
+            } else if (i + 1 == args.length) {
+                System.out.println(ERROR_INVALID_ARGUMENTS +
+                        ". Use: --list <name>");
+                return;
+            } else if (!TaskRepository.isValidListName(args[++i])) {
+                System.out.printf(ERROR_INVALID_LIST + "\n", args[i]);
+                return;
+            } else {
+                list = args[i];
+            }
+        }
+        if (commandArgs.isEmpty()) {
+            System.out.println(ERROR_UNKNOWN_COMMAND);
+            return;
+        }
+        listName = list;
+        taskRepository = repositories.get(list);
+
+        String command = commandArgs.get(0);
+        String[] arguments = commandArgs.subList(1, commandArgs.size())
+                .toArray(new String[0]);
 
         switch (command.toLowerCase()) {
             case "add":
@@ -72,6 +147,9 @@ public class CommandProcessor {
                 Expects one or more arguments: <id1> <id2> ... <idN>.
                  */
                 if (arguments.length >= 1) {
+                    // Persist the changes to all tasks at once
+                    taskRepository.beginBatch();
+                    prefetchTasks(arguments);
                     for (String argument : arguments) {
                         try {
                             int id = Integer.parseInt(argument);
@@ -82,6 +160,7 @@ public class CommandProcessor {
                                     argument);
                         }
                     }
+                    taskRepository.commitBatch();
                 } else {
                     System.out.println(ERROR_INVALID_ARGUMENTS +
                             ". Use: delete <id1> <id2> ... <idN>");
@@ -94,6 +173,9 @@ public class CommandProcessor {
                 Expects one or more arguments: <id1> <id2> ... <idN>.
                  */
                 if (arguments.length >= 1) {
+                    // Persist the changes to all tasks at once
+                    taskRepository.beginBatch();
+                    prefetchTasks(arguments);
                     for (String argument : arguments) {
                         try {
                             int id = Integer.parseInt(argument);
@@ -104,6 +186,7 @@ public class CommandProcessor {
                                     argument);
                         }
                     }
+                    taskRepository.commitBatch();
                 } else {
                     System.out.println(ERROR_INVALID_ARGUMENTS +
                             ". Use: mark-todo <id1> <id2> ... <idN>");
@@ -116,6 +199,9 @@ public class CommandProcessor {
                 Expects one or more arguments: <id1> <id2> ... <idN>.
                  */
                 if (arguments.length >= 1) {
+                    // Persist the changes to all tasks at once
+                    taskRepository.beginBatch();
+                    prefetchTasks(arguments);
                     for (String argument : arguments) {
                         try {
                             int id = Integer.parseInt(argument);
@@ -126,6 +212,7 @@ public class CommandProcessor {
                                     argument);
                         }
                     }
+                    taskRepository.commitBatch();
                 } else {
                     System.out.println(ERROR_INVALID_ARGUMENTS +
                             ". Use: mark-in-progress <id1> <id2> ... <idN>");
@@ -138,6 +225,9 @@ public class CommandProcessor {
                 Expects one or more arguments: <id1> <id2> ... <idN>.
                  */
                 if (arguments.length >= 1) {
+                    // Persist the changes to all tasks at once
+                    taskRepository.beginBatch();
+                    prefetchTasks(arguments);
                     for (String argument : arguments) {
                         try {
                             int id = Integer.parseInt(argument);
@@ -148,6 +238,7 @@ public class CommandProcessor {
                                     argument);
                         }
                     }
+                    taskRepository.commitBatch();
                 } else {
                     System.out.println(ERROR_INVALID_ARGUMENTS +
                             ". Use: mark-done <id1> <id2> ... <idN>");
@@ -157,28 +248,75 @@ public class CommandProcessor {
             case "list":
                 /*
                 Command to list tasks.
-                Expects one optional argument for filtering by status.
-                If no argument is provided, all tasks will be listed.
+                Expects one optional argument for filtering by status,
+                optional "--since" and "--until" times for filtering by update
+                time, or by creation time with "--created", and an optional
+                "--json" flag to print one JSON object per line.
+                Tasks can be sorted with "--sort <id|created|updated>" and
+                "--desc", and paged with "--offset <n>" and "--limit <n>".
+                If no filter is provided, all tasks will be listed.
                  */
-                if (arguments.length == 1) {
-                    switch (arguments[0].toLowerCase()) {
-                        case "todo":
-                            taskRepository.listTasks(TaskStatus.TODO);
-                            break;
-                        case "in-progress":
-                            taskRepository.listTasks(TaskStatus.IN_PROGRESS);
-                            break;
-                        case "done":
-                            taskRepository.listTasks(TaskStatus.DONE);
-                            break;
-                        default:
-                            System.out.println(ERROR_INVALID_ARGUMENTS +
-                                    ". Use: list <todo|in-progress|done>");
-                            break;
-                    }
-                } else {
-                    taskRepository.listTasks();
-                }
+                executeList(arguments);
+                break;
+
+            case "search":
+                /*
+                Command to search tasks by the words in their descriptions.
+                Expects one or more words, and an optional "--json" flag to
+                print one JSON object per line.
+                 */
+                executeSearch(arguments);
+                break;
+
+            case "archive":
+                /*
+                Command to archive done tasks.
+                Expects one optional argument: the time before which tasks
+                must have been last updated to be archived, 30 days ago if
+                not provided.
+                 */
+                executeArchive(arguments);
+                break;
+
+            case "import":
+                /*
+                Command to import tasks from a file.
+                Expects one argument: <file>, and an optional "--csv" flag to
+                read CSV records instead of one JSON object per line, which is
+                implied by a ".csv" extension.
+                 */
+                executeTransfer(arguments, true);
+                break;
+
+            case "export":
+                /*
+                Command to export all tasks.
+                Expects one optional argument: <file>, to which tasks are
+                written instead of the standard output, and an optional
+                "--csv" flag to write CSV records instead of one JSON object
+                per line, which is implied by a ".csv" extension.
+                 */
+                executeTransfer(arguments, false);
+                break;
+
+            case "batch":
+                /*
+                Command to execute many commands at once.
+                Expects one optional argument: <file>, from which commands
+                are read instead of the standard input, and an optional
+                "--commit-every <n>" option to persist changes every <n>
+                commands instead of only at the end.
+                 */
+                executeBatch(arguments);
+                break;
+
+            case "stats":
+                /*
+                Command to display latency metrics and store sizes.
+                Expects an optional "--reset" flag to discard the metrics
+                instead.
+                 */
+                executeStats(arguments);
                 break;
 
             case "help":
@@ -195,7 +333,22 @@ public class CommandProcessor {
                         mark-done <id1> <id2> ... <idN>           - Mark task with given ID as "Done".
                         list                                      - List all tasks.
                         list <todo|in-progress|done>              - List tasks filtered by status.
+                        list ... --since <time> --until <time>    - List tasks updated in a time range.
+                        list ... --created                        - Filter by creation instead of update time.
+                        list ... --sort <id|created|updated>      - Sort tasks by a field, ascending.
+                        list ... --desc                           - Sort tasks in descending order.
+                        list ... --offset <n> --limit <n>         - List only <n> tasks, after skipping <n>.
+                        list ... --json                           - List tasks as one JSON object per line.
+                        search <word1> <word2> ... <wordN>        - Search tasks containing all given words.
+                        archive [<time>]                          - Archive done tasks not updated since given time.
+                        batch [<file>] [--commit-every <n>]       - Execute commands read one per line.
+                        import <file> [--csv]                     - Import tasks from a JSON lines or CSV file.
+                        export [<file>] [--csv]                   - Export all tasks as JSON lines or CSV.
+                        stats [--reset]                           - Display latency metrics and store sizes.
+                        daemon                                    - Keep tasks in memory and serve commands.
+                        daemon stop                               - Stop the running daemon.
                         help                                      - Display this help message.
+                        ... --list <name>                         - Use the named task list instead of the default one.
                         """);
                 break;
 
@@ -204,4 +357,513 @@ public class CommandProcessor {
                 break;
         }
     }
+
+    /**
+     * Executes the list command with the provided arguments.
+     *
+     * @param arguments The arguments of the list command.
+     */
+    private void executeList(String[] arguments) {
+        TaskQuery query = new TaskQuery();
+        TaskPrinter.Format format = TaskPrinter.Format.TEXT;
+        boolean validArguments = true;
+        for (int i = 0; i < arguments.length && validArguments; i++) {
+            String argument = arguments[i].toLowerCase();
+            switch (argument) {
+                case "--json":
+                    format = TaskPrinter.Format.JSON;
+                    break;
+
+                case "--since":
+                case "--until":
+                    LocalDateTime time = i + 1 < arguments.length ?
+                            parseTime(arguments[++i]) : null;
+                    if (time == null) {
+                        validArguments = false;
+                    } else if (argument.equals("--since")) {
+                        query.setSince(time);
+                    } else {
+                        query.setUntil(time);
+                    }
+                    break;
+
+                case "--created":
+                    query.setTimeField(TaskQuery.TimeField.CREATED);
+                    break;
+
+                case "--sort":
+                    TaskQuery.SortField sortField = i + 1 < arguments.length ?
+                            parseSortField(arguments[++i]) : null;
+                    if (sortField == null) {
+                        validArguments = false;
+                    } else {
+                        query.setSortField(sortField);
+                    }
+                    break;
+
+                case "--desc":
+                    query.setDescending(true);
+                    break;
+
+                case "--offset":
+                case "--limit":
+                    int count = i + 1 < arguments.length ?
+                            parseCount(arguments[++i]) : -1;
+                    if (count < 0) {
+                        validArguments = false;
+                    } else if (argument.equals("--offset")) {
+                        query.setOffset(count);
+                    } else {
+                        query.setLimit(count);
+                    }
+                    break;
+
+                default:
+                    TaskStatus status = parseStatus(argument);
+                    if (status != null && query.getStatus() == null) {
+                        query.setStatus(status);
+                    } else {
+                        validArguments = false;
+                    }
+                    break;
+            }
+        }
+
+        // Descending order alone lists the newest tasks first
+        if (query.isDescending() && query.getSortField() == null) {
+            query.setSortField(TaskQuery.SortField.ID);
+        }
+
+        if (validArguments) {
+            taskRepository.listTasks(query, format);
+        } else {
+            System.out.println(ERROR_INVALID_ARGUMENTS +
+                    ". Use: list [todo|in-progress|done] [--since <time>]" +
+                    " [--until <time>] [--created]" +
+                    " [--sort <id|created|updated>] [--desc]" +
+                    " [--offset <n>] [--limit <n>] [--json]");
+        }
+    }
+
+    /**
+     * Loads the tasks whose IDs are the arguments of a command all at once,
+     * so that a command changing many tasks does not read the store once for
+     * each of them. Invalid IDs are skipped here, and reported as the command
+     * goes through its arguments.
+     *
+     * @param arguments The arguments of the command.
+     */
+    private void prefetchTasks(String[] arguments) {
+        int[] ids = new int[arguments.length];
+        int count = 0;
+        for (String argument : arguments) {
+            try {
+                ids[count] = Integer.parseInt(argument);
+                count++;
+            } catch (NumberFormatException e) {
+                // Reported by the command
+            }
+        }
+        taskRepository.prefetchTasks(Arrays.copyOf(ids, count));
+    }
+
+    /**
+     * Executes the search command with the provided arguments.
+     *
+     * @param arguments The arguments of the search command.
+     */
+    private void executeSearch(String[] arguments) {
+        TaskPrinter.Format format = TaskPrinter.Format.TEXT;
+        StringBuilder query = new StringBuilder();
+        for (String argument : arguments) {
+            if (argument.equalsIgnoreCase("--json")) {
+                format = TaskPrinter.Format.JSON;
+            } else {
+                query.append(argument).append(' ');
+            }
+        }
+
+        if (!SearchIndex.tokenize(query.toString()).isEmpty()) {
+            taskRepository.searchTasks(query.toString(), format);
+        } else {
+            System.out.println(ERROR_INVALID_ARGUMENTS +
+                    ". Use: search <word1> <word2> ... <wordN> [--json]");
+        }
+    }
+
+    /**
+     * Executes the archive command with the provided arguments.
+     *
+     * @param arguments The arguments of the archive command.
+     */
+    private void executeArchive(String[] arguments) {
+        LocalDateTime before = arguments.length == 0 ?
+                LocalDateTime.now().minusDays(DEFAULT_ARCHIVE_DAYS) :
+                arguments.length == 1 ? parseTime(arguments[0]) : null;
+
+        if (before != null) {
+            taskRepository.archiveTasks(before);
+        } else {
+            System.out.println(ERROR_INVALID_ARGUMENTS +
+                    ". Use: archive [<time>]");
+        }
+    }
+
+    /**
+     * Executes the stats command with the provided arguments.
+     *
+     * @param arguments The arguments of the stats command.
+     */
+    private void executeStats(String[] arguments) {
+        if (arguments.length == 0) {
+            taskRepository.printStats(false);
+        } else if (arguments.length == 1 &&
+                arguments[0].equalsIgnoreCase("--reset")) {
+            taskRepository.printStats(true);
+        } else {
+            System.out.println(ERROR_INVALID_ARGUMENTS +
+                    ". Use: stats [--reset]");
+        }
+    }
+
+    /**
+     * Executes the import or export command with the provided arguments.
+     *
+     * @param arguments The arguments of the command.
+     * @param isImport  True for the import command, false for export.
+     */
+    private void executeTransfer(String[] arguments, boolean isImport) {
+        TaskPrinter.Format format = TaskPrinter.Format.JSON;
+        String file = null;
+        boolean validArguments = true;
+        for (String argument : arguments) {
+            if (argument.equalsIgnoreCase("--csv")) {
+                format = TaskPrinter.Format.CSV;
+            } else if (file == null) {
+                file = argument;
+            } else {
+                validArguments = false;
+            }
+        }
+
+        Path path = null;
+        if (file != null) {
+            try {
+                path = Path.of(file);
+            } catch (InvalidPathException e) {
+                validArguments = false;
+            }
+            if (file.toLowerCase().endsWith(".csv")) {
+                format = TaskPrinter.Format.CSV;
+            }
+        }
+
+        if (isImport && path != null && validArguments) {
+            taskRepository.importTasks(path, format);
+        } else if (!isImport && validArguments) {
+            taskRepository.exportTasks(path, format);
+        } else {
+            System.out.println(ERROR_INVALID_ARGUMENTS + ". Use: " +
+                    (isImport ? "import <file>" : "export [<file>]") +
+                    " [--csv]");
+        }
+    }
+
+    /**
+     * Executes the batch command with the provided arguments.
+     *
+     * @param arguments The arguments of the batch command.
+     */
+    private void executeBatch(String[] arguments) {
+        String file = null;
+        int commitEvery = 0;
+        boolean validArguments = true;
+        for (int i = 0; i < arguments.length && validArguments; i++) {
+            if (arguments[i].equalsIgnoreCase("--commit-every")) {
+                try {
+                    commitEvery = Integer.parseInt(arguments[++i]);
+                    validArguments = commitEvery > 0;
+                } catch (ArrayIndexOutOfBoundsException |
+                         NumberFormatException e) {
+                    validArguments = false;
+                }
+            } else if (file == null) {
+                file = arguments[i];
+            } else {
+                validArguments = false;
+            }
+        }
+        if (!validArguments) {
+            System.out.println(ERROR_INVALID_ARGUMENTS +
+                    ". Use: batch [<file>] [--commit-every <n>]");
+            return;
+        }
+
+        try (BufferedReader reader = file == null ?
+                new BufferedReader(new InputStreamReader(System.in,
+                        Charset.defaultCharset())) :
+                Files.newBufferedReader(Path.of(file))) {
+            executeBatch(reader, commitEvery, listName);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("ERROR: Failed to read commands: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Executes the commands read from a reader, one per line, within a single
+     * batch of the task repositories, so that tasks are loaded once and their
+     * changes persisted together. Blank lines and lines starting with "#" are
+     * skipped, and a leading "tasktracker" is ignored, so that shell scripts
+     * can be run as they are. Errors are reported along with their line. The
+     * archive and import commands write to the store themselves, so the
+     * batch is committed before each of them, and a new one opened after.
+     *
+     * @param reader      The source of the commands.
+     * @param commitEvery The number of commands after which changes are
+     *                    persisted, or 0 to persist them only at the end.
+     * @param defaultList The task list of commands without a "--list"
+     *                    option.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void executeBatch(BufferedReader reader, int commitEvery,
+                              String defaultList) throws IOException {
+        int lineNumber = 0;
+        int executed = 0;
+        repositories.beginBatch();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                List<String> args;
+                try {
+                    args = splitCommand(line);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("ERROR: Line " + lineNumber + ": " +
+                            e.getMessage());
+                    continue;
+                }
+                if (!args.isEmpty() && args.get(0).equals("tasktracker")) {
+                    args.remove(0);
+                }
+                if (args.isEmpty()) {
+                    continue;
+                }
+
+                // The command follows any leading "--list <name>" options
+                int commandIndex = 0;
+                while (commandIndex + 2 < args.size() &&
+                        args.get(commandIndex).equalsIgnoreCase("--list")) {
+                    commandIndex += 2;
+                }
+                String command = args.get(commandIndex).toLowerCase();
+                if (command.equals("batch") || command.equals("daemon")) {
+                    System.out.println("ERROR: Line " + lineNumber + ": " +
+                            "Command not allowed in a batch");
+                    continue;
+                }
+                // These commit their own changes to the store, so the changes
+                // of the batch so far are committed before them
+                boolean committing = command.equals("archive") ||
+                        command.equals("import");
+                if (committing) {
+                    repositories.commitBatch();
+                }
+                try {
+                    executeLine(args.toArray(new String[0]), lineNumber,
+                            defaultList);
+                } finally {
+                    if (committing) {
+                        repositories.beginBatch();
+                    }
+                }
+                if (commitEvery > 0 && ++executed % commitEvery == 0) {
+                    repositories.commitBatch();
+                    repositories.beginBatch();
+                }
+            }
+        } finally {
+            repositories.commitBatch();
+        }
+    }
+
+    /**
+     * Executes a command of a batch, adding its line number to the errors it
+     * prints. The output is held until the command ends for that purpose.
+     *
+     * @param args        The command and its arguments.
+     * @param lineNumber  The line of the command.
+     * @param defaultList The task list used without a "--list" option.
+     */
+    private void executeLine(String[] args, int lineNumber,
+                             String defaultList) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream standardOutput = System.out;
+        System.setOut(new PrintStream(output, false, Charset.defaultCharset()));
+        try {
+            execute(args, defaultList);
+        } finally {
+            System.out.flush();
+            System.setOut(standardOutput);
+        }
+
+        String text = output.toString(Charset.defaultCharset());
+        if (!text.contains(ERROR_PREFIX)) {
+            System.out.print(text);
+            return;
+        }
+        for (String outputLine : text.split("\n")) {
+            if (outputLine.startsWith(ERROR_PREFIX)) {
+                outputLine = ERROR_PREFIX + "Line " + lineNumber + ": " +
+                        outputLine.substring(ERROR_PREFIX.length());
+            }
+            System.out.println(outputLine);
+        }
+    }
+
+    /**
+     * Splits a command line into arguments at whitespace, as a shell does.
+     * Text within single quotes is taken as is, while within double quotes,
+     * or outside quotes, a backslash escapes the next character. A "#" at the
+     * start of an argument starts a comment.
+     *
+     * @param line The command line.
+     * @return The arguments, which are empty for a blank or comment line.
+     * @throws IllegalArgumentException If a quote is not closed.
+     */
+    private static List<String> splitCommand(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char character = line.charAt(i);
+            if (quote == '\'') {
+                if (character == '\'') {
+                    quote = 0;
+                } else {
+                    arg.append(character);
+                }
+            } else if (character == '\\' && i + 1 < line.length()) {
+                arg.append(line.charAt(++i));
+                inArg = true;
+            } else if (quote == '"') {
+                if (character == '"') {
+                    quote = 0;
+                } else {
+                    arg.append(character);
+                }
+            } else if (character == '\'' || character == '"') {
+                quote = character;
+                inArg = true;
+            } else if (Character.isWhitespace(character)) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else if (character == '#' && !inArg) {
+                break;
+            } else {
+                arg.append(character);
+                inArg = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unclosed quote");
+        }
+        if (inArg) {
+            args.add(arg.toString());
+        }
+        return args;
+    }
+
+    /**
+     * Parses the name of a task status, as used in the command-line.
+     *
+     * @param name The status name: "todo", "in-progress" or "done".
+     * @return The matching TaskStatus, or null if the name is not valid.
+     */
+    private static TaskStatus parseStatus(String name) {
+        switch (name.toLowerCase()) {
+            case "todo":
+                return TaskStatus.TODO;
+            case "in-progress":
+                return TaskStatus.IN_PROGRESS;
+            case "done":
+                return TaskStatus.DONE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Parses the name of a field tasks can be sorted by, as used in the
+     * command-line. The names used in JSON are accepted too.
+     *
+     * @param name The field name: "id", "created" or "updated".
+     * @return The matching SortField, or null if the name is not valid.
+     */
+    private static TaskQuery.SortField parseSortField(String name) {
+        switch (name.toLowerCase()) {
+            case "id":
+                return TaskQuery.SortField.ID;
+            case "created":
+            case "createdat":
+                return TaskQuery.SortField.CREATED;
+            case "updated":
+            case "updatedat":
+                return TaskQuery.SortField.UPDATED;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Parses a number of tasks, as given to "--offset" and "--limit".
+     *
+     * @param text The text to parse.
+     * @return The number, or -1 if the text is not a number of at least 0.
+     */
+    private static int parseCount(String text) {
+        try {
+            return Math.max(-1, Integer.parseInt(text));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a point in time given as a date ("2024-05-01"), a date and time
+     * ("2024-05-01T14:30"), or a duration before now: a number followed by
+     * "m" for minutes, "h" for hours, "d" for days or "w" for weeks ("2h").
+     *
+     * @param text The text to parse.
+     * @return The point in time, or null if the text is not valid.
+     */
+    private static LocalDateTime parseTime(String text) {
+        Matcher matcher = RELATIVE_TIME_PATTERN.matcher(text.toLowerCase());
+        try {
+            if (matcher.matches()) {
+                long amount = Long.parseLong(matcher.group(1));
+                switch (matcher.group(2)) {
+                    case "m":
+                        return LocalDateTime.now().minusMinutes(amount);
+                    case "h":
+                        return LocalDateTime.now().minusHours(amount);
+                    case "d":
+                        return LocalDateTime.now().minusDays(amount);
+                    default:
+                        return LocalDateTime.now().minusWeeks(amount);
+                }
+            } else if (text.toUpperCase().contains("T")) {
+                return LocalDateTime.parse(text);
+            } else {
+                return LocalDate.parse(text).atStartOfDay();
+            }
+        } catch (DateTimeException | ArithmeticException |
+                 NumberFormatException e) {
+            return null;
+        }
+    }
 }
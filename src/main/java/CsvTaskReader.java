@@ -0,0 +1,241 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads tasks from CSV records, one per line after a header line that names
+ * the columns, as written by TaskPrinter. Fields may be enclosed in double
+ * quotes, in which case they can hold commas, line breaks and doubled quotes.
+ * <p>
+ * Columns are matched by the names used in JSON, so they can come in any
+ * order. Unknown columns are ignored, and only "description" is required;
+ * fields of the other columns are left unset when missing or empty.
+ */
+public class CsvTaskReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    // Fields of the current record, and the line it started on
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private int line = 1;
+    private int recordLine;
+
+    // Position of each known column in a record, or -1 if it is missing
+    private int descriptionColumn = -1;
+    private int statusColumn = -1;
+    private int createdAtColumn = -1;
+    private int updatedAtColumn = -1;
+
+    /**
+     * Creates a CsvTaskReader that reads from the provided character stream,
+     * and reads the header line.
+     *
+     * @param reader Source of the CSV records.
+     * @throws IOException If an I/O error occurs, or the header is missing or
+     *                     has no "description" column.
+     */
+    public CsvTaskReader(Reader reader) throws IOException {
+        this.reader = reader;
+        if (!readRecord()) {
+            throw new IOException("Missing CSV header");
+        }
+
+        for (int column = 0; column < fields.size(); column++) {
+            switch (fields.get(column).trim()) {
+                case "description":
+                    descriptionColumn = column;
+                    break;
+                case "status":
+                    statusColumn = column;
+                    break;
+                case "createdAt":
+                    createdAtColumn = column;
+                    break;
+                case "updatedAt":
+                    updatedAtColumn = column;
+                    break;
+                default:
+                    // Includes "id", since tasks are given new IDs anyway
+                    break;
+            }
+        }
+        if (descriptionColumn == -1) {
+            throw new IOException("Missing \"description\" column in CSV " +
+                    "header");
+        }
+    }
+
+    /**
+     * Reads the next record and converts it to a Task, skipping blank lines.
+     *
+     * @return The next Task, or null if the end of the input was reached.
+     * @throws IOException              If an I/O error occurs or a quoted
+     *                                  field is not closed.
+     * @throws IllegalArgumentException If the record has no description, or
+     *                                  an invalid status or timestamp. The
+     *                                  following records can still be read.
+     */
+    public Task next() throws IOException {
+        do {
+            if (!readRecord()) {
+                return null;
+            }
+        } while (fields.size() == 1 && fields.get(0).isEmpty());
+
+        String description = getField(descriptionColumn);
+        if (description == null) {
+            throw new IllegalArgumentException("Missing description");
+        }
+        Task task = new Task();
+        task.setDescription(description);
+
+        String status = getField(statusColumn);
+        if (status != null) {
+            try {
+                task.setStatus(TaskStatus.valueOf(status));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown task status \"" +
+                        status + "\"");
+            }
+        }
+        task.setCreatedAt(toDateTime(getField(createdAtColumn)));
+        task.setUpdatedAt(toDateTime(getField(updatedAtColumn)));
+        return task;
+    }
+
+    /**
+     * Returns the line on which the last record read started, counting the
+     * header as line 1.
+     *
+     * @return The line number.
+     */
+    public int getLineNumber() {
+        return recordLine;
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Returns a field of the current record.
+     *
+     * @param column The position of the column, or -1 if it is missing.
+     * @return The field, or null if it is missing or empty.
+     */
+    private String getField(int column) {
+        if (column == -1 || column >= fields.size() ||
+                fields.get(column).isEmpty()) {
+            return null;
+        }
+        return fields.get(column);
+    }
+
+    /**
+     * Converts a field to a LocalDateTime.
+     *
+     * @param text The field, or null if it is missing.
+     * @return The parsed timestamp, or null if the field is missing.
+     * @throws IllegalArgumentException If the field is not a valid timestamp.
+     */
+    private static LocalDateTime toDateTime(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(text.trim());
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid timestamp \"" + text +
+                    "\"");
+        }
+    }
+
+    /**
+     * Reads the fields of the next record. A record ends at a line break that
+     * is not within quotes, or at the end of the input.
+     *
+     * @return False if the end of the input was reached before the record.
+     * @throws IOException If an I/O error occurs or a quoted field is not
+     *                     closed.
+     */
+    private boolean readRecord() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        if (peek() == -1) {
+            return false;
+        }
+
+        recordLine = line;
+        boolean quoted = false;
+        while (true) {
+            int character = peek();
+            position++;
+            if (quoted) {
+                if (character == -1) {
+                    throw new IOException("Unclosed quoted field on line " +
+                            recordLine);
+                } else if (character != '"') {
+                    if (character == '\n') {
+                        line++;
+                    }
+                    field.append((char) character);
+                } else if (peek() == '"') {
+                    // A doubled quote stands for a single one
+                    position++;
+                    field.append('"');
+                } else {
+                    quoted = false;
+                }
+            } else if (character == '"') {
+                quoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (character == '\n' || character == -1) {
+                line++;
+                fields.add(field.toString());
+                return true;
+            } else if (character != '\r') {
+                field.append((char) character);
+            }
+        }
+    }
+
+    /**
+     * Returns the next character without consuming it, refilling the buffer if
+     * needed.
+     *
+     * @return The next character, or -1 if the end of the input was reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int peek() throws IOException {
+        if (position >= limit) {
+            position = 0;
+            limit = 0;
+            int read;
+            do {
+                read = reader.read(buffer, 0, BUFFER_SIZE);
+            } while (read == 0);
+            if (read == -1) {
+                return -1;
+            }
+            limit = read;
+        }
+        return buffer[position];
+    }
+}
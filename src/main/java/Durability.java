@@ -0,0 +1,12 @@
+/**
+ * Represents how committed changes are forced to the storage device, trading
+ * the latency of commits against the changes that can be lost in a crash.
+ */
+public enum Durability {
+    // Every commit is forced to the device before it is confirmed
+    SYNC,
+    // Commits are forced together by the flusher, once per flush interval
+    GROUP,
+    // Commits are left to the operating system to write back
+    BUFFERED
+}
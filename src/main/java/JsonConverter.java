@@ -1,4 +1,7 @@
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,13 +18,25 @@ public class JsonConverter {
      * @return JSON object string representation of the Task.
      */
     public static String taskToJsonObject(Task task) {
-        return "{" +
-                "\"id\":" + task.getId() + "," +
-                "\"description\":\"" + task.getDescription() + "\"," +
-                "\"status\":\"" + task.getStatus() + "\"," +
-                "\"createdAt\":\"" + task.getCreatedAt() + "\"," +
-                "\"updatedAt\":\"" + task.getUpdatedAt() + "\"" +
-                "}";
+        return appendJsonObject(new StringBuilder(128), task).toString();
+    }
+
+    /**
+     * Appends the JSON object representation of a Task object to a builder.
+     *
+     * @param builder The builder to append to.
+     * @param task    Task object to convert.
+     * @return The builder.
+     */
+    public static StringBuilder appendJsonObject(StringBuilder builder,
+                                                 Task task) {
+        builder.append("{\"id\":").append(task.getId())
+                .append(",\"description\":\"");
+        appendEscaped(builder, task.getDescription());
+        return builder.append("\",\"status\":\"").append(task.getStatus())
+                .append("\",\"createdAt\":\"").append(task.getCreatedAt())
+                .append("\",\"updatedAt\":\"").append(task.getUpdatedAt())
+                .append("\"}");
     }
 
     /**
@@ -36,7 +51,7 @@ public class JsonConverter {
         // Iterate through the list of tasks to construct JSON array
         for (int i = 0; i < tasks.size(); i++) {
             Task task = tasks.get(i);
-            jsonArray.append(taskToJsonObject(task));
+            appendJsonObject(jsonArray, task);
 
             if (i < tasks.size() - 1) {
                 jsonArray.append(",");
@@ -47,72 +62,41 @@ public class JsonConverter {
     }
 
     /**
-     * Converts a JSON object string to a Task object.
+     * Writes a JSON array of Task objects to a channel as UTF-8, one object
+     * per line, through a buffer of fixed size.
+     *
+     * @param tasks   The Task objects to write.
+     * @param channel The destination of the JSON array.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void tasksToJsonArray(Iterable<Task> tasks,
+                                        WritableByteChannel channel)
+            throws IOException {
+        JsonTaskWriter writer = new JsonTaskWriter(channel);
+        for (Task task : tasks) {
+            writer.write(task);
+        }
+        writer.finish();
+    }
+
+    /**
+     * Converts a JSON object string to a Task object. Nothing but whitespace
+     * may follow the object.
      *
      * @param jsonObject JSON object string representing a single Task object.
      * @return Task object parsed from the JSON object string.
+     * @throws IllegalArgumentException If the JSON object is malformed.
      */
     public static Task jsonObjectToTask(String jsonObject) {
-        // Remove enclosing braces
-        jsonObject = jsonObject.trim().substring(1, jsonObject.length() - 1);
-
-        /*
-        Split JSON object into key-value pairs, preserving commas within
-        strings. This allows commas in task descriptions. This is achieved by
-        splitting only on ',' outside quotes.
-         */
-        List<String> keyValuePairs = new ArrayList<>();
-        StringBuilder currentKeyValuePair = new StringBuilder();
-        boolean insideString = false;
-        for (char character : jsonObject.toCharArray()) {
-            if (character == '\"') {
-                insideString = !insideString;
-            }
-            if (character == ',' && !insideString) {
-                keyValuePairs.add(currentKeyValuePair.toString().trim());
-                currentKeyValuePair.setLength(0);
-            } else {
-                currentKeyValuePair.append(character);
-            }
-        }
-        keyValuePairs.add(currentKeyValuePair.toString().trim());
-
-        /*
-        Split key-value pairs into key and value, preserving colons within
-        strings. This allows colons in task descriptions. This is achieved by
-        splitting on the first occurrence of ':'.
-        */
-        Task task = new Task();
-        for (String keyValuePair : keyValuePairs) {
-            keyValuePair = keyValuePair.replace("\"", "");
-            int colonIndex = keyValuePair.indexOf(":");
-            String key = keyValuePair.substring(0, colonIndex).trim();
-            String value = keyValuePair.substring(colonIndex + 1).trim();
-
-            /*
-            Populate Task fields using values parsed from corresponding JSON
-            key-value pairs.
-             */
-            switch (key) {
-                case "id":
-                    task.setId(Integer.parseInt(value));
-                    break;
-                case "description":
-                    task.setDescription(value);
-                    break;
-                case "status":
-                    task.setStatus(TaskStatus.valueOf(value));
-                    break;
-                case "createdAt":
-                    task.setCreatedAt(LocalDateTime.parse(value));
-                    break;
-                case "updatedAt":
-                    task.setUpdatedAt(LocalDateTime.parse(value));
-                    break;
-            }
+        try {
+            JsonTaskReader reader = new JsonTaskReader(
+                    new StringReader(jsonObject));
+            Task task = reader.readTask();
+            reader.expectEnd();
+            return task;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
         }
-
-        return task;
     }
 
     /**
@@ -120,23 +104,81 @@ public class JsonConverter {
      *
      * @param jsonArray JSON array string representing a list of Task objects.
      * @return List of Task objects parsed from the JSON array string.
+     * @throws IllegalArgumentException If the JSON array is malformed.
      */
     public static List<Task> jsonArrayToTasks(String jsonArray) {
-        // Remove enclosing brackets
-        jsonArray = jsonArray.trim().substring(1, jsonArray.length() - 1).trim();
-
-        /*
-        Split JSON array string into an actual array of JSON object strings,
-        ignoring spaces in between.
-         */
-        String[] jsonObjects = jsonArray.split("(?<=})\\s*,\\s*(?=\\{)");
+        try {
+            return jsonArrayToTasks(new StringReader(jsonArray));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
 
-        // Convert each JSON object string to a Task object and add to the list
+    /**
+     * Reads a JSON array of Task objects from a character stream in a single
+     * pass. An empty stream is read as an empty array.
+     *
+     * @param reader Source of the JSON array.
+     * @return List of Task objects parsed from the JSON array.
+     * @throws IOException If an I/O error occurs or the JSON is malformed.
+     */
+    public static List<Task> jsonArrayToTasks(Reader reader)
+            throws IOException {
+        JsonTaskReader taskReader = new JsonTaskReader(reader);
         List<Task> tasks = new ArrayList<>();
-        for (String jsonObject : jsonObjects) {
-            tasks.add(jsonObjectToTask(jsonObject));
+        Task task;
+        while ((task = taskReader.next()) != null) {
+            tasks.add(task);
         }
+        return tasks;
+    }
 
+    /**
+     * Reads the tasks of a part of a JSON array from a character stream. The
+     * part may start at the opening bracket or at any element, and may end
+     * after any element, so that an array split at object boundaries can be
+     * read in parallel.
+     *
+     * @param reader Source of the part of the JSON array.
+     * @return List of Task objects parsed from the part of the array.
+     * @throws IOException If an I/O error occurs or the JSON is malformed.
+     */
+    public static List<Task> jsonArrayPartToTasks(Reader reader)
+            throws IOException {
+        JsonTaskReader taskReader = new JsonTaskReader(reader);
+        List<Task> tasks = new ArrayList<>();
+        Task task;
+        while ((task = taskReader.nextElement()) != null) {
+            tasks.add(task);
+        }
         return tasks;
     }
+
+    /**
+     * Appends a string to a builder, escaped so it can be written as the
+     * contents of a JSON string.
+     *
+     * @param builder The builder to append to.
+     * @param string  The string to escape.
+     */
+    private static void appendEscaped(StringBuilder builder, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char character = string.charAt(i);
+            if (character == '"') {
+                builder.append("\\\"");
+            } else if (character == '\\') {
+                builder.append("\\\\");
+            } else if (character == '\n') {
+                builder.append("\\n");
+            } else if (character == '\r') {
+                builder.append("\\r");
+            } else if (character == '\t') {
+                builder.append("\\t");
+            } else if (character < 0x20) {
+                builder.append(String.format("\\u%04x", (int) character));
+            } else {
+                builder.append(character);
+            }
+        }
+    }
 }
@@ -0,0 +1,487 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Reads Task objects from a JSON array in a single pass over its characters.
+ * Tasks are built directly from the input as it is read, so no intermediate
+ * string is ever created for the whole array or for individual objects.
+ */
+public class JsonTaskReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long offset;
+
+    // Reused for every key and string value read
+    private final StringBuilder text = new StringBuilder();
+
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * Creates a JsonTaskReader that reads from the provided source.
+     *
+     * @param reader The source of JSON characters.
+     */
+    public JsonTaskReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next task from a JSON array of tasks. An empty input is read as
+     * an empty array.
+     *
+     * @return The next Task, or null if the end of the array has been reached.
+     * @throws IOException If an I/O error occurs or the JSON is malformed.
+     */
+    public Task next() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        int character = skipWhitespace();
+        if (!started) {
+            started = true;
+            if (character == -1) {
+                finished = true;
+                return null;
+            }
+            expect('[');
+            if (skipWhitespace() == ']') {
+                position++;
+                finished = true;
+                return null;
+            }
+        } else if (character == ']') {
+            position++;
+            finished = true;
+            return null;
+        } else {
+            expect(',');
+        }
+
+        return readTask();
+    }
+
+    /**
+     * Reads the next task from a part of a JSON array, which may start at the
+     * opening bracket or at any element, and may end after any element or its
+     * comma, as when an array is split into parts that are read in parallel.
+     *
+     * @return The next Task, or null if the end of the part has been reached.
+     * @throws IOException If an I/O error occurs or the JSON is malformed.
+     */
+    public Task nextElement() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        int character = skipWhitespace();
+        if (!started) {
+            started = true;
+            if (character == '[') {
+                position++;
+                character = skipWhitespace();
+            }
+        } else if (character == ',') {
+            position++;
+            character = skipWhitespace();
+        }
+        if (character == -1 || character == ']') {
+            finished = true;
+            return null;
+        }
+
+        return readTask();
+    }
+
+    /**
+     * Reads a single JSON object and converts it to a Task. Unknown keys are
+     * ignored.
+     *
+     * @return The Task parsed from the JSON object.
+     * @throws IOException If an I/O error occurs or the JSON is malformed.
+     */
+    public Task readTask() throws IOException {
+        skipWhitespace();
+        expect('{');
+
+        Task task = new Task();
+        if (skipWhitespace() == '}') {
+            position++;
+            return task;
+        }
+
+        while (true) {
+            skipWhitespace();
+            readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            // Populate Task fields using the values of the matching keys
+            if (isText("id")) {
+                task.setId(readInt());
+            } else if (isText("description")) {
+                readString();
+                task.setDescription(text.toString());
+            } else if (isText("status")) {
+                readString();
+                task.setStatus(toStatus());
+            } else if (isText("createdAt")) {
+                readString();
+                task.setCreatedAt(toDateTime());
+            } else if (isText("updatedAt")) {
+                readString();
+                task.setUpdatedAt(toDateTime());
+            } else {
+                skipValue();
+            }
+
+            int character = skipWhitespace();
+            position++;
+            if (character == '}') {
+                return task;
+            } else if (character != ',') {
+                throw malformed("',' or '}'", character);
+            }
+        }
+    }
+
+    /**
+     * Checks that nothing but whitespace follows what was read, as when a
+     * single JSON object was expected.
+     *
+     * @throws IOException If an I/O error occurs or other characters follow.
+     */
+    public void expectEnd() throws IOException {
+        int character = skipWhitespace();
+        if (character != -1) {
+            throw malformed("end of input", character);
+        }
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Returns the next character without consuming it, refilling the buffer if
+     * needed.
+     *
+     * @return The next character, or -1 if the end of the input was reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            offset += limit;
+            position = 0;
+            limit = 0;
+            int read;
+            do {
+                read = reader.read(buffer, 0, BUFFER_SIZE);
+            } while (read == 0);
+            if (read == -1) {
+                return -1;
+            }
+            limit = read;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Consumes and returns the next character.
+     *
+     * @return The next character.
+     * @throws IOException If an I/O error occurs or the input ended.
+     */
+    private char read() throws IOException {
+        int character = peek();
+        if (character == -1) {
+            throw malformed("more input", -1);
+        }
+        position++;
+        return (char) character;
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it.
+     *
+     * @return The next non-whitespace character, or -1 at the end of input.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int skipWhitespace() throws IOException {
+        int character = peek();
+        while (character == ' ' || character == '\n' || character == '\r' ||
+                character == '\t') {
+            position++;
+            character = peek();
+        }
+        return character;
+    }
+
+    /**
+     * Consumes the next character, which must be the expected one.
+     *
+     * @param expected The expected character.
+     * @throws IOException If an I/O error occurs or another character is found.
+     */
+    private void expect(char expected) throws IOException {
+        int character = peek();
+        if (character != expected) {
+            throw malformed("'" + expected + "'", character);
+        }
+        position++;
+    }
+
+    /**
+     * Reads a JSON string into the shared text buffer, resolving escape
+     * sequences.
+     *
+     * @throws IOException If an I/O error occurs or the string is malformed.
+     */
+    private void readString() throws IOException {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            // Copy runs of plain characters straight from the buffer
+            int start = position;
+            while (position < limit) {
+                char character = buffer[position];
+                if (character == '"' || character == '\\') {
+                    break;
+                }
+                position++;
+            }
+            text.append(buffer, start, position - start);
+            if (position == limit) {
+                read();
+                position--;
+                continue;
+            }
+
+            char character = read();
+            if (character == '"') {
+                return;
+            }
+            char escaped = read();
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    text.append(escaped);
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit == -1) {
+                            throw malformed("a hexadecimal digit", -1);
+                        }
+                        code = code * 16 + digit;
+                    }
+                    text.append((char) code);
+                    break;
+                default:
+                    throw malformed("an escape sequence", escaped);
+            }
+        }
+    }
+
+    /**
+     * Reads a JSON number as an int, without creating a string for it.
+     *
+     * @return The parsed integer.
+     * @throws IOException If an I/O error occurs or the number is malformed.
+     */
+    private int readInt() throws IOException {
+        boolean negative = peek() == '-';
+        if (negative) {
+            position++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        int character = peek();
+        while (character >= '0' && character <= '9') {
+            value = value * 10 + (character - '0');
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw malformed("an integer ID", character);
+            }
+            position++;
+            digits++;
+            character = peek();
+        }
+        if (digits == 0) {
+            throw malformed("an integer ID", character);
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw malformed("an integer ID", character);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Skips a JSON value of any type, including nested objects and arrays.
+     *
+     * @throws IOException If an I/O error occurs or the value is malformed.
+     */
+    private void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int character = skipWhitespace();
+            if (character == '"') {
+                readString();
+            } else if (character == '{' || character == '[') {
+                position++;
+                depth++;
+            } else if (character == '}' || character == ']') {
+                position++;
+                depth--;
+            } else if (character == ',' || character == ':') {
+                position++;
+            } else if (character == -1) {
+                throw malformed("a value", character);
+            } else {
+                // Numbers and literals end at the next delimiter
+                while (character != -1 && character != ',' &&
+                        character != '}' && character != ']' &&
+                        !Character.isWhitespace(character)) {
+                    position++;
+                    character = peek();
+                }
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Checks whether the shared text buffer holds the provided string.
+     *
+     * @param string The string to compare with.
+     * @return True if the contents are equal.
+     */
+    private boolean isText(String string) {
+        return string.contentEquals(text);
+    }
+
+    /**
+     * Converts the shared text buffer to a TaskStatus.
+     *
+     * @return The matching TaskStatus.
+     * @throws IOException If the text is not a status name.
+     */
+    private TaskStatus toStatus() throws IOException {
+        for (TaskStatus status : STATUSES) {
+            if (isText(status.name())) {
+                return status;
+            }
+        }
+        throw new IOException("Unknown task status \"" + text + "\"");
+    }
+
+    /**
+     * Converts the shared text buffer to a LocalDateTime. The ISO-8601 layout
+     * written by LocalDateTime.toString() is parsed by hand, since it is by far
+     * the most common; anything else goes through LocalDateTime.parse().
+     *
+     * @return The parsed timestamp.
+     * @throws IOException If the text is not a valid timestamp.
+     */
+    private LocalDateTime toDateTime() throws IOException {
+        try {
+            int length = text.length();
+            boolean isIsoLayout = (length == 16 || length == 19 ||
+                    (length >= 21 && length <= 29)) &&
+                    text.charAt(4) == '-' && text.charAt(7) == '-' &&
+                    text.charAt(10) == 'T' && text.charAt(13) == ':' &&
+                    (length == 16 || text.charAt(16) == ':') &&
+                    (length <= 19 || text.charAt(19) == '.');
+            if (isIsoLayout) {
+                int second = length > 16 ? digits(17, 2) : 0;
+                int nano = 0;
+                if (length > 19) {
+                    nano = digits(20, length - 20);
+                    for (int i = length - 20; i < 9 && nano >= 0; i++) {
+                        nano *= 10;
+                    }
+                }
+                int year = digits(0, 4);
+                int month = digits(5, 2);
+                int day = digits(8, 2);
+                int hour = digits(11, 2);
+                int minute = digits(14, 2);
+                if ((year | month | day | hour | minute | second | nano) >= 0) {
+                    return LocalDateTime.of(year, month, day, hour, minute,
+                            second, nano);
+                }
+            }
+            return LocalDateTime.parse(text);
+        } catch (DateTimeException e) {
+            throw new IOException("Invalid timestamp \"" + text + "\"", e);
+        }
+    }
+
+    /**
+     * Parses a run of decimal digits from the shared text buffer.
+     *
+     * @param start  Index of the first digit.
+     * @param length Number of digits.
+     * @return The parsed value, or -1 if a non-digit character was found.
+     */
+    private int digits(int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            char character = text.charAt(i);
+            if (character < '0' || character > '9') {
+                return -1;
+            }
+            value = value * 10 + (character - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Creates an exception describing malformed input at the current position.
+     *
+     * @param expected  Description of what was expected.
+     * @param character The character found instead, or -1 for end of input.
+     * @return The exception to throw.
+     */
+    private IOException malformed(String expected, int character) {
+        String found = character == -1 ? "end of input" :
+                "'" + (char) character + "'";
+        return new IOException("Malformed JSON at character " +
+                (offset + position) + ": expected " + expected + " but found " +
+                found);
+    }
+}
@@ -0,0 +1,670 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Stores tasks as a JSON array in a snapshot file, plus a TaskLog with the
+ * changes made since the snapshot was written. Single tasks are read from the
+ * snapshot through a TaskOffsetIndex, without parsing the rest, and large
+ * snapshots are split at the object boundaries it records to be parsed in
+ * parallel.
+ * <p>
+ * The snapshot and the log offset that the loaded tasks reflect are
+ * remembered, so that changes by other processes are reloaded by replaying
+ * only the records they appended, as long as the snapshot was not replaced.
+ * <p>
+ * Each snapshot is checksummed as it is written, and replaced atomically. The
+ * snapshot it replaces is kept, along with the log of the changes made since
+ * it, and a SnapshotManifest records the checksums of both. A process that
+ * dies while replacing the snapshot leaves the manifest marked as not clean,
+ * so that the next one recovers the tasks from whichever snapshot is intact.
+ */
+public class JsonTaskStorage implements TaskStorage {
+    // Smallest log size at which it is folded into a new snapshot
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+    // Smallest snapshot size at which it is parsed in parallel
+    private static final long PARALLEL_LOAD_SIZE = 16 << 20;
+    // Smallest size of the parts a snapshot is split into to parse it
+    private static final long MIN_PART_SIZE = 1 << 20;
+
+    private final Path filePath;
+    private final Path indexPath;
+    private final Path manifestPath;
+    private final TaskLog taskLog;
+    // Snapshot and log kept from before the last compaction, to fall back on,
+    // and the snapshot written before it replaces the current one
+    private final Path previousPath;
+    private final Path previousLogPath;
+    private final Path nextPath;
+    // Identity of the snapshot and log offset the loaded tasks reflect, or
+    // -1 if they may not reflect the stored ones
+    private Object snapshotKey;
+    private long replayedSize = -1;
+
+    /**
+     * Creates a JsonTaskStorage backed by the provided files, which do not need
+     * to exist yet.
+     *
+     * @param filePath     The JSON snapshot file.
+     * @param logPath      The log file.
+     * @param indexPath    The sidecar file of the offset index of the
+     *                     snapshot.
+     * @param manifestPath The sidecar file with the checksums of the
+     *                     snapshots.
+     * @throws IOException If an I/O error occurs.
+     */
+    public JsonTaskStorage(Path filePath, Path logPath, Path indexPath,
+                           Path manifestPath) throws IOException {
+        this.filePath = filePath;
+        this.indexPath = indexPath;
+        this.manifestPath = manifestPath;
+        this.taskLog = new TaskLog(logPath);
+        previousPath = filePath.resolveSibling(
+                filePath.getFileName() + ".prev");
+        previousLogPath = logPath.resolveSibling(
+                logPath.getFileName() + ".prev");
+        nextPath = filePath.resolveSibling(filePath.getFileName() + ".next");
+    }
+
+    /**
+     * Loads tasks from the JSON file and replays the changes logged since it
+     * was written. If the file does not exist, it is created.
+     *
+     * @param tasks The index to load the tasks into.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    @Override
+    public void load(TaskIndex tasks) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (!Files.exists(filePath)) {
+            Files.createFile(filePath);
+        }
+        // Read first, so that a snapshot replaced meanwhile is not taken for
+        // the one that was loaded
+        snapshotKey = readSnapshotKey();
+        if (parallelism > 1 &&
+                Files.size(filePath) >= PARALLEL_LOAD_SIZE) {
+            loadInParallel(tasks, parallelism);
+        } else {
+            // Store each task as it is parsed, without keeping them as objects
+            try (JsonTaskReader reader = new JsonTaskReader(
+                    Files.newBufferedReader(filePath))) {
+                Task task;
+                while ((task = reader.next()) != null) {
+                    tasks.put(task);
+                }
+            }
+        }
+        replayedSize = taskLog.replay(tasks);
+    }
+
+    /**
+     * Replays the records appended to the log since the tasks were loaded,
+     * saved or last reloaded. This is only possible while the snapshot they
+     * were loaded from has not been replaced by compaction.
+     *
+     * @param tasks All tasks, as last loaded, saved or reloaded.
+     * @return False if the tasks must be loaded again.
+     * @throws IOException If an I/O error occurs or a record is malformed.
+     */
+    @Override
+    public boolean reload(TaskIndex tasks) throws IOException {
+        if (replayedSize < 0 ||
+                !Objects.equals(readSnapshotKey(), snapshotKey)) {
+            return false;
+        }
+        long end = taskLog.replay(tasks, replayedSize);
+        if (end < 0) {
+            return false;
+        }
+        replayedSize = end;
+        return true;
+    }
+
+    /**
+     * Loads a single task. The log is checked first, since it holds the latest
+     * changes; otherwise the task is parsed from its offset in the snapshot.
+     *
+     * @param id The task ID.
+     * @return The task, or null if there is none with that ID.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    @Override
+    public Task load(int id) throws IOException {
+        TaskIndex loadedTasks = new TaskIndex();
+        load(new int[] {id}, loadedTasks);
+        return loadedTasks.get(id);
+    }
+
+    /**
+     * Loads several tasks, checking the log for all of them in a single pass
+     * and parsing the others from their offsets in the snapshot.
+     *
+     * @param ids   The task IDs.
+     * @param tasks The index to load the tasks into.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    @Override
+    public void load(int[] ids, TaskIndex tasks) throws IOException {
+        Set<Integer> wantedIds = new HashSet<>();
+        for (int id : ids) {
+            wantedIds.add(id);
+        }
+        TaskIndex loggedTasks = new TaskIndex();
+        Set<Integer> loggedIds = taskLog.replay(wantedIds, loggedTasks);
+        for (Task task : loggedTasks) {
+            tasks.put(task);
+        }
+
+        TaskOffsetIndex index = openIndex();
+        try (FileChannel channel = FileChannel.open(filePath)) {
+            for (int id : ids) {
+                long offset = loggedIds.contains(id) ? -1 : index.find(id);
+                if (offset >= 0) {
+                    channel.position(offset);
+                    Reader reader = Channels.newReader(channel,
+                            StandardCharsets.UTF_8);
+                    tasks.put(new JsonTaskReader(reader).readTask());
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the next ID of the sequence from the offset index of the snapshot
+     * and the log.
+     *
+     * @return The next ID of the sequence.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    @Override
+    public int loadNextId() throws IOException {
+        return Math.max(openIndex().getMaxId() + 1, taskLog.getNextId());
+    }
+
+    /**
+     * Appends the changes to the log, folding it into a new snapshot if it has
+     * grown too large.
+     *
+     * @param changes The changes to persist.
+     * @param tasks   All tasks, with the changes already applied, or null if
+     *                only some of the tasks have been loaded.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void save(ChangeSet changes, TaskIndex tasks) throws IOException {
+        long start = taskLog.append(changes);
+        // The tasks only still reflect the store if nothing was appended since
+        replayedSize = tasks != null && start == replayedSize ?
+                taskLog.size() : -1;
+        compactIfNeeded(tasks);
+    }
+
+    /**
+     * Folds the log into a new snapshot, which leaves out deleted tasks. The
+     * new log starts with the sequence of IDs, which the snapshot alone cannot
+     * restore. The replaced snapshot and log are kept as the previous ones.
+     *
+     * @param tasks All tasks, or null if only some of the tasks have been
+     *              loaded.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void compact(TaskIndex tasks) throws IOException {
+        // Only some tasks may be in memory, so read them all first
+        boolean loadedTasks = tasks == null;
+        if (loadedTasks) {
+            tasks = new TaskIndex();
+            load(tasks);
+        }
+        saveTasks(tasks);
+        Files.deleteIfExists(indexPath);
+        snapshotKey = readSnapshotKey();
+        replayedSize = loadedTasks ? -1 : taskLog.size();
+    }
+
+    /**
+     * Forces the log to the storage device. Snapshots are forced as they are
+     * written, whatever the durability, since a snapshot that is lost also
+     * loses the changes that were folded into it.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void sync() throws IOException {
+        taskLog.sync();
+    }
+
+    /**
+     * Reads the size of the log again, since other processes may have
+     * appended to it.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void refresh() throws IOException {
+        taskLog.refresh();
+    }
+
+    /**
+     * Checks whether the manifest shows that the snapshot may not be intact:
+     * if it is not marked as clean, or if the snapshot does not have the size
+     * and modification time recorded for it. This only reads the manifest
+     * and the attributes of the snapshot, so a clean startup does not read
+     * the snapshot twice. Without a manifest, as for snapshots written before
+     * there were any, the snapshot is trusted as it is.
+     *
+     * @return True if the snapshot must be verified before it is loaded.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public boolean needsRecovery() throws IOException {
+        SnapshotManifest manifest;
+        try {
+            manifest = SnapshotManifest.read(manifestPath);
+        } catch (IOException e) {
+            return true;
+        }
+        return manifest != null && (!manifest.isClean() ||
+                manifest.getCurrent() == null ||
+                !manifest.getCurrent().isUnchanged(filePath));
+    }
+
+    /**
+     * Loads the tasks from the most recent snapshot whose checksum matches
+     * the manifest, replays the previous log and the current one on top of
+     * it, and writes them as a new snapshot. Replaying a log on a snapshot
+     * that already holds its changes leaves the tasks the same, so both logs
+     * are replayed whichever snapshot is loaded. A snapshot that was only
+     * touched, and is still intact, is recorded with its new modification
+     * time instead. A damaged snapshot is kept under another name.
+     *
+     * @throws IOException If an I/O error occurs or no snapshot is intact.
+     */
+    @Override
+    public void recover() throws IOException {
+        SnapshotManifest manifest = readManifest();
+        List<Path> paths = new ArrayList<>();
+        List<SnapshotManifest.Snapshot> snapshots = new ArrayList<>();
+        if (manifest == null) {
+            // Nothing to verify the snapshot against
+            paths.add(filePath);
+            snapshots.add(null);
+        } else if (!manifest.isClean()) {
+            // The snapshot is either the next one or the current one, unless
+            // it is damaged
+            paths.addAll(List.of(filePath, filePath, nextPath, previousPath));
+            snapshots.addAll(Arrays.asList(manifest.getNext(),
+                    manifest.getCurrent(), manifest.getNext(),
+                    manifest.getCurrent()));
+        } else {
+            paths.addAll(List.of(filePath, previousPath));
+            snapshots.addAll(Arrays.asList(manifest.getCurrent(),
+                    manifest.getPrevious()));
+        }
+
+        Path source = null;
+        SnapshotManifest.Snapshot sourceSnapshot = null;
+        for (int i = 0; i < paths.size() && source == null; i++) {
+            SnapshotManifest.Snapshot snapshot = snapshots.get(i);
+            if (snapshot == null ? manifest == null &&
+                    Files.exists(paths.get(i)) :
+                    snapshot.isValid(paths.get(i))) {
+                source = paths.get(i);
+                sourceSnapshot = snapshot;
+            }
+        }
+        if (source == null) {
+            throw new IOException("No intact snapshot of the tasks is left " +
+                    "to recover them from");
+        }
+        if (manifest != null && manifest.isClean() && source == filePath) {
+            new SnapshotManifest(true, SnapshotManifest.Snapshot.of(filePath,
+                    SnapshotManifest.checksum(filePath)),
+                    manifest.getPrevious(), null).write(manifestPath);
+            return;
+        }
+
+        TaskIndex tasks = new TaskIndex();
+        try (JsonTaskReader reader = new JsonTaskReader(
+                Files.newBufferedReader(source))) {
+            Task task;
+            while ((task = reader.next()) != null) {
+                tasks.put(task);
+            }
+        }
+        new TaskLog(previousLogPath).replay(tasks);
+        taskLog.refresh();
+        taskLog.replay(tasks);
+
+        if (source == filePath && sourceSnapshot != null) {
+            // Recorded as the current one, so that it is kept as the previous
+            new SnapshotManifest(false, sourceSnapshot, null, null)
+                    .write(manifestPath);
+        } else if (source != filePath && Files.exists(filePath)) {
+            // The snapshot is checked first, so it is damaged if not used
+            Path damagedPath = filePath.resolveSibling(
+                    filePath.getFileName() + ".damaged");
+            Files.move(filePath, damagedPath,
+                    StandardCopyOption.REPLACE_EXISTING);
+            System.err.println("ERROR: " + filePath + " is damaged, and was " +
+                    "moved to " + damagedPath.getFileName() + ". Tasks were " +
+                    "recovered from " + source.getFileName());
+        }
+        saveTasks(tasks);
+        Files.deleteIfExists(indexPath);
+    }
+
+    /**
+     * Does nothing, since no file is kept open.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns what identifies the current snapshot file, which changes when
+     * it is replaced: its file key where the file system has one, or else its
+     * size and modification time.
+     *
+     * @return The identity of the snapshot, or null if there is none.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Object readSnapshotKey() throws IOException {
+        if (!Files.exists(filePath)) {
+            return null;
+        }
+        BasicFileAttributes attributes =
+                Files.readAttributes(filePath, BasicFileAttributes.class);
+        if (attributes.fileKey() != null) {
+            return attributes.fileKey();
+        }
+        return attributes.size() + "@" + attributes.lastModifiedTime();
+    }
+
+    /**
+     * Replaces the snapshot with one of the provided tasks, and starts a new
+     * log. The tasks are encoded as they are written, so that memory use does
+     * not grow with the file, and checksummed on the way.
+     * <p>
+     * The new snapshot is written and forced under its own name, and the
+     * manifest marked as not clean while it is put in place. The current
+     * snapshot is linked as the previous one, and the new one moved over it,
+     * so that processes reading it see it replaced at once. Only then is the
+     * log moved aside as the previous one, since replaying it again on the new
+     * snapshot is harmless. A crash at any point leaves intact either the new
+     * snapshot or the current one, along with the logs to replay on top of
+     * it, and recover() tells which through the manifest.
+     *
+     * @param tasks The tasks to save.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void saveTasks(TaskIndex tasks) throws IOException {
+        SnapshotManifest manifest = readManifest();
+        SnapshotManifest.Snapshot current =
+                manifest == null ? null : manifest.getCurrent();
+        try {
+            CRC32C checksum = new CRC32C();
+            try (FileChannel channel = FileChannel.open(nextPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                JsonConverter.tasksToJsonArray(tasks,
+                        checksummed(channel, checksum));
+                channel.force(false);
+            }
+            SnapshotManifest.Snapshot next = SnapshotManifest.Snapshot.of(
+                    nextPath, (int) checksum.getValue());
+            new SnapshotManifest(false, current,
+                    manifest == null ? null : manifest.getPrevious(), next)
+                    .write(manifestPath);
+
+            // Only a snapshot with a known checksum is worth falling back on
+            boolean keepCurrent = current != null &&
+                    current.isUnchanged(filePath);
+            Files.deleteIfExists(previousPath);
+            if (keepCurrent) {
+                linkOrCopy(filePath, previousPath);
+            }
+            Files.move(nextPath, filePath,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            SnapshotManifest.syncDirectory(
+                    filePath.toAbsolutePath().getParent());
+            if (keepCurrent) {
+                taskLog.rotate(previousLogPath, tasks.getNextId());
+            } else {
+                Files.deleteIfExists(previousLogPath);
+                taskLog.reset(tasks.getNextId());
+            }
+            new SnapshotManifest(true, next, keepCurrent ? current : null,
+                    null).write(manifestPath);
+        } finally {
+            Files.deleteIfExists(nextPath);
+        }
+    }
+
+    /**
+     * Reads the manifest, if it can be read.
+     *
+     * @return The manifest, or null if there is none or it is damaged.
+     */
+    private SnapshotManifest readManifest() {
+        try {
+            return SnapshotManifest.read(manifestPath);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Makes a file available under a second name, as a hard link where the
+     * file system supports them, or else as a copy.
+     *
+     * @param source The file.
+     * @param target The second name, which must not exist.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void linkOrCopy(Path source, Path target)
+            throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target);
+        }
+    }
+
+    /**
+     * Wraps a channel so that the bytes written through it are added to a
+     * checksum.
+     *
+     * @param channel  The channel.
+     * @param checksum The checksum.
+     * @return The wrapping channel.
+     */
+    private static WritableByteChannel checksummed(WritableByteChannel channel,
+                                                   Checksum checksum) {
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) throws IOException {
+                ByteBuffer written = source.duplicate();
+                int count = channel.write(source);
+                written.limit(written.position() + count);
+                checksum.update(written);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Folds the log into a new snapshot once it has grown past a quarter of
+     * the size of the JSON file, so that rewriting the file stays proportional
+     * to the number of changes made since the last time.
+     *
+     * @param tasks All tasks, or null if only some have been loaded.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void compactIfNeeded(TaskIndex tasks) throws IOException {
+        long threshold = Math.max(MIN_COMPACTION_SIZE,
+                Files.size(filePath) / 4);
+        if (taskLog.size() > threshold) {
+            compact(tasks);
+        }
+    }
+
+    /**
+     * Loads the tasks of the snapshot by splitting it into parts at the object
+     * boundaries found by the offset index, and parsing the parts on the
+     * common fork-join pool. The tasks are put in the index in the order of
+     * the parts, so they keep the order of the snapshot, as when it is parsed
+     * sequentially. There are several parts per thread, so that threads which
+     * finish early can take over the remaining parts.
+     *
+     * @param tasks       The index to load the tasks into.
+     * @param parallelism The number of threads of the pool.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    private void loadInParallel(TaskIndex tasks, int parallelism)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath)) {
+            long size = channel.size();
+            int parts = (int) Math.min(parallelism * 4L, size / MIN_PART_SIZE);
+            long[] splits = openIndex().splitOffsets(parts);
+
+            long[] starts = new long[splits.length + 1];
+            long[] ends = new long[splits.length + 1];
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = i == 0 ? 0 : splits[i - 1];
+                ends[i] = i == splits.length ? size : splits[i];
+            }
+            List<List<Task>> results = new ArrayList<>(
+                    Collections.nCopies(starts.length, null));
+            try {
+                ForkJoinPool.commonPool().invoke(new ParseParts(channel,
+                        starts, ends, results, 0, starts.length));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            for (List<Task> part : results) {
+                for (Task task : part) {
+                    tasks.put(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a range of the parts of a snapshot, splitting the range in two
+     * until a single part is left.
+     */
+    private static class ParseParts extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] starts;
+        private final long[] ends;
+        private final List<List<Task>> results;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a ParseParts for a range of the parts of a snapshot.
+         *
+         * @param channel The open snapshot, which is only read by position.
+         * @param starts  The offsets at which the parts start.
+         * @param ends    The offsets at which the parts end.
+         * @param results The tasks of each part, set as it is parsed.
+         * @param from    The first part of the range, inclusive.
+         * @param to      The last part of the range, exclusive.
+         */
+        private ParseParts(FileChannel channel, long[] starts, long[] ends,
+                           List<List<Task>> results, int from, int to) {
+            this.channel = channel;
+            this.starts = starts;
+            this.ends = ends;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Parses the parts of the range.
+         *
+         * @throws UncheckedIOException If an I/O error occurs or the JSON is
+         *                              malformed.
+         */
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseParts(channel, starts, ends, results, from,
+                                middle),
+                        new ParseParts(channel, starts, ends, results, middle,
+                                to));
+                return;
+            }
+
+            try {
+                ByteBuffer bytes = ByteBuffer.allocate(
+                        (int) (ends[from] - starts[from]));
+                while (bytes.hasRemaining() && channel.read(bytes,
+                        starts[from] + bytes.position()) >= 0) {
+                    // Keep reading until the whole part is in the buffer
+                }
+                Reader reader = new InputStreamReader(new ByteArrayInputStream(
+                        bytes.array(), 0, bytes.position()),
+                        StandardCharsets.UTF_8);
+                results.set(from, JsonConverter.jsonArrayPartToTasks(reader));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Opens the offset index of the snapshot, creating an empty snapshot if
+     * there is none yet.
+     *
+     * @return The offset index.
+     * @throws IOException If an I/O error occurs or the snapshot is malformed.
+     */
+    private TaskOffsetIndex openIndex() throws IOException {
+        if (!Files.exists(filePath)) {
+            Files.createFile(filePath);
+        }
+        return TaskOffsetIndex.open(filePath, indexPath);
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Writes Task objects as a JSON array, encoding them straight into a reused
+ * buffer of UTF-8 bytes that is written to a channel whenever it fills up.
+ * No string is ever created for the array or for individual objects, so
+ * memory use does not depend on the number of tasks.
+ * <p>
+ * Each object is written on a line of its own. Descriptions are escaped, so
+ * line breaks only ever occur between objects.
+ */
+public class JsonTaskWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Room for the longest encoding of a single character or number
+    private static final int MAX_TOKEN_SIZE = 20;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long count;
+
+    /**
+     * Creates a JsonTaskWriter that writes to the provided channel.
+     *
+     * @param channel The destination of the JSON bytes.
+     */
+    public JsonTaskWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Writes the next task of the array.
+     *
+     * @param task The task to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(Task task) throws IOException {
+        putAscii(count == 0 ? "[\n{\"id\":" : ",\n{\"id\":");
+        putLong(task.getId());
+        putAscii(",\"description\":\"");
+        putEscaped(task.getDescription());
+        putAscii("\",\"status\":\"");
+        putAscii(task.getStatus().name());
+        putAscii("\",\"createdAt\":\"");
+        putDateTime(task.getCreatedAt());
+        putAscii("\",\"updatedAt\":\"");
+        putDateTime(task.getUpdatedAt());
+        putAscii("\"}");
+        count++;
+    }
+
+    /**
+     * Ends the array and writes all buffered bytes to the channel. The
+     * channel itself is left open.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void finish() throws IOException {
+        putAscii(count == 0 ? "[]\n" : "\n]\n");
+        flush();
+    }
+
+    /**
+     * Writes all buffered bytes to the channel.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Makes room in the buffer for the provided number of bytes, flushing it
+     * if needed.
+     *
+     * @param size The number of bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void reserve(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    /**
+     * Puts a string that only contains ASCII characters and needs no escaping.
+     *
+     * @param string The string.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void putAscii(String string) throws IOException {
+        for (int i = 0; i < string.length(); i++) {
+            reserve(1);
+            buffer.put((byte) string.charAt(i));
+        }
+    }
+
+    /**
+     * Puts a decimal number.
+     *
+     * @param value The number.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void putLong(long value) throws IOException {
+        reserve(MAX_TOKEN_SIZE);
+        if (value == Long.MIN_VALUE) {
+            putAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+
+        // Write the digits from the end, then move past them
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Puts a number with a fixed number of digits, padded with zeros.
+     *
+     * @param value  The number, which is not negative.
+     * @param digits The number of digits.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void putPadded(int value, int digits) throws IOException {
+        reserve(digits);
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Puts a date and time in the same ISO-8601 format as
+     * LocalDateTime.toString(), without creating a string for it.
+     *
+     * @param dateTime The date and time.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void putDateTime(LocalDateTime dateTime) throws IOException {
+        if (dateTime.getYear() < 0 || dateTime.getYear() > 9999) {
+            putAscii(dateTime.toString());
+            return;
+        }
+
+        putPadded(dateTime.getYear(), 4);
+        putAscii("-");
+        putPadded(dateTime.getMonthValue(), 2);
+        putAscii("-");
+        putPadded(dateTime.getDayOfMonth(), 2);
+        putAscii("T");
+        putPadded(dateTime.getHour(), 2);
+        putAscii(":");
+        putPadded(dateTime.getMinute(), 2);
+
+        int second = dateTime.getSecond();
+        int nano = dateTime.getNano();
+        if (second > 0 || nano > 0) {
+            putAscii(":");
+            putPadded(second, 2);
+            if (nano > 0) {
+                putAscii(".");
+                if (nano % 1_000_000 == 0) {
+                    putPadded(nano / 1_000_000, 3);
+                } else if (nano % 1_000 == 0) {
+                    putPadded(nano / 1_000, 6);
+                } else {
+                    putPadded(nano, 9);
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts a string encoded as UTF-8 and escaped so it can be written as the
+     * contents of a JSON string. Unpaired surrogates are written as "?", as
+     * String.getBytes() does.
+     *
+     * @param string The string.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void putEscaped(String string) throws IOException {
+        for (int i = 0; i < string.length(); i++) {
+            reserve(MAX_TOKEN_SIZE);
+            char character = string.charAt(i);
+            if (character == '"' || character == '\\') {
+                buffer.put((byte) '\\').put((byte) character);
+            } else if (character == '\n') {
+                buffer.put((byte) '\\').put((byte) 'n');
+            } else if (character == '\r') {
+                buffer.put((byte) '\\').put((byte) 'r');
+            } else if (character == '\t') {
+                buffer.put((byte) '\\').put((byte) 't');
+            } else if (character < 0x20) {
+                buffer.put((byte) '\\').put((byte) 'u').put((byte) '0')
+                        .put((byte) '0').put(HEX_DIGITS[character >> 4])
+                        .put(HEX_DIGITS[character & 0xF]);
+            } else if (character < 0x80) {
+                buffer.put((byte) character);
+            } else if (character < 0x800) {
+                buffer.put((byte) (0xC0 | character >> 6))
+                        .put((byte) (0x80 | character & 0x3F));
+            } else if (Character.isHighSurrogate(character) &&
+                    i + 1 < string.length() &&
+                    Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(character,
+                        string.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18))
+                        .put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+                        .put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(character)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | character >> 12))
+                        .put((byte) (0x80 | character >> 6 & 0x3F))
+                        .put((byte) (0x80 | character & 0x3F));
+            }
+        }
+    }
+}
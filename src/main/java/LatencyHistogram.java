@@ -0,0 +1,186 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, with buckets that grow
+ * exponentially: every power of two is split into eight buckets of equal
+ * width, so any value is known to within 12.5%. Values are recorded with a few
+ * atomic operations and no allocation, so threads can record into the same
+ * histogram without locking.
+ */
+public class LatencyHistogram {
+    // Buckets per power of two, as a power of two itself
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Enough buckets for any positive long
+    private static final int BUCKET_COUNT =
+            (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds. Negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this one.
+     *
+     * @param other The histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            long bucketCount = other.counts.get(bucket);
+            if (bucketCount != 0) {
+                counts.addAndGet(bucket, bucketCount);
+            }
+        }
+        count.addAndGet(other.count.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * Discards all recorded values.
+     */
+    public void clear() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return The largest value in nanoseconds, or 0 if there is none.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns an estimate of a percentile of the recorded values: the middle
+     * of the bucket that holds it, but never more than the largest value.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The estimate in nanoseconds, or 0 if there are no values.
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                long lowest = lowestOf(bucket);
+                long middle = lowest + (lowestOf(bucket + 1) - lowest) / 2;
+                return Math.min(middle, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Writes the histogram, listing only the buckets that are not empty.
+     *
+     * @param output The output to write to.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(DataOutput output) throws IOException {
+        int used = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            if (counts.get(bucket) != 0) {
+                used++;
+            }
+        }
+        output.writeLong(count.get());
+        output.writeLong(max.get());
+        output.writeInt(used);
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            if (counts.get(bucket) != 0) {
+                output.writeShort(bucket);
+                output.writeLong(counts.get(bucket));
+            }
+        }
+    }
+
+    /**
+     * Reads a histogram written by write() and adds its values to this one.
+     *
+     * @param input The input to read from.
+     * @throws IOException If an I/O error occurs or the data is not valid.
+     */
+    public void read(DataInput input) throws IOException {
+        long readCount = input.readLong();
+        long readMax = input.readLong();
+        int used = input.readInt();
+        for (int i = 0; i < used; i++) {
+            int bucket = input.readUnsignedShort();
+            if (bucket >= BUCKET_COUNT) {
+                throw new IOException("Invalid histogram bucket " + bucket);
+            }
+            counts.addAndGet(bucket, input.readLong());
+        }
+        count.addAndGet(readCount);
+        max.accumulateAndGet(readMax, Math::max);
+    }
+
+    /**
+     * Returns the bucket that holds a value.
+     *
+     * @param value The value, which must not be negative.
+     * @return The bucket index.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) &
+                (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the lowest value a bucket holds.
+     *
+     * @param bucket The bucket index, which may be one past the last bucket.
+     * @return The lowest value.
+     */
+    private static long lowestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) <<
+                (exponent - SUB_BUCKET_BITS);
+        // One past the last bucket would overflow
+        return lowest < 0 ? Long.MAX_VALUE : lowest;
+    }
+}
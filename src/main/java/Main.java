@@ -1,16 +1,144 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 /**
  * Serves as the entry point for the application.
  */
 public class Main {
+    private static final Path PROC_STAT_PATH = Path.of("/proc/self/stat");
+    private static final Path PROC_UPTIME_PATH = Path.of("/proc/uptime");
+    private static final Path PROC_AUXV_PATH = Path.of("/proc/self/auxv");
+    // Position of the start time among the fields after the command name
+    private static final int PROC_START_TIME_FIELD = 19;
+    // Type of the auxiliary vector entry with the clock ticks per second
+    private static final long AT_CLKTCK = 17;
 
     /**
-     * Initializes the CommandProcessor instance and passes the command-line
-     * arguments to be processed for execution.
+     * Forwards the command-line arguments to the daemon if it is running, or
+     * otherwise initializes the CommandProcessor instance and passes them to
+     * be processed for execution, closing the task repositories afterwards.
+     * The "daemon" command is handled here, since it starts or stops the
+     * daemon itself.
      *
      * @param args Command-line arguments.
      */
     public static void main(String[] args) {
-        CommandProcessor commandProcessor = new CommandProcessor();
-        commandProcessor.execute(args);
+        if (args.length > 0 && args[0].equalsIgnoreCase("daemon")) {
+            executeDaemon(args);
+            return;
+        }
+
+        // The standard input cannot be forwarded to the daemon
+        if (readsStandardInput(args) || !TaskDaemon.forward(args)) {
+            recordStartup();
+            TaskRepositoryCache repositories = new TaskRepositoryCache();
+            CommandProcessor commandProcessor =
+                    new CommandProcessor(repositories);
+            commandProcessor.execute(args);
+            // Writes the changes left pending by write-behind mode
+            repositories.close();
+        }
+    }
+
+    /**
+     * Records the time from the start of the process until now as the startup
+     * phase. Both are read from /proc in clock ticks since boot, at the rate
+     * the kernel passes to the process in its auxiliary vector, since the
+     * start time of ProcessHandle is only accurate to the second, and the
+     * management API takes longer to load than most commands take to run. On
+     * systems without /proc, startup is not recorded.
+     */
+    private static void recordStartup() {
+        try {
+            long clockTicks = readClockTicks();
+            if (clockTicks <= 0) {
+                return;
+            }
+            String stat = Files.readString(PROC_STAT_PATH);
+            // Fields after the command name, which may contain spaces
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2)
+                    .split(" ");
+            long startTicks = Long.parseLong(fields[PROC_START_TIME_FIELD]);
+            String uptime = Files.readString(PROC_UPTIME_PATH);
+            double uptimeSeconds = Double.parseDouble(
+                    uptime.substring(0, uptime.indexOf(' ')));
+            TaskMetrics.record(TaskMetrics.Phase.STARTUP, Math.max(0,
+                    (long) (uptimeSeconds * 1e9) -
+                            startTicks * 1_000_000_000L / clockTicks));
+        } catch (IOException | RuntimeException e) {
+            // Startup is simply not recorded
+        }
+    }
+
+    /**
+     * Reads the number of clock ticks per second used by /proc from the
+     * auxiliary vector of the process: pairs of a type and a value, each a
+     * word of the process in its native byte order.
+     *
+     * @return The clock ticks per second, or 0 if they are not found.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static long readClockTicks() throws IOException {
+        ByteBuffer auxv = ByteBuffer.wrap(Files.readAllBytes(PROC_AUXV_PATH))
+                .order(ByteOrder.nativeOrder());
+        boolean wide = !"32".equals(System.getProperty("sun.arch.data.model"));
+        int entrySize = wide ? 16 : 8;
+        while (auxv.remaining() >= entrySize) {
+            long type = wide ? auxv.getLong() : auxv.getInt();
+            long value = wide ? auxv.getLong() : auxv.getInt();
+            if (type == AT_CLKTCK) {
+                return value;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether a command reads from the standard input, which a batch
+     * does unless it is given a file.
+     *
+     * @param args Command-line arguments.
+     * @return True if the command reads from the standard input.
+     */
+    private static boolean readsStandardInput(String[] args) {
+        String command = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("--list") ||
+                    (command != null &&
+                            args[i].equalsIgnoreCase("--commit-every"))) {
+                i++;
+            } else if (command == null) {
+                command = args[i];
+            } else {
+                return false;
+            }
+        }
+        return "batch".equalsIgnoreCase(command);
+    }
+
+    /**
+     * Starts the daemon, or stops it if the "stop" argument is provided.
+     *
+     * @param args Command-line arguments, starting with "daemon".
+     */
+    private static void executeDaemon(String[] args) {
+        if (args.length == 1) {
+            try {
+                new TaskDaemon().run();
+            } catch (IOException e) {
+                System.out.println("ERROR: Failed to run daemon: " +
+                        e.getMessage());
+            }
+        } else if (args.length == 2 && args[1].equalsIgnoreCase("stop")) {
+            if (!TaskDaemon.forward(args)) {
+                System.out.println("ERROR: Daemon is not running");
+            }
+        } else {
+            System.out.println(
+                    "ERROR: Invalid argument(s). Use: daemon [stop]");
+        }
     }
 }
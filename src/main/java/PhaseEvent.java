@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a phase of a command, such as loading tasks or
+ * committing changes, recorded alongside the TaskMetrics. It costs nothing
+ * unless a recording is running with the event enabled, for example:
+ * <pre>
+ * java -XX:StartFlightRecording:filename=tasktracker.jfr -cp out Main list
+ * </pre>
+ */
+@Name("tasktracker.Phase")
+@Label("TaskTracker Phase")
+@Category("TaskTracker")
+@Description("A phase of a TaskTracker command")
+public class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+}
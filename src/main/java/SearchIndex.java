@@ -0,0 +1,583 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from the words of task descriptions to the IDs of the tasks
+ * that contain them, used to search tasks by text without reading them all.
+ * <p>
+ * The index is kept in a snapshot file, plus a log with the words of the tasks
+ * added or modified since the snapshot was written, and the IDs of the tasks
+ * deleted or archived since. A task is listed under the words of its latest
+ * description only, and no longer listed once deleted. The log is folded into
+ * a new snapshot once it has grown past a quarter of its size, as the log of
+ * the tasks is. Since other processes may change tasks between a search and
+ * the reading of the tasks found, search results are candidates, which must
+ * be checked against the tasks themselves with matches().
+ */
+public class SearchIndex {
+    private static final int MAGIC = 0x54545349; // "TTSI"
+    // Smallest log size at which it is folded into a new snapshot
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+    // Words are cut to this length, so that very long ones can be stored
+    private static final int MAX_WORD_LENGTH = 64;
+
+    private final Path path;
+    private final Path logPath;
+
+    // IDs of the tasks by word, or null if the index is not loaded
+    private Map<String, Postings> postings;
+    // Postings of the words of each task, to remove a task from them when it
+    // changes or is deleted
+    private TaskWords taskWords;
+
+    /**
+     * IDs of the tasks that contain a word, in ascending order, so that an ID
+     * is found by binary search when a task is added or removed.
+     */
+    private static class Postings {
+        private final String word;
+        private int[] ids = new int[4];
+        private int size;
+
+        /**
+         * Creates empty Postings for a word.
+         *
+         * @param word The word.
+         */
+        private Postings(String word) {
+            this.word = word;
+        }
+
+        /**
+         * Adds the ID of a task, unless it is already there.
+         *
+         * @param id The task ID.
+         */
+        private void add(int id) {
+            // New tasks have the highest IDs, so they are usually appended
+            int index = size > 0 && ids[size - 1] < id ? size :
+                    Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0 && index < size) {
+                return;
+            }
+            if (index < 0) {
+                index = -index - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        /**
+         * Removes the ID of a task, keeping the others in order.
+         *
+         * @param id The task ID.
+         */
+        private void remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Postings of the words of each task, by task ID. IDs are kept as
+     * primitive ints in an open-addressing hash table, as TaskIndex keeps
+     * them, so that no Integer or map entry is created per task.
+     */
+    private static class TaskWords {
+        private static final Postings[] NO_POSTINGS = new Postings[0];
+
+        // Hash table from ID to postings, with linear probing
+        private int[] keys = new int[32];
+        private Postings[][] values = new Postings[32][];
+        private int mask = 31;
+        private int size;
+
+        /**
+         * Returns the postings of the words of a task.
+         *
+         * @param id The task ID.
+         * @return The postings, or null if the task has no words.
+         */
+        private Postings[] get(int id) {
+            return values[find(id)];
+        }
+
+        /**
+         * Sets the postings of the words of a task.
+         *
+         * @param id           The task ID.
+         * @param wordPostings The postings, which must not be null.
+         */
+        private void put(int id, Postings[] wordPostings) {
+            int bucket = find(id);
+            if (values[bucket] == null) {
+                keys[bucket] = id;
+                size++;
+            }
+            values[bucket] = wordPostings;
+            if (size * 2 > mask) {
+                rehash(keys.length * 2);
+            }
+        }
+
+        /**
+         * Adds the postings of one more word to those of a task.
+         *
+         * @param id           The task ID.
+         * @param wordPostings The postings of the word.
+         */
+        private void append(int id, Postings wordPostings) {
+            Postings[] current = get(id);
+            if (current == null) {
+                current = NO_POSTINGS;
+            }
+            Postings[] appended = Arrays.copyOf(current, current.length + 1);
+            appended[current.length] = wordPostings;
+            put(id, appended);
+        }
+
+        /**
+         * Removes the postings of the words of a task.
+         *
+         * @param id The task ID.
+         * @return The postings, or null if the task had no words.
+         */
+        private Postings[] remove(int id) {
+            int bucket = find(id);
+            Postings[] removed = values[bucket];
+            if (removed == null) {
+                return null;
+            }
+            size--;
+
+            // Shift back the entries that follow in the same run, as
+            // TaskIndex does, so lookups never stop early
+            int empty = bucket;
+            int next = (bucket + 1) & mask;
+            while (values[next] != null) {
+                int home = hash(keys[next]);
+                if (((next - home) & mask) >= ((next - empty) & mask)) {
+                    keys[empty] = keys[next];
+                    values[empty] = values[next];
+                    empty = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[empty] = null;
+            return removed;
+        }
+
+        /**
+         * Returns the bucket holding an ID, or the empty bucket where it
+         * would be added.
+         *
+         * @param id The task ID.
+         * @return The bucket index.
+         */
+        private int find(int id) {
+            int bucket = hash(id);
+            while (values[bucket] != null && keys[bucket] != id) {
+                bucket = (bucket + 1) & mask;
+            }
+            return bucket;
+        }
+
+        /**
+         * Returns the home bucket of an ID, scrambled since IDs are mostly
+         * consecutive.
+         *
+         * @param id The task ID.
+         * @return The bucket index.
+         */
+        private int hash(int id) {
+            int hash = id * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        /**
+         * Grows the hash table.
+         *
+         * @param capacity The new number of buckets.
+         */
+        private void rehash(int capacity) {
+            int[] oldKeys = keys;
+            Postings[][] oldValues = values;
+            keys = new int[capacity];
+            values = new Postings[capacity][];
+            mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int bucket = find(oldKeys[i]);
+                    keys[bucket] = oldKeys[i];
+                    values[bucket] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a SearchIndex backed by the provided files, which do not need
+     * to exist yet. The index is not loaded until load() or build() is called.
+     *
+     * @param path    The snapshot file.
+     * @param logPath The log file.
+     */
+    public SearchIndex(Path path, Path logPath) {
+        this.path = path;
+        this.logPath = logPath;
+    }
+
+    /**
+     * Splits a text into words: runs of letters and digits, in lower case and
+     * cut to a maximum length.
+     *
+     * @param text The text.
+     * @return The distinct words, in the order they appear.
+     */
+    public static List<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            int codePoint = i < text.length() ? text.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (word.length() < MAX_WORD_LENGTH) {
+                    word.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+            if (Character.isSupplementaryCodePoint(codePoint)) {
+                i++;
+            }
+        }
+        return new ArrayList<>(words);
+    }
+
+    /**
+     * Checks whether a text contains all the provided words.
+     *
+     * @param text  The text.
+     * @param words The words, as returned by tokenize().
+     * @return True if every word is in the text.
+     */
+    public static boolean matches(String text, List<String> words) {
+        return tokenize(text).containsAll(words);
+    }
+
+    /**
+     * Checks whether the snapshot file exists, which means that the index is
+     * being kept up to date.
+     *
+     * @return True if the snapshot file exists.
+     */
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * Checks whether the index is loaded in memory.
+     *
+     * @return True if the index is loaded.
+     */
+    public boolean isLoaded() {
+        return postings != null;
+    }
+
+    /**
+     * Discards the index from memory, since other processes may have added to
+     * its files.
+     */
+    public void unload() {
+        postings = null;
+        taskWords = null;
+    }
+
+    /**
+     * Builds the index from all tasks and saves it to a new snapshot file.
+     * Only called while holding the StoreLock.
+     *
+     * @param tasks All tasks.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void build(Iterable<Task> tasks) throws IOException {
+        postings = new HashMap<>();
+        taskWords = new TaskWords();
+        for (Task task : tasks) {
+            add(task);
+        }
+        save();
+    }
+
+    /**
+     * Loads the index from the snapshot file and the log. The log is folded
+     * into a new snapshot if it has grown past a quarter of the size of the
+     * snapshot. Only called while holding the StoreLock.
+     *
+     * @throws IOException If an I/O error occurs or the files are not valid.
+     */
+    public void load() throws IOException {
+        postings = new HashMap<>();
+        taskWords = new TaskWords();
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a search index file");
+            }
+            int wordCount = input.readInt();
+            for (int i = 0; i < wordCount; i++) {
+                Postings wordPostings = new Postings(input.readUTF());
+                wordPostings.size = input.readInt();
+                wordPostings.ids = new int[Math.max(4, wordPostings.size)];
+                boolean sorted = true;
+                for (int j = 0; j < wordPostings.size; j++) {
+                    wordPostings.ids[j] = input.readInt();
+                    sorted &= j == 0 ||
+                            wordPostings.ids[j - 1] < wordPostings.ids[j];
+                    taskWords.append(wordPostings.ids[j], wordPostings);
+                }
+                // Snapshots used to list IDs in the order they were added
+                if (!sorted) {
+                    Arrays.sort(wordPostings.ids, 0, wordPostings.size);
+                }
+                postings.put(wordPostings.word, wordPostings);
+            }
+        }
+
+        if (!Files.exists(logPath)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(logPath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Each line is a task ID followed by its words, or a deleted
+                // task ID after a minus sign
+                String[] fields = line.split(" ");
+                try {
+                    if (fields[0].startsWith("-")) {
+                        remove(Integer.parseInt(fields[0].substring(1)));
+                    } else {
+                        put(Integer.parseInt(fields[0]),
+                                Arrays.copyOfRange(fields, 1, fields.length));
+                    }
+                } catch (NumberFormatException e) {
+                    // Skip a line left incomplete by an interrupted write
+                }
+            }
+        }
+
+        if (needsCompaction()) {
+            save();
+        }
+    }
+
+    /**
+     * Records the words of the tasks added or modified by a set of changes,
+     * and the tasks it deletes, both in the log and, if it is loaded, in the
+     * index in memory. The log is then folded into a new snapshot if it has
+     * grown too large, which loads the index from the files first, since the
+     * one in memory may miss changes of other processes. Nothing is done if
+     * the snapshot file does not exist, since the index will be built from
+     * all tasks when it is first needed. Only called while holding the
+     * StoreLock.
+     *
+     * @param changes The changes.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void append(ChangeSet changes) throws IOException {
+        if (!exists()) {
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        for (Task task : changes.getSavedTasks()) {
+            lines.append(task.getId());
+            for (String word : tokenize(task.getDescription())) {
+                lines.append(' ').append(word);
+            }
+            lines.append('\n');
+            if (isLoaded()) {
+                add(task);
+            }
+        }
+        for (int id : changes.getDeletedIds()) {
+            lines.append('-').append(id).append('\n');
+            if (isLoaded()) {
+                remove(id);
+            }
+        }
+        if (lines.length() == 0) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(logPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // Start on a new line if an interrupted write left one incomplete
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (channel.size() > 0 &&
+                    channel.read(last, channel.size() - 1) == 1 &&
+                    last.get(0) != '\n') {
+                lines.insert(0, '\n');
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(
+                    lines.toString().getBytes(StandardCharsets.UTF_8));
+            long position = channel.size();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, position + bytes.position());
+            }
+        }
+        if (needsCompaction()) {
+            load();
+        }
+    }
+
+    /**
+     * Finds the tasks that may contain all the provided words. Only the IDs
+     * listed under the least common word are returned, so they must still be
+     * checked against the tasks with matches().
+     *
+     * @param words The words, as returned by tokenize().
+     * @return The candidate IDs, in ascending order.
+     */
+    public int[] find(List<String> words) {
+        Postings rarest = null;
+        for (String word : words) {
+            Postings wordPostings = postings.get(word);
+            if (wordPostings == null) {
+                return new int[0];
+            }
+            if (rarest == null || wordPostings.size < rarest.size) {
+                rarest = wordPostings;
+            }
+        }
+        if (rarest == null) {
+            return new int[0];
+        }
+
+        return Arrays.copyOf(rarest.ids, rarest.size);
+    }
+
+    /**
+     * Lists a task under the words of its description in the index in memory,
+     * in place of the words it was listed under before.
+     *
+     * @param task The task.
+     */
+    private void add(Task task) {
+        put(task.getId(),
+                tokenize(task.getDescription()).toArray(new String[0]));
+    }
+
+    /**
+     * Lists a task under the provided words in the index in memory, in place
+     * of the words it was listed under before.
+     *
+     * @param id    The task ID.
+     * @param words The words of its description.
+     */
+    private void put(int id, String[] words) {
+        remove(id);
+        if (words.length == 0) {
+            return;
+        }
+        Postings[] wordPostings = new Postings[words.length];
+        for (int i = 0; i < words.length; i++) {
+            wordPostings[i] = postings.computeIfAbsent(words[i],
+                    Postings::new);
+            wordPostings[i].add(id);
+        }
+        taskWords.put(id, wordPostings);
+    }
+
+    /**
+     * Removes a task from the postings of its words in the index in memory.
+     * Words no longer listing any task are removed too.
+     *
+     * @param id The task ID.
+     */
+    private void remove(int id) {
+        Postings[] wordPostings = taskWords.remove(id);
+        if (wordPostings == null) {
+            return;
+        }
+        for (Postings posting : wordPostings) {
+            posting.remove(id);
+            if (posting.size == 0) {
+                postings.remove(posting.word);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the log has grown past a quarter of the size of the
+     * snapshot, as JsonTaskStorage checks for the log of the tasks, so that
+     * rewriting the snapshot stays proportional to the changes logged.
+     *
+     * @return True if the log should be folded into a new snapshot.
+     * @throws IOException If an I/O error occurs.
+     */
+    private boolean needsCompaction() throws IOException {
+        return Files.exists(logPath) && Files.size(logPath) >
+                Math.max(MIN_COMPACTION_SIZE, Files.size(path) / 4);
+    }
+
+    /**
+     * Writes the index in memory to a new snapshot file and empties the log.
+     * The file is written under a temporary name and then moved into place,
+     * so that processes reading it never see it partially written.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void save() throws IOException {
+        Path temporaryPath = path.resolveSibling(
+                path.getFileName() + "." + ProcessHandle.current().pid() +
+                        ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(temporaryPath)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(postings.size());
+                for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeInt(entry.getValue().size);
+                    for (int i = 0; i < entry.getValue().size; i++) {
+                        output.writeInt(entry.getValue().ids[i]);
+                    }
+                }
+            }
+            Files.move(temporaryPath, path,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+        Files.deleteIfExists(logPath);
+    }
+}
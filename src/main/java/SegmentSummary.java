@@ -0,0 +1,269 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Summary of the tasks of a segment of the archive: how many there are, the
+ * range of their IDs, how many have each status, the range of their creation
+ * and update times, and the distinct words of their descriptions. Commands
+ * that look for archived tasks check the summaries first, so that they only
+ * read the segments that may hold tasks they are looking for.
+ * <p>
+ * Each summary is kept in a small sidecar file next to its segment, written
+ * along with it, and never changed afterwards, like the segment itself.
+ */
+public class SegmentSummary {
+    private static final int MAGIC = 0x54544153; // "TTAS"
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private int count;
+    private int minId = Integer.MAX_VALUE;
+    private int maxId = Integer.MIN_VALUE;
+    private final int[] statusCounts = new int[STATUSES.length];
+    private LocalDateTime minCreated;
+    private LocalDateTime maxCreated;
+    private LocalDateTime minUpdated;
+    private LocalDateTime maxUpdated;
+    private final Set<String> words = new HashSet<>();
+
+    /**
+     * Adds a task of the segment to the summary.
+     *
+     * @param task The archived task.
+     */
+    public void add(Task task) {
+        count++;
+        minId = Math.min(minId, task.getId());
+        maxId = Math.max(maxId, task.getId());
+        if (task.getStatus() != null) {
+            statusCounts[task.getStatus().ordinal()]++;
+        }
+        LocalDateTime created = task.getCreatedAt();
+        if (created != null) {
+            minCreated = minCreated == null || created.isBefore(minCreated) ?
+                    created : minCreated;
+            maxCreated = maxCreated == null || created.isAfter(maxCreated) ?
+                    created : maxCreated;
+        }
+        LocalDateTime updated = task.getUpdatedAt();
+        if (updated != null) {
+            minUpdated = minUpdated == null || updated.isBefore(minUpdated) ?
+                    updated : minUpdated;
+            maxUpdated = maxUpdated == null || updated.isAfter(maxUpdated) ?
+                    updated : maxUpdated;
+        }
+        if (task.getDescription() != null) {
+            words.addAll(SearchIndex.tokenize(task.getDescription()));
+        }
+    }
+
+    /**
+     * Returns the number of tasks of the segment.
+     *
+     * @return The number of tasks.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the lowest ID of the tasks of the segment.
+     *
+     * @return The lowest ID, or Integer.MAX_VALUE if there are no tasks.
+     */
+    public int getMinId() {
+        return minId;
+    }
+
+    /**
+     * Returns the highest ID of the tasks of the segment.
+     *
+     * @return The highest ID, or Integer.MIN_VALUE if there are no tasks.
+     */
+    public int getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * Returns the number of tasks of the segment with a status.
+     *
+     * @param status The task status.
+     * @return The number of tasks with that status.
+     */
+    public int count(TaskStatus status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    /**
+     * Returns the earliest creation or update time of the tasks of the
+     * segment.
+     *
+     * @param timeField The timestamp.
+     * @return The earliest time, or null if no task has the timestamp.
+     */
+    public LocalDateTime getMinTime(TaskQuery.TimeField timeField) {
+        return timeField == TaskQuery.TimeField.CREATED ? minCreated :
+                minUpdated;
+    }
+
+    /**
+     * Returns the latest creation or update time of the tasks of the segment.
+     *
+     * @param timeField The timestamp.
+     * @return The latest time, or null if no task has the timestamp.
+     */
+    public LocalDateTime getMaxTime(TaskQuery.TimeField timeField) {
+        return timeField == TaskQuery.TimeField.CREATED ? maxCreated :
+                maxUpdated;
+    }
+
+    /**
+     * Checks whether the segment may hold tasks that match a query, from
+     * their statuses and time range.
+     *
+     * @param query The query.
+     * @return False if no task of the segment matches the query.
+     */
+    public boolean mayMatch(TaskQuery query) {
+        if (query.getStatus() != null ? count(query.getStatus()) == 0 :
+                count == 0) {
+            return false;
+        }
+        if (!query.hasTimeRange()) {
+            return true;
+        }
+        LocalDateTime min = getMinTime(query.getTimeField());
+        LocalDateTime max = getMaxTime(query.getTimeField());
+        return min != null &&
+                (query.getSince() == null || !max.isBefore(query.getSince())) &&
+                (query.getUntil() == null || min.isBefore(query.getUntil()));
+    }
+
+    /**
+     * Checks whether the descriptions of the tasks of the segment contain all
+     * the provided words, though not necessarily in the same task.
+     *
+     * @param searchWords The words, as returned by SearchIndex.tokenize().
+     * @return False if no task of the segment contains all the words.
+     */
+    public boolean containsAll(List<String> searchWords) {
+        return words.containsAll(searchWords);
+    }
+
+    /**
+     * Reads a summary file.
+     *
+     * @param path The summary file.
+     * @return The summary, or null if the file does not exist.
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    public static SegmentSummary read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        SegmentSummary summary = new SegmentSummary();
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a segment summary file");
+            }
+            summary.count = input.readInt();
+            summary.minId = input.readInt();
+            summary.maxId = input.readInt();
+            int statusCount = input.readInt();
+            for (int i = 0; i < statusCount; i++) {
+                int tasks = input.readInt();
+                if (i < STATUSES.length) {
+                    summary.statusCounts[i] = tasks;
+                }
+            }
+            summary.minCreated = readTime(input);
+            summary.maxCreated = readTime(input);
+            summary.minUpdated = readTime(input);
+            summary.maxUpdated = readTime(input);
+            int wordCount = input.readInt();
+            for (int i = 0; i < wordCount; i++) {
+                summary.words.add(input.readUTF());
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Writes the summary to a file, under a temporary name first, so that it
+     * is never read partially written.
+     *
+     * @param path The summary file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + "." +
+                ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(temporaryPath)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(count);
+                output.writeInt(minId);
+                output.writeInt(maxId);
+                output.writeInt(statusCounts.length);
+                for (int statusCount : statusCounts) {
+                    output.writeInt(statusCount);
+                }
+                writeTime(output, minCreated);
+                writeTime(output, maxCreated);
+                writeTime(output, minUpdated);
+                writeTime(output, maxUpdated);
+                output.writeInt(words.size());
+                for (String word : words) {
+                    output.writeUTF(word);
+                }
+            }
+            Files.move(temporaryPath, path,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * Reads a timestamp written by writeTime().
+     *
+     * @param input The stream to read from.
+     * @return The timestamp, or null if there was none.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static LocalDateTime readTime(DataInputStream input)
+            throws IOException {
+        long seconds = input.readLong();
+        int nanos = input.readInt();
+        return nanos < 0 ? null :
+                LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    /**
+     * Writes a timestamp as seconds and nanoseconds since the epoch, taken as
+     * UTC, which keeps it exact.
+     *
+     * @param output The stream to write to.
+     * @param time   The timestamp, or null if there is none.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void writeTime(DataOutputStream output, LocalDateTime time)
+            throws IOException {
+        output.writeLong(time == null ? 0 : time.toEpochSecond(ZoneOffset.UTC));
+        output.writeInt(time == null ? -1 : time.getNano());
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Sidecar file that records the size, modification time and CRC32C checksum
+ * of the snapshots of a JsonTaskStorage: the current one, the previous one,
+ * which is kept to fall back on, and the next one while it is being put in
+ * place. A manifest that is not marked as clean means that the process
+ * replacing the snapshot died halfway, so the snapshots must be verified
+ * against their checksums before one is loaded.
+ * <p>
+ * The file holds a magic number, the clean flag and the three snapshots, and
+ * ends with the checksum of the rest, so that a damaged manifest is not
+ * trusted. It is always replaced as a whole and forced to disk.
+ */
+public class SnapshotManifest {
+    private static final int MAGIC = 0x5454534D; // "TTSM"
+    private static final int SNAPSHOT_SIZE = 20;
+    private static final int FILE_SIZE = 12 + 3 * SNAPSHOT_SIZE;
+    private static final int CHECKSUM_BUFFER_SIZE = 1 << 16;
+
+    private final boolean clean;
+    private final Snapshot current;
+    private final Snapshot previous;
+    private final Snapshot next;
+
+    /**
+     * Size, modification time and checksum of a snapshot file, which tell
+     * whether a file is that snapshot.
+     */
+    public static class Snapshot {
+        private final long size;
+        private final long modified;
+        private final int checksum;
+
+        /**
+         * Creates a Snapshot.
+         *
+         * @param size     The size of the file.
+         * @param modified The modification time of the file, in milliseconds.
+         * @param checksum The CRC32C checksum of the contents of the file.
+         */
+        public Snapshot(long size, long modified, int checksum) {
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Describes a file whose checksum was computed as it was written.
+         *
+         * @param path     The file.
+         * @param checksum The CRC32C checksum of the contents of the file.
+         * @return The Snapshot.
+         * @throws IOException If an I/O error occurs.
+         */
+        public static Snapshot of(Path path, int checksum) throws IOException {
+            return new Snapshot(Files.size(path),
+                    Files.getLastModifiedTime(path).toMillis(), checksum);
+        }
+
+        /**
+         * Checks cheaply whether a file is still this snapshot, from its size
+         * and modification time only.
+         *
+         * @param path The file.
+         * @return True if the file has the size and modification time of the
+         *         snapshot.
+         * @throws IOException If an I/O error occurs.
+         */
+        public boolean isUnchanged(Path path) throws IOException {
+            return Files.exists(path) && Files.size(path) == size &&
+                    Files.getLastModifiedTime(path).toMillis() == modified;
+        }
+
+        /**
+         * Checks whether a file holds this snapshot, by reading it whole to
+         * compare its checksum.
+         *
+         * @param path The file.
+         * @return True if the file has the size and checksum of the snapshot.
+         * @throws IOException If an I/O error occurs.
+         */
+        public boolean isValid(Path path) throws IOException {
+            return Files.exists(path) && Files.size(path) == size &&
+                    checksum(path) == checksum;
+        }
+    }
+
+    /**
+     * Creates a SnapshotManifest.
+     *
+     * @param clean    Whether no snapshot is being put in place.
+     * @param current  The current snapshot, or null if it is not known.
+     * @param previous The previous snapshot, or null if none is kept.
+     * @param next     The snapshot being put in place, or null if none is.
+     */
+    public SnapshotManifest(boolean clean, Snapshot current, Snapshot previous,
+                            Snapshot next) {
+        this.clean = clean;
+        this.current = current;
+        this.previous = previous;
+        this.next = next;
+    }
+
+    /**
+     * Checks whether no snapshot is being put in place.
+     *
+     * @return True if the last snapshot was put in place completely.
+     */
+    public boolean isClean() {
+        return clean;
+    }
+
+    /**
+     * Returns the current snapshot.
+     *
+     * @return The current snapshot, or null if it is not known.
+     */
+    public Snapshot getCurrent() {
+        return current;
+    }
+
+    /**
+     * Returns the previous snapshot.
+     *
+     * @return The previous snapshot, or null if none is kept.
+     */
+    public Snapshot getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Returns the snapshot being put in place.
+     *
+     * @return The next snapshot, or null if none is being put in place.
+     */
+    public Snapshot getNext() {
+        return next;
+    }
+
+    /**
+     * Reads a manifest file.
+     *
+     * @param path The manifest file.
+     * @return The manifest, or null if the file does not exist.
+     * @throws IOException If an I/O error occurs or the file is damaged.
+     */
+    public static SnapshotManifest read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (file.capacity() != FILE_SIZE || file.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot manifest file");
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(file.array(), 0, FILE_SIZE - 4);
+        if ((int) checksum.getValue() != file.getInt(FILE_SIZE - 4)) {
+            throw new IOException("Damaged snapshot manifest file");
+        }
+
+        file.position(4);
+        boolean clean = file.getInt() == 0;
+        return new SnapshotManifest(clean, readSnapshot(file),
+                readSnapshot(file), readSnapshot(file));
+    }
+
+    /**
+     * Replaces a manifest file with this manifest, and forces it to disk
+     * along with its directory, so that it is in place once this returns.
+     *
+     * @param path The manifest file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(Path path) throws IOException {
+        ByteBuffer file = ByteBuffer.allocate(FILE_SIZE);
+        file.putInt(MAGIC).putInt(clean ? 0 : 1);
+        writeSnapshot(file, current);
+        writeSnapshot(file, previous);
+        writeSnapshot(file, next);
+        CRC32C checksum = new CRC32C();
+        checksum.update(file.array(), 0, FILE_SIZE - 4);
+        file.putInt((int) checksum.getValue());
+
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                file.flip();
+                while (file.hasRemaining()) {
+                    channel.write(file);
+                }
+                channel.force(false);
+            }
+            Files.move(temporaryPath, path,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+        syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Computes the CRC32C checksum of the contents of a file.
+     *
+     * @param path The file.
+     * @return The checksum.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static int checksum(Path path) throws IOException {
+        CRC32C checksum = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Forces the entries of a directory to disk, so that files renamed or
+     * created in it are still there after a crash. This is not possible on
+     * every system, in which case it is left to the operating system.
+     *
+     * @param directory The directory.
+     */
+    public static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened or forced on this system
+        }
+    }
+
+    /**
+     * Reads a snapshot at the position of a buffer.
+     *
+     * @param file The buffer.
+     * @return The snapshot, or null if there is none.
+     */
+    private static Snapshot readSnapshot(ByteBuffer file) {
+        long size = file.getLong();
+        long modified = file.getLong();
+        int checksum = file.getInt();
+        return size < 0 ? null : new Snapshot(size, modified, checksum);
+    }
+
+    /**
+     * Writes a snapshot at the position of a buffer.
+     *
+     * @param file     The buffer.
+     * @param snapshot The snapshot, or null if there is none.
+     */
+    private static void writeSnapshot(ByteBuffer file, Snapshot snapshot) {
+        if (snapshot == null) {
+            file.putLong(-1).putLong(0).putInt(0);
+        } else {
+            file.putLong(snapshot.size).putLong(snapshot.modified)
+                    .putInt(snapshot.checksum);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive lock on the task store, which a process holds only while it
+ * commits changes, along with the version number of the store. Every commit
+ * increments the version, so a process can tell whether others have committed
+ * since it read the store by comparing the version with the one it saw then.
+ * <p>
+ * The lock is a FileChannel lock on a small file that holds the version, so
+ * it is released by the operating system if the process dies.
+ */
+public class StoreLock implements Closeable {
+    private final FileChannel channel;
+    private final FileLock lock;
+    private long version;
+
+    /**
+     * Creates a StoreLock by locking an open lock file and reading the version
+     * it holds.
+     *
+     * @param channel The open lock file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private StoreLock(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.lock = channel.lock();
+        this.version = readVersion(channel);
+    }
+
+    /**
+     * Acquires the lock, waiting until no other process holds it.
+     *
+     * @param path The lock file, which is created if it does not exist yet.
+     * @return The acquired lock.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static StoreLock acquire(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new StoreLock(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the current version of the store without acquiring the lock.
+     *
+     * @param path The lock file.
+     * @return The version, or 0 if nothing has been committed yet.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static long readVersion(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path)) {
+            return readVersion(channel);
+        }
+    }
+
+    /**
+     * Returns the version of the store.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Increments the version of the store. This is done before the changes are
+     * written, so that if the process dies halfway, other processes still see
+     * that the store has changed.
+     *
+     * @return The new version.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long increment() throws IOException {
+        version++;
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES).putLong(0, version);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, bytes.position());
+        }
+        return version;
+    }
+
+    /**
+     * Releases the lock.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the version held by an open lock file.
+     *
+     * @param channel The open lock file.
+     * @return The version, or 0 if the file is empty.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static long readVersion(FileChannel channel) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES);
+        while (bytes.hasRemaining() &&
+                channel.read(bytes, bytes.position()) >= 0) {
+            // Keep reading until the whole version is in the buffer
+        }
+        return bytes.hasRemaining() ? 0 : bytes.getLong(0);
+    }
+}
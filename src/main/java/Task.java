@@ -1,5 +1,4 @@
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * Represents a task with ID, description, status, and creation and update
@@ -12,9 +11,6 @@ public class Task {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
-    private static final DateTimeFormatter DATE_TIME_FORMATTER =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-
     /**
      * Creates an empty Task with uninitialized fields.
      */
@@ -133,10 +129,6 @@ public class Task {
      */
     @Override
     public String toString() {
-        return "ID " + id + ":" +
-                "\n  Description: \"" + description + "\"" +
-                "\n  Status: " + status.getLabel() +
-                "\n  Created at: " + DATE_TIME_FORMATTER.format(createdAt) +
-                "\n  Updated at: " + DATE_TIME_FORMATTER.format(updatedAt);
+        return TaskPrinter.appendText(new StringBuilder(), this).toString();
     }
 }
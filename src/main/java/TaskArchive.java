@@ -0,0 +1,321 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage for done tasks that are not expected to change any more. Tasks
+ * are moved out of the storage engine into segment files in a directory, each
+ * holding one JSON object per line, compressed with GZIP.
+ * <p>
+ * Segments are immutable once written, and new ones are only added while
+ * holding the StoreLock. They are only read when a command asks for archived
+ * tasks, so they add nothing to loading and saving the other tasks. Each one
+ * has a SegmentSummary next to it, which commands check to skip the segments
+ * that cannot hold the tasks they look for.
+ */
+public class TaskArchive {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".ndjson.gz";
+    private static final String SUMMARY_SUFFIX = ".summary";
+
+    private final Path directory;
+    // Summaries read so far, which never change, like their segments
+    private final Map<Path, SegmentSummary> summaries = new HashMap<>();
+
+    /**
+     * Action applied to each archived task as it is read.
+     */
+    public interface Visitor {
+
+        /**
+         * Handles an archived task.
+         *
+         * @param task The archived task.
+         * @throws IOException If an I/O error occurs.
+         */
+        void visit(Task task) throws IOException;
+    }
+
+    /**
+     * Creates a TaskArchive backed by the provided directory, which does not
+     * need to exist yet.
+     *
+     * @param directory The directory of the segment files.
+     */
+    public TaskArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Checks whether any task has been archived.
+     *
+     * @return True if there is at least one segment.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean exists() throws IOException {
+        return !listSegments().isEmpty();
+    }
+
+    /**
+     * Returns the total size of the segments and their summaries.
+     *
+     * @return The size in bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long size() throws IOException {
+        long size = 0;
+        for (Path segment : listSegments()) {
+            size += Files.size(segment);
+            Path summaryPath = summaryPath(segment);
+            if (Files.exists(summaryPath)) {
+                size += Files.size(summaryPath);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the provided tasks to a new segment, and their summary next to
+     * it. The segment is written under a temporary name, forced to disk and
+     * then moved into place, so that it is never read partially written, and
+     * only once its summary is in place. Must be called while holding the
+     * StoreLock, so that no other process picks the same segment number.
+     *
+     * @param tasks The tasks to archive.
+     * @return The number of tasks written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int write(Iterable<Task> tasks) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = listSegments();
+        int number = segments.isEmpty() ? 1 :
+                segmentNumber(segments.get(segments.size() - 1)) + 1;
+        Path segmentPath = directory.resolve(String.format("%s%06d%s",
+                SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        Path temporaryPath = directory.resolve(segmentPath.getFileName() +
+                "." + ProcessHandle.current().pid() + ".tmp");
+
+        SegmentSummary summary = new SegmentSummary();
+        int count = 0;
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                GZIPOutputStream output = new GZIPOutputStream(
+                        Channels.newOutputStream(channel), 1 << 16);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        output, StandardCharsets.UTF_8), 1 << 16);
+                StringBuilder builder = new StringBuilder();
+                for (Task task : tasks) {
+                    builder.setLength(0);
+                    JsonConverter.appendJsonObject(builder, task).append('\n');
+                    writer.append(builder);
+                    summary.add(task);
+                    count++;
+                }
+                // Writes the GZIP trailer without closing the channel yet
+                writer.flush();
+                output.finish();
+                channel.force(false);
+            }
+            summary.write(summaryPath(segmentPath));
+            Files.move(temporaryPath, segmentPath,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+        return count;
+    }
+
+    /**
+     * Reads the segments whose summaries pass a filter, in the order they
+     * were written, and puts the archived tasks that pass another filter into
+     * an index.
+     *
+     * @param segmentFilter The condition the summary of a segment must meet
+     *                      for the segment to be read.
+     * @param filter        The condition archived tasks must meet to be
+     *                      loaded.
+     * @param tasks         The index to load the tasks into.
+     * @throws IOException If an I/O error occurs or a segment is malformed.
+     */
+    public void load(Predicate<SegmentSummary> segmentFilter,
+                     Predicate<Task> filter, TaskIndex tasks)
+            throws IOException {
+        forEach(segmentFilter, task -> {
+            if (filter.test(task)) {
+                tasks.put(task);
+            }
+        });
+    }
+
+    /**
+     * Reads every segment, in the order they were written, and hands each
+     * archived task to a visitor as soon as it is parsed, without keeping it.
+     *
+     * @param visitor The action applied to each archived task.
+     * @throws IOException If an I/O error occurs or a segment is malformed.
+     */
+    public void forEach(Visitor visitor) throws IOException {
+        for (Path segment : listSegments()) {
+            read(segment, visitor);
+        }
+    }
+
+    /**
+     * Reads the segments whose summaries pass a filter, in the order they
+     * were written, and hands each of their tasks to a visitor as soon as it
+     * is parsed. The filter is only applied to a segment once the tasks of
+     * the segments before it have been visited, so it can depend on them.
+     *
+     * @param segmentFilter The condition the summary of a segment must meet
+     *                      for the segment to be read.
+     * @param visitor       The action applied to each archived task.
+     * @throws IOException If an I/O error occurs or a segment is malformed.
+     */
+    public void forEach(Predicate<SegmentSummary> segmentFilter,
+                        Visitor visitor) throws IOException {
+        for (Path segment : listSegments()) {
+            if (segmentFilter.test(summary(segment))) {
+                read(segment, visitor);
+            }
+        }
+    }
+
+    /**
+     * Returns the summary of a segment. A summary that is missing or damaged,
+     * as for segments written before there were summaries, is built from the
+     * segment and written, if possible, for the next time.
+     *
+     * @param segment The path of the segment.
+     * @return The summary.
+     * @throws IOException If an I/O error occurs or the segment is malformed.
+     */
+    private SegmentSummary summary(Path segment) throws IOException {
+        SegmentSummary summary = summaries.get(segment);
+        if (summary != null) {
+            return summary;
+        }
+
+        Path summaryPath = summaryPath(segment);
+        try {
+            summary = SegmentSummary.read(summaryPath);
+        } catch (IOException e) {
+            summary = null;
+        }
+        if (summary == null) {
+            SegmentSummary builtSummary = new SegmentSummary();
+            read(segment, builtSummary::add);
+            summary = builtSummary;
+            try {
+                summary.write(summaryPath);
+            } catch (IOException e) {
+                // Built again next time, if the directory is read-only
+            }
+        }
+        summaries.put(segment, summary);
+        return summary;
+    }
+
+    /**
+     * Reads a segment and hands each archived task to a visitor as soon as it
+     * is parsed, without keeping it.
+     *
+     * @param segment The path of the segment.
+     * @param visitor The action applied to each archived task.
+     * @throws IOException If an I/O error occurs or the segment is malformed.
+     */
+    private static void read(Path segment, Visitor visitor)
+            throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(
+                        Files.newInputStream(segment), 1 << 16),
+                        StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Task task;
+                try {
+                    task = JsonConverter.jsonObjectToTask(line);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Malformed archived task in " +
+                            segment.getFileName() + ": " + line, e);
+                }
+                visitor.visit(task);
+            }
+        }
+    }
+
+    /**
+     * Returns the path of the summary of a segment.
+     *
+     * @param segment The path of the segment.
+     * @return The path of its summary.
+     */
+    private static Path summaryPath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0,
+                name.length() - SEGMENT_SUFFIX.length()) + SUMMARY_SUFFIX);
+    }
+
+    /**
+     * Lists the segment files, in the order they were written.
+     *
+     * @return The paths of the segments.
+     * @throws IOException If an I/O error occurs.
+     */
+    private List<Path> listSegments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        // Numbers are zero-padded, so names sort in the order of the numbers
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Returns the number in the name of a segment file.
+     *
+     * @param segment The path of the segment.
+     * @return The segment number.
+     * @throws IOException If the name has no valid number.
+     */
+    private static int segmentNumber(Path segment) throws IOException {
+        String name = segment.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid segment name: " + name, e);
+        }
+    }
+}
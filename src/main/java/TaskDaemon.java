@@ -0,0 +1,192 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resident process that keeps the task lists used recently loaded in memory
+ * and executes commands sent to it over a Unix domain socket, so that they do
+ * not have to start a JVM and load all tasks each time.
+ * <p>
+ * A request is the list of command-line arguments, each followed by a NUL
+ * byte, and ends when the client shuts down its side of the connection. The
+ * response is the output of the command, and ends when the daemon closes the
+ * connection. Requests are executed one at a time, in the order they arrive.
+ */
+public class TaskDaemon {
+    private static final Path SOCKET_PATH =
+            Path.of("src/main/resources/tasktracker.sock");
+    private static final int MAX_REQUEST_SIZE = 1 << 24;
+
+    private final TaskRepositoryCache repositories;
+    private final CommandProcessor commandProcessor;
+    private boolean running;
+
+    /**
+     * Creates a TaskDaemon and loads the repository of the default task list.
+     * Other lists are loaded when a command first uses them.
+     */
+    public TaskDaemon() {
+        repositories = new TaskRepositoryCache();
+        repositories.get(TaskRepository.DEFAULT_LIST);
+        commandProcessor = new CommandProcessor(repositories);
+    }
+
+    /**
+     * Sends a command to the running daemon and prints its output.
+     *
+     * @param args Command-line arguments.
+     * @return True if the command was executed by the daemon, or false if no
+     * daemon is running.
+     */
+    public static boolean forward(String[] args) {
+        if (!Files.exists(SOCKET_PATH)) {
+            return false;
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(SOCKET_PATH));
+        } catch (IOException e) {
+            // The socket was left behind by a daemon that is not running
+            return false;
+        }
+
+        try (channel) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            for (String arg : args) {
+                request.writeBytes(arg.getBytes(Charset.defaultCharset()));
+                request.write(0);
+            }
+            ByteBuffer requestBytes = ByteBuffer.wrap(request.toByteArray());
+            while (requestBytes.hasRemaining()) {
+                channel.write(requestBytes);
+            }
+            channel.shutdownOutput();
+
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+        } catch (IOException e) {
+            System.out.println("ERROR: Lost connection to daemon: " +
+                    e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Listens for commands until a "daemon stop" command is received.
+     *
+     * @throws IOException If the socket cannot be opened.
+     */
+    public void run() throws IOException {
+        if (forward(new String[0])) {
+            System.out.println("ERROR: Daemon is already running");
+            return;
+        }
+        Files.deleteIfExists(SOCKET_PATH);
+        // Remove the socket and write pending changes and metrics if the
+        // daemon is terminated by a signal
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            repositories.flush();
+            TaskRepository.saveStats();
+            try {
+                Files.deleteIfExists(SOCKET_PATH);
+            } catch (IOException e) {
+                // Clients fall back to direct mode if the socket is left over
+            }
+        }));
+
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET_PATH));
+            System.out.println("Daemon listening on " + SOCKET_PATH);
+
+            running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException e) {
+                    System.err.println("ERROR: Failed to handle request: " +
+                            e.getMessage());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(SOCKET_PATH);
+            repositories.close();
+        }
+    }
+
+    /**
+     * Reads a command from a client, executes it and sends back its output.
+     *
+     * @param client The connection to the client.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void handle(SocketChannel client) throws IOException {
+        String[] args = readRequest(Channels.newInputStream(client));
+        if (args.length == 0) {
+            // Probe sent to check whether the daemon is running
+            return;
+        }
+
+        OutputStream output =
+                new BufferedOutputStream(Channels.newOutputStream(client));
+        PrintStream printStream = new PrintStream(output, false,
+                Charset.defaultCharset());
+        PrintStream standardOutput = System.out;
+        System.setOut(printStream);
+        try {
+            if (args.length == 2 && args[0].equalsIgnoreCase("daemon") &&
+                    args[1].equalsIgnoreCase("stop")) {
+                running = false;
+                System.out.println("Daemon stopped");
+            } else {
+                commandProcessor.execute(args);
+            }
+        } catch (RuntimeException e) {
+            System.out.println("ERROR: " + e);
+        } finally {
+            System.setOut(standardOutput);
+            printStream.flush();
+        }
+    }
+
+    /**
+     * Reads the NUL-terminated arguments of a request.
+     *
+     * @param input The stream of the request.
+     * @return The arguments.
+     * @throws IOException If an I/O error occurs or the request is too large.
+     */
+    private static String[] readRequest(InputStream input) throws IOException {
+        byte[] request = input.readNBytes(MAX_REQUEST_SIZE + 1);
+        if (request.length > MAX_REQUEST_SIZE) {
+            throw new IOException("Request too large");
+        }
+
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < request.length; i++) {
+            if (request[i] == 0) {
+                args.add(new String(request, start, i - start,
+                        Charset.defaultCharset()));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+}
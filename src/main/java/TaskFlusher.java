@@ -0,0 +1,79 @@
+import java.io.Closeable;
+
+/**
+ * Background thread that flushes the pending changes of a TaskRepository once
+ * per interval, or sooner when a flush is requested, so that many changes are
+ * written and forced to the storage device together.
+ */
+public class TaskFlusher implements Closeable {
+    private final Thread thread;
+    private final long interval;
+    private final Runnable flush;
+    private boolean requested;
+    private boolean closed;
+
+    /**
+     * Creates a TaskFlusher and starts its thread. The thread does not keep
+     * the JVM running.
+     *
+     * @param interval The longest time between flushes, in milliseconds.
+     * @param flush    The action that flushes the pending changes.
+     */
+    public TaskFlusher(long interval, Runnable flush) {
+        this.interval = interval;
+        this.flush = flush;
+        thread = new Thread(this::run, "tasktracker-flusher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Requests a flush without waiting for the end of the interval.
+     */
+    public synchronized void request() {
+        requested = true;
+        notifyAll();
+    }
+
+    /**
+     * Stops the thread, waiting for a flush in progress to end. The caller
+     * must not hold any lock that the flush action needs.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the end of each interval or for a request, and flushes.
+     */
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + interval;
+                long remaining = interval;
+                while (!requested && !closed && remaining > 0) {
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (closed) {
+                    return;
+                }
+                requested = false;
+            }
+            flush.run();
+        }
+    }
+}
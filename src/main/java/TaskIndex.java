@@ -0,0 +1,802 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Holds tasks in insertion order, indexed by ID. IDs are kept as primitive
+ * ints in an open-addressing hash table, so looking up, adding and removing a
+ * task take constant time regardless of the number of tasks. The index also
+ * keeps the sequence of IDs, which never goes back, even when the tasks with
+ * the highest IDs are removed.
+ * <p>
+ * Tasks are not kept as objects, but in columns of primitive arrays, one
+ * element per slot: IDs, status ordinals, timestamps as seconds and nanoseconds
+ * since the epoch, and the offsets and lengths of the descriptions, which are
+ * packed as UTF-8 in a single byte array. This takes a fraction of the memory
+ * of Task objects, and gives the garbage collector almost nothing to trace.
+ * Task objects are only created as views of the columns when tasks are read,
+ * and changes to a view are only stored when it is put() again.
+ * <p>
+ * Tasks are also indexed by status, with one bitmap of slots per status. Tasks
+ * with a given status are found by skipping over the clear bits a word at a
+ * time, so they are listed in insertion order at a cost that depends on how
+ * many of them there are, not on the tasks with other statuses.
+ * <p>
+ * The IDs of the tasks are also kept sorted by creation and by update time,
+ * so the tasks in a time range are found without looking at the others.
+ */
+public class TaskIndex implements Iterable<Task> {
+    private static final int EMPTY = -1;
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    // Status ordinal of a task without a status
+    private static final byte NO_STATUS = -1;
+    // Nanoseconds of a missing timestamp, and length of a missing description
+    private static final int NONE = -1;
+    // Smallest description heap that is compacted when half of it is unused
+    private static final int MIN_HEAP_COMPACTION_SIZE = 1 << 16;
+
+    // Slots holding a task, in insertion order
+    private final BitSet usedSlots = new BitSet();
+    private int slotCount;
+    private int size;
+
+    // Columns of the tasks, by slot
+    private int[] ids = new int[16];
+    private byte[] statuses = new byte[16];
+    private long[] createdSeconds = new long[16];
+    private int[] createdNanos = new int[16];
+    private long[] updatedSeconds = new long[16];
+    private int[] updatedNanos = new int[16];
+    private int[] descriptionOffsets = new int[16];
+    private int[] descriptionLengths = new int[16];
+
+    // UTF-8 bytes of the descriptions, including those no longer used
+    private byte[] heap = new byte[1024];
+    private int heapSize;
+    private int heapGarbage;
+
+    // Hash table from ID to slot, with linear probing
+    private int[] keys = new int[32];
+    private int[] values = new int[32];
+    private int mask = 31;
+
+    private int nextId = 1;
+
+    // Slots of the tasks with each status, and their counts, by ordinal
+    private final BitSet[] statusSlots = new BitSet[STATUSES.length];
+    private final int[] statusCounts = new int[STATUSES.length];
+
+    // IDs sorted by timestamp
+    private final TimeIndex createdIndex = new TimeIndex();
+    private final TimeIndex updatedIndex = new TimeIndex();
+
+    /**
+     * Creates an empty TaskIndex.
+     */
+    public TaskIndex() {
+        Arrays.fill(values, EMPTY);
+        for (int i = 0; i < statusSlots.length; i++) {
+            statusSlots[i] = new BitSet();
+        }
+    }
+
+    /**
+     * Returns the task with the provided ID.
+     *
+     * @param id The task ID.
+     * @return A new view of the task, or null if there is none with that ID.
+     */
+    public Task get(int id) {
+        int bucket = find(id);
+        return values[bucket] == EMPTY ? null : view(values[bucket]);
+    }
+
+    /**
+     * Adds a task, or replaces the task with the same ID keeping its position.
+     * In both cases, the fields of the task are copied into the columns, and
+     * the task is indexed under its current status and timestamps.
+     *
+     * @param task The task to add.
+     */
+    public void put(Task task) {
+        int id = task.getId();
+        nextId = Math.max(nextId, id + 1);
+
+        int bucket = find(id);
+        if (values[bucket] != EMPTY) {
+            int slot = values[bucket];
+            unindex(slot);
+            store(slot, task, true);
+            return;
+        }
+
+        if (slotCount == ids.length) {
+            // Reclaim the slots of removed tasks before growing
+            if (size < ids.length / 2) {
+                compactSlots();
+            } else {
+                growSlots(ids.length * 2);
+            }
+        }
+        bucket = find(id);
+        keys[bucket] = id;
+        values[bucket] = slotCount;
+        usedSlots.set(slotCount);
+        store(slotCount, task, false);
+        slotCount++;
+        size++;
+
+        if (size * 2 > mask) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Removes the task with the provided ID.
+     *
+     * @param id The task ID.
+     * @return A view of the removed task, or null if there is none with that
+     * ID.
+     */
+    public Task remove(int id) {
+        int bucket = find(id);
+        if (values[bucket] == EMPTY) {
+            return null;
+        }
+
+        int slot = values[bucket];
+        Task task = view(slot);
+        unindex(slot);
+        usedSlots.clear(slot);
+        heapGarbage += Math.max(0, descriptionLengths[slot]);
+        size--;
+
+        /*
+        Shift back the entries that follow in the same run, so lookups never
+        stop early at the emptied bucket. An entry can take the emptied bucket
+        only if its home bucket is not between the emptied and its own.
+         */
+        int empty = bucket;
+        int next = (bucket + 1) & mask;
+        while (values[next] != EMPTY) {
+            int home = hash(keys[next]);
+            if (((next - home) & mask) >= ((next - empty) & mask)) {
+                keys[empty] = keys[next];
+                values[empty] = values[next];
+                empty = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[empty] = EMPTY;
+
+        return task;
+    }
+
+    /**
+     * Checks whether there is a task with the provided ID that was last
+     * updated at the provided time, comparing the columns without creating a
+     * view.
+     *
+     * @param id      The task ID.
+     * @param seconds The seconds since the epoch of the update time, as UTC.
+     * @param nanos   The nanoseconds within the second of the update time.
+     * @return True if the task exists and was last updated at that time.
+     */
+    public boolean isUpdatedAt(int id, long seconds, int nanos) {
+        int bucket = find(id);
+        if (values[bucket] == EMPTY) {
+            return false;
+        }
+        int slot = values[bucket];
+        return updatedSeconds[slot] == seconds && updatedNanos[slot] == nanos;
+    }
+
+    /**
+     * Removes the tasks whose IDs are not in the provided set.
+     *
+     * @param keptIds The IDs of the tasks to keep.
+     * @return The number of tasks removed.
+     */
+    public int retainAll(BitSet keptIds) {
+        int[] removedIds = new int[size];
+        int count = 0;
+        for (int slot = usedSlots.nextSetBit(0); slot >= 0;
+             slot = usedSlots.nextSetBit(slot + 1)) {
+            if (!keptIds.get(ids[slot])) {
+                removedIds[count++] = ids[slot];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            remove(removedIds[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Brings this index up to date with another one, diffing them by ID and
+     * update time: tasks of the other index that are missing here or were
+     * updated at another time are put, and tasks missing from the other index
+     * are removed. Tasks that did not change are left as they are, along with
+     * their positions.
+     *
+     * @param other The index with the tasks to match.
+     * @return The number of tasks put or removed.
+     */
+    public int merge(TaskIndex other) {
+        BitSet otherIds = new BitSet();
+        int count = 0;
+        for (int slot = other.usedSlots.nextSetBit(0); slot >= 0;
+             slot = other.usedSlots.nextSetBit(slot + 1)) {
+            int id = other.ids[slot];
+            otherIds.set(id);
+            if (!isUpdatedAt(id, other.updatedSeconds[slot],
+                    other.updatedNanos[slot])) {
+                put(other.view(slot));
+                count++;
+            }
+        }
+        count += retainAll(otherIds);
+        advanceNextId(other.nextId);
+        return count;
+    }
+
+    /**
+     * Returns the number of tasks.
+     *
+     * @return The number of tasks.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of tasks with the provided status.
+     *
+     * @param status The task status.
+     * @return The number of tasks with that status.
+     */
+    public int count(TaskStatus status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    /**
+     * Returns the ID to assign to the next new task.
+     *
+     * @return The next ID of the sequence.
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Moves the sequence of IDs forward, so that no ID lower than the provided
+     * one is assigned again.
+     *
+     * @param id The lowest ID that can still be assigned.
+     */
+    public void advanceNextId(int id) {
+        nextId = Math.max(nextId, id);
+    }
+
+    /**
+     * Returns the tasks as a list, in insertion order.
+     *
+     * @return A new list with views of all tasks.
+     */
+    public List<Task> toList() {
+        List<Task> tasks = new ArrayList<>(size);
+        for (Task task : this) {
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns an iterator over the tasks, in insertion order. A new view is
+     * created for each task as it is reached.
+     *
+     * @return An iterator over the tasks.
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        return slotIterator(usedSlots);
+    }
+
+    /**
+     * Returns the tasks with the provided status, in insertion order.
+     *
+     * @param status The task status.
+     * @return The tasks with that status.
+     */
+    public Iterable<Task> withStatus(TaskStatus status) {
+        BitSet matchingSlots = statusSlots[status.ordinal()];
+        return () -> slotIterator(matchingSlots);
+    }
+
+    /**
+     * Returns the tasks created in a time range, in order of creation.
+     *
+     * @param from   The start of the range, inclusive, or null for no start.
+     * @param to     The end of the range, exclusive, or null for no end.
+     * @param status The status of the tasks, or null for any status.
+     * @return A new list with views of the tasks created in the range.
+     */
+    public List<Task> createdBetween(LocalDateTime from, LocalDateTime to,
+                                     TaskStatus status) {
+        return between(createdIndex, createdSeconds, createdNanos, from, to,
+                status);
+    }
+
+    /**
+     * Returns the tasks last updated in a time range, in order of update.
+     *
+     * @param from   The start of the range, inclusive, or null for no start.
+     * @param to     The end of the range, exclusive, or null for no end.
+     * @param status The status of the tasks, or null for any status.
+     * @return A new list with views of the tasks updated in the range.
+     */
+    public List<Task> updatedBetween(LocalDateTime from, LocalDateTime to,
+                                     TaskStatus status) {
+        return between(updatedIndex, updatedSeconds, updatedNanos, from, to,
+                status);
+    }
+
+    /**
+     * Returns the tasks in order of creation, from the oldest or from the
+     * newest, leaving out those without a creation time.
+     *
+     * @param descending True to start from the newest.
+     * @param status     The status of the tasks, or null for any status.
+     * @return The tasks in order of creation.
+     */
+    public Iterable<Task> byCreated(boolean descending, TaskStatus status) {
+        return () -> timeIterator(createdIndex, descending, status);
+    }
+
+    /**
+     * Returns the tasks in order of update, from the oldest or from the
+     * newest, leaving out those without an update time.
+     *
+     * @param descending True to start from the newest.
+     * @param status     The status of the tasks, or null for any status.
+     * @return The tasks in order of update.
+     */
+    public Iterable<Task> byUpdated(boolean descending, TaskStatus status) {
+        return () -> timeIterator(updatedIndex, descending, status);
+    }
+
+    /**
+     * Returns an iterator over the tasks in the order of a time index, which
+     * has millisecond precision, so tasks in the same millisecond come in
+     * order of ID. Views are only created for the tasks with the status, as
+     * they are reached.
+     *
+     * @param index      The time index.
+     * @param descending True to start from the newest.
+     * @param status     The status of the tasks, or null for any status.
+     * @return An iterator over views of the tasks.
+     */
+    private Iterator<Task> timeIterator(TimeIndex index, boolean descending,
+                                        TaskStatus status) {
+        return new Iterator<>() {
+            private final PrimitiveIterator.OfInt indexIds =
+                    index.iterator(descending);
+            private int slot = findNext();
+
+            @Override
+            public boolean hasNext() {
+                return slot != EMPTY;
+            }
+
+            @Override
+            public Task next() {
+                if (slot == EMPTY) {
+                    throw new NoSuchElementException();
+                }
+                Task task = view(slot);
+                slot = findNext();
+                return task;
+            }
+
+            /**
+             * Finds the slot of the next task with the status.
+             *
+             * @return The slot, or EMPTY if there is none.
+             */
+            private int findNext() {
+                while (indexIds.hasNext()) {
+                    int next = values[find(indexIds.nextInt())];
+                    if (status == null || statuses[next] == status.ordinal()) {
+                        return next;
+                    }
+                }
+                return EMPTY;
+            }
+        };
+    }
+
+    /**
+     * Returns the tasks in a time range of one of the time indexes. The index
+     * only has millisecond precision, so the range looked up is widened to
+     * whole milliseconds and the tasks at its ends are checked exactly against
+     * the columns of the timestamp. Views are only created for the tasks that
+     * match.
+     *
+     * @param index   The time index.
+     * @param seconds The column of the seconds of the timestamp.
+     * @param nanos   The column of the nanoseconds of the timestamp.
+     * @param from    The start of the range, inclusive, or null for no start.
+     * @param to      The end of the range, exclusive, or null for no end.
+     * @param status  The status of the tasks, or null for any status.
+     * @return A new list with views of the tasks in the range.
+     */
+    private List<Task> between(TimeIndex index, long[] seconds, int[] nanos,
+                               LocalDateTime from, LocalDateTime to,
+                               TaskStatus status) {
+        long fromSecond = from == null ? 0 : from.toEpochSecond(ZoneOffset.UTC);
+        long toSecond = to == null ? 0 : to.toEpochSecond(ZoneOffset.UTC);
+        int[] rangeIds = index.between(
+                from == null ? Long.MIN_VALUE :
+                        toMillis(fromSecond, from.getNano()),
+                to == null ? Long.MAX_VALUE :
+                        toMillis(toSecond, to.getNano()) + 1);
+
+        List<Task> tasks = new ArrayList<>(rangeIds.length);
+        for (int id : rangeIds) {
+            int slot = values[find(id)];
+            if (status != null && statuses[slot] != status.ordinal()) {
+                continue;
+            }
+            if (from != null && compare(seconds[slot], nanos[slot],
+                    fromSecond, from.getNano()) < 0) {
+                continue;
+            }
+            if (to != null && compare(seconds[slot], nanos[slot],
+                    toSecond, to.getNano()) >= 0) {
+                continue;
+            }
+            tasks.add(view(slot));
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns an iterator over the tasks in a set of slots, in insertion
+     * order.
+     *
+     * @param slots The slots.
+     * @return An iterator over views of the tasks.
+     */
+    private Iterator<Task> slotIterator(BitSet slots) {
+        return new Iterator<>() {
+            private int slot = slots.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return slot >= 0;
+            }
+
+            @Override
+            public Task next() {
+                if (slot < 0) {
+                    throw new NoSuchElementException();
+                }
+                Task task = view(slot);
+                slot = slots.nextSetBit(slot + 1);
+                return task;
+            }
+        };
+    }
+
+    /**
+     * Creates a Task object from the columns of a slot.
+     *
+     * @param slot The slot of the task.
+     * @return The view of the task.
+     */
+    private Task view(int slot) {
+        Task task = new Task();
+        task.setId(ids[slot]);
+        if (descriptionLengths[slot] != NONE) {
+            task.setDescription(new String(heap, descriptionOffsets[slot],
+                    descriptionLengths[slot], StandardCharsets.UTF_8));
+        }
+        if (statuses[slot] != NO_STATUS) {
+            task.setStatus(STATUSES[statuses[slot]]);
+        }
+        if (createdNanos[slot] != NONE) {
+            task.setCreatedAt(LocalDateTime.ofEpochSecond(createdSeconds[slot],
+                    createdNanos[slot], ZoneOffset.UTC));
+        }
+        if (updatedNanos[slot] != NONE) {
+            task.setUpdatedAt(LocalDateTime.ofEpochSecond(updatedSeconds[slot],
+                    updatedNanos[slot], ZoneOffset.UTC));
+        }
+        return task;
+    }
+
+    /**
+     * Copies the fields of a task into the columns of a slot, and indexes the
+     * slot under the task's status and timestamps. When a task is replaced,
+     * a description equal to the stored one is kept where it is, rather than
+     * appended to the heap again.
+     *
+     * @param slot      The slot of the task.
+     * @param task      The task.
+     * @param replacing Whether the slot holds an earlier version of the task.
+     */
+    private void store(int slot, Task task, boolean replacing) {
+        ids[slot] = task.getId();
+        statuses[slot] = task.getStatus() == null ? NO_STATUS :
+                (byte) task.getStatus().ordinal();
+
+        LocalDateTime createdAt = task.getCreatedAt();
+        createdSeconds[slot] = createdAt == null ? 0 :
+                createdAt.toEpochSecond(ZoneOffset.UTC);
+        createdNanos[slot] = createdAt == null ? NONE : createdAt.getNano();
+        LocalDateTime updatedAt = task.getUpdatedAt();
+        updatedSeconds[slot] = updatedAt == null ? 0 :
+                updatedAt.toEpochSecond(ZoneOffset.UTC);
+        updatedNanos[slot] = updatedAt == null ? NONE : updatedAt.getNano();
+
+        int storedLength = replacing ? descriptionLengths[slot] : NONE;
+        if (task.getDescription() == null) {
+            heapGarbage += Math.max(0, storedLength);
+            descriptionOffsets[slot] = 0;
+            descriptionLengths[slot] = NONE;
+        } else {
+            byte[] description =
+                    task.getDescription().getBytes(StandardCharsets.UTF_8);
+            int storedOffset = descriptionOffsets[slot];
+            if (storedLength != description.length || !Arrays.equals(heap,
+                    storedOffset, storedOffset + storedLength, description, 0,
+                    description.length)) {
+                heapGarbage += Math.max(0, storedLength);
+                appendDescription(slot, description);
+            }
+        }
+
+        index(slot);
+    }
+
+    /**
+     * Appends the description of a task to the heap, and points its slot to
+     * it.
+     *
+     * @param slot        The slot of the task.
+     * @param description The description, encoded in UTF-8.
+     */
+    private void appendDescription(int slot, byte[] description) {
+        // The old description must not be kept if the heap is compacted
+        descriptionLengths[slot] = NONE;
+        reserveHeap(description.length);
+        System.arraycopy(description, 0, heap, heapSize, description.length);
+        descriptionOffsets[slot] = heapSize;
+        descriptionLengths[slot] = description.length;
+        heapSize += description.length;
+    }
+
+    /**
+     * Indexes a slot under the status and timestamps in its columns.
+     *
+     * @param slot The slot of the task.
+     */
+    private void index(int slot) {
+        if (statuses[slot] != NO_STATUS) {
+            statusSlots[statuses[slot]].set(slot);
+            statusCounts[statuses[slot]]++;
+        }
+        if (createdNanos[slot] != NONE) {
+            createdIndex.add(toMillis(createdSeconds[slot], createdNanos[slot]),
+                    ids[slot]);
+        }
+        if (updatedNanos[slot] != NONE) {
+            updatedIndex.add(toMillis(updatedSeconds[slot], updatedNanos[slot]),
+                    ids[slot]);
+        }
+    }
+
+    /**
+     * Removes a slot from the status and time indexes, under the status and
+     * timestamps still in its columns.
+     *
+     * @param slot The slot of the task.
+     */
+    private void unindex(int slot) {
+        if (statuses[slot] != NO_STATUS) {
+            statusSlots[statuses[slot]].clear(slot);
+            statusCounts[statuses[slot]]--;
+        }
+        if (createdNanos[slot] != NONE) {
+            createdIndex.remove(toMillis(createdSeconds[slot],
+                    createdNanos[slot]), ids[slot]);
+        }
+        if (updatedNanos[slot] != NONE) {
+            updatedIndex.remove(toMillis(updatedSeconds[slot],
+                    updatedNanos[slot]), ids[slot]);
+        }
+    }
+
+    /**
+     * Converts a timestamp to the milliseconds the time indexes are sorted
+     * by. Timestamps have no time zone, so they are taken as UTC, which keeps
+     * their order.
+     *
+     * @param seconds The seconds since the epoch.
+     * @param nanos   The nanoseconds within the second.
+     * @return The milliseconds since the epoch.
+     */
+    private static long toMillis(long seconds, int nanos) {
+        return seconds * 1000 + nanos / 1_000_000;
+    }
+
+    /**
+     * Compares two timestamps given as seconds and nanoseconds.
+     *
+     * @param seconds1 The seconds of the first timestamp.
+     * @param nanos1   The nanoseconds of the first timestamp.
+     * @param seconds2 The seconds of the second timestamp.
+     * @param nanos2   The nanoseconds of the second timestamp.
+     * @return A negative number, zero or a positive number if the first
+     * timestamp is before, equal to or after the second.
+     */
+    private static int compare(long seconds1, int nanos1, long seconds2,
+                               int nanos2) {
+        int comparison = Long.compare(seconds1, seconds2);
+        return comparison != 0 ? comparison : Integer.compare(nanos1, nanos2);
+    }
+
+    /**
+     * Makes room at the end of the description heap for the provided number
+     * of bytes. If more than half of the heap is taken by descriptions no
+     * longer used, the used ones are moved to a new heap instead of growing.
+     *
+     * @param length The number of bytes.
+     */
+    private void reserveHeap(int length) {
+        if (heap.length - heapSize >= length) {
+            return;
+        }
+
+        if (heapGarbage > heapSize / 2 &&
+                heapSize >= MIN_HEAP_COMPACTION_SIZE) {
+            compactHeap(length);
+        } else {
+            long capacity = Math.max((long) heap.length * 2,
+                    (long) heapSize + length);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Descriptions take too much " +
+                        "memory");
+            }
+            heap = Arrays.copyOf(heap, (int) capacity);
+        }
+    }
+
+    /**
+     * Moves the descriptions in use to a new heap, in slot order, leaving the
+     * provided number of bytes free after them.
+     *
+     * @param length The number of bytes to leave free.
+     */
+    private void compactHeap(int length) {
+        int usedSize = heapSize - heapGarbage;
+        byte[] compacted = new byte[Math.max(heap.length / 2,
+                usedSize + length + usedSize / 2)];
+        int position = 0;
+        for (int slot = usedSlots.nextSetBit(0); slot >= 0;
+             slot = usedSlots.nextSetBit(slot + 1)) {
+            // Empty descriptions too, so that no offset is left past the end
+            if (descriptionLengths[slot] >= 0) {
+                System.arraycopy(heap, descriptionOffsets[slot], compacted,
+                        position, descriptionLengths[slot]);
+                descriptionOffsets[slot] = position;
+                position += descriptionLengths[slot];
+            }
+        }
+        heap = compacted;
+        heapSize = position;
+        heapGarbage = 0;
+    }
+
+    /**
+     * Returns the bucket holding the provided ID, or the empty bucket where it
+     * would be inserted.
+     *
+     * @param id The task ID.
+     * @return The bucket index.
+     */
+    private int find(int id) {
+        int bucket = hash(id);
+        while (values[bucket] != EMPTY && keys[bucket] != id) {
+            bucket = (bucket + 1) & mask;
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the home bucket of an ID. The ID is scrambled first, since IDs
+     * are mostly consecutive and would otherwise form long runs.
+     *
+     * @param id The task ID.
+     * @return The bucket index.
+     */
+    private int hash(int id) {
+        int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Grows the columns to the provided number of slots.
+     *
+     * @param capacity The new number of slots.
+     */
+    private void growSlots(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        createdSeconds = Arrays.copyOf(createdSeconds, capacity);
+        createdNanos = Arrays.copyOf(createdNanos, capacity);
+        updatedSeconds = Arrays.copyOf(updatedSeconds, capacity);
+        updatedNanos = Arrays.copyOf(updatedNanos, capacity);
+        descriptionOffsets = Arrays.copyOf(descriptionOffsets, capacity);
+        descriptionLengths = Arrays.copyOf(descriptionLengths, capacity);
+    }
+
+    /**
+     * Moves the remaining tasks to the front of the columns, preserving their
+     * order, and rebuilds the hash table and the status index to point to
+     * their new slots. The time indexes hold IDs, so they are left as they are.
+     */
+    private void compactSlots() {
+        for (int i = 0; i < statusSlots.length; i++) {
+            statusSlots[i].clear();
+            statusCounts[i] = 0;
+        }
+
+        int count = 0;
+        for (int slot = usedSlots.nextSetBit(0); slot >= 0;
+             slot = usedSlots.nextSetBit(slot + 1)) {
+            ids[count] = ids[slot];
+            statuses[count] = statuses[slot];
+            createdSeconds[count] = createdSeconds[slot];
+            createdNanos[count] = createdNanos[slot];
+            updatedSeconds[count] = updatedSeconds[slot];
+            updatedNanos[count] = updatedNanos[slot];
+            descriptionOffsets[count] = descriptionOffsets[slot];
+            descriptionLengths[count] = descriptionLengths[slot];
+            if (statuses[count] != NO_STATUS) {
+                statusSlots[statuses[count]].set(count);
+                statusCounts[statuses[count]]++;
+            }
+            count++;
+        }
+        usedSlots.clear();
+        usedSlots.set(0, count);
+        slotCount = count;
+        rehash(keys.length);
+    }
+
+    /**
+     * Rebuilds the hash table with the provided capacity from the columns.
+     *
+     * @param capacity The new number of buckets, a power of two.
+     */
+    private void rehash(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(values, EMPTY);
+        for (int slot = usedSlots.nextSetBit(0); slot >= 0;
+             slot = usedSlots.nextSetBit(slot + 1)) {
+            int bucket = find(ids[slot]);
+            keys[bucket] = ids[slot];
+            values[bucket] = slot;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Append-only log of the changes made to the tasks since the last snapshot of
+ * the JSON file. Each change is a single line: "+" followed by the JSON object
+ * of an added or modified task, or "-" followed by the ID of a deleted task.
+ * A line with "#" followed by an ID records the next ID of the sequence.
+ * <p>
+ * Other processes may read the log while one appends to it, so a last line
+ * without a line break is a record still being written, and is not read.
+ */
+public class TaskLog {
+    private static final char PUT = '+';
+    private static final char DELETE = '-';
+    private static final char NEXT_ID = '#';
+
+    private final Path path;
+    private long size;
+
+    /**
+     * Creates a TaskLog backed by the provided file, which does not need to
+     * exist yet.
+     *
+     * @param path The log file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public TaskLog(Path path) throws IOException {
+        this.path = path;
+        refresh();
+    }
+
+    /**
+     * Reads the size of the log again, since other processes may have
+     * appended to it.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void refresh() throws IOException {
+        size = Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    /**
+     * Applies the logged changes, in order, on top of the tasks loaded from
+     * the last snapshot.
+     *
+     * @param tasks The tasks loaded from the last snapshot.
+     * @return The offset after the last record applied.
+     * @throws IOException If an I/O error occurs or a record is malformed.
+     */
+    public long replay(TaskIndex tasks) throws IOException {
+        return replay(tasks, 0);
+    }
+
+    /**
+     * Applies the changes logged from an offset on, in order, on top of tasks
+     * that already hold the changes logged before it.
+     *
+     * @param tasks The tasks to apply the changes to.
+     * @param start The offset of the first record to apply, as returned by an
+     *              earlier replay.
+     * @return The offset after the last record applied, or -1 if the log is
+     *         shorter than the offset, since it was reset in the meantime.
+     * @throws IOException If an I/O error occurs or a record is malformed.
+     */
+    public long replay(TaskIndex tasks, long start) throws IOException {
+        if (!Files.exists(path)) {
+            return start == 0 ? 0 : -1;
+        }
+
+        try (FileChannel channel = FileChannel.open(path)) {
+            long end = completeSize(channel);
+            if (end < start) {
+                return -1;
+            }
+            BufferedReader reader = readRecords(channel, start, end);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    if (line.charAt(0) == PUT) {
+                        Task task = JsonConverter.jsonObjectToTask(
+                                line.substring(1));
+                        tasks.put(task);
+                    } else if (line.charAt(0) == DELETE) {
+                        int id = Integer.parseInt(line.substring(1));
+                        tasks.remove(id);
+                        // The task may have been added in the same commit
+                        tasks.advanceNextId(id + 1);
+                    } else if (line.charAt(0) == NEXT_ID) {
+                        tasks.advanceNextId(
+                                Integer.parseInt(line.substring(1)));
+                    } else {
+                        throw new IOException("Unknown log record: " + line);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Malformed log record: " + line, e);
+                }
+            }
+            return end;
+        }
+    }
+
+    /**
+     * Applies only the logged changes to the tasks with the provided IDs.
+     *
+     * @param ids   The task IDs.
+     * @param tasks The index to apply the changes to.
+     * @return The IDs of the tasks the log has any record of.
+     * @throws IOException If an I/O error occurs or a record is malformed.
+     */
+    public Set<Integer> replay(Set<Integer> ids, TaskIndex tasks)
+            throws IOException {
+        Set<Integer> found = new HashSet<>();
+        try (BufferedReader reader = openRecords()) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.charAt(0) == NEXT_ID) {
+                    continue;
+                }
+                int id = recordId(line);
+                if (!ids.contains(id)) {
+                    continue;
+                }
+
+                found.add(id);
+                if (line.charAt(0) == PUT) {
+                    tasks.put(JsonConverter.jsonObjectToTask(
+                            line.substring(1)));
+                } else {
+                    tasks.remove(id);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed log record", e);
+        }
+        return found;
+    }
+
+    /**
+     * Returns the next ID of the sequence according to the log alone, without
+     * parsing the tasks it holds.
+     *
+     * @return The next ID, or 1 if the log has no record of any ID.
+     * @throws IOException If an I/O error occurs or a record is malformed.
+     */
+    public int getNextId() throws IOException {
+        int nextId = 1;
+        try (BufferedReader reader = openRecords()) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    int id = recordId(line);
+                    nextId = Math.max(nextId,
+                            line.charAt(0) == NEXT_ID ? id : id + 1);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed log record", e);
+        }
+        return nextId;
+    }
+
+    /**
+     * Returns the ID a record refers to. The JSON object of a task is only
+     * parsed if it does not start with its ID, as written by JsonConverter.
+     *
+     * @param line The record.
+     * @return The ID of the task, or the next ID of the sequence.
+     * @throws IOException If the record is malformed.
+     */
+    private static int recordId(String line) throws IOException {
+        char type = line.charAt(0);
+        if (type == DELETE || type == NEXT_ID) {
+            return Integer.parseInt(line, 1, line.length(), 10);
+        } else if (type != PUT) {
+            throw new IOException("Unknown log record: " + line);
+        }
+
+        String prefix = "+{\"id\":";
+        if (line.startsWith(prefix)) {
+            int end = prefix.length();
+            while (end < line.length() &&
+                    (Character.isDigit(line.charAt(end)) ||
+                    (end == prefix.length() && line.charAt(end) == '-'))) {
+                end++;
+            }
+            if (end < line.length() && line.charAt(end) == ',') {
+                return Integer.parseInt(line, prefix.length(), end, 10);
+            }
+        }
+        return JsonConverter.jsonObjectToTask(line.substring(1)).getId();
+    }
+
+    /**
+     * Appends the records of a set of changes through a single channel, in
+     * one loop of positional writes, so that they follow each other in the
+     * log whatever the number of writes the system needs. Only called while
+     * holding the StoreLock, so an incomplete last record can only have been
+     * left by a write that was interrupted, and is truncated first. Readers
+     * stop at the last complete record.
+     *
+     * @param changes The changes to log.
+     * @return The offset at which the records were appended.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long append(ChangeSet changes) throws IOException {
+        StringBuilder records = new StringBuilder();
+        for (Task task : changes.getSavedTasks()) {
+            records.append(PUT).append(JsonConverter.taskToJsonObject(task))
+                    .append('\n');
+        }
+        for (int id : changes.getDeletedIds()) {
+            records.append(DELETE).append(id).append('\n');
+        }
+        long start;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            start = truncateIncompleteRecord(channel);
+            ByteBuffer bytes = ByteBuffer.wrap(
+                    records.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, start + bytes.position());
+            }
+            size = start + bytes.limit();
+        }
+        return start;
+    }
+
+    /**
+     * Forces the records appended to the log to the storage device.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void sync() throws IOException {
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the current size of the log.
+     *
+     * @return The size of the log in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Discards all records, once they have been folded into a new snapshot,
+     * leaving only the next ID of the sequence.
+     *
+     * @param nextId The next ID of the sequence.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void reset(int nextId) throws IOException {
+        byte[] bytes = (NEXT_ID + Integer.toString(nextId) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+        Files.write(path, bytes);
+        size = bytes.length;
+    }
+
+    /**
+     * Moves the log to another file, replacing it, and starts a new one that
+     * only records the next ID of the sequence.
+     *
+     * @param previousPath The file the log is moved to.
+     * @param nextId       The next ID of the sequence.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void rotate(Path previousPath, int nextId) throws IOException {
+        if (Files.exists(path)) {
+            Files.move(path, previousPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        reset(nextId);
+    }
+
+    /**
+     * Opens the log for reading its complete records.
+     *
+     * @return A reader that ends after the last complete record.
+     * @throws IOException If an I/O error occurs.
+     */
+    private BufferedReader openRecords() throws IOException {
+        if (!Files.exists(path)) {
+            return new BufferedReader(
+                    new InputStreamReader(InputStream.nullInputStream()));
+        }
+
+        FileChannel channel = FileChannel.open(path);
+        try {
+            return readRecords(channel, 0, completeSize(channel));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a reader of the records of an open log file between two
+     * offsets. Closing the reader closes the file.
+     *
+     * @param channel The open log file.
+     * @param start   The offset of the first record.
+     * @param end     The offset after the last record.
+     * @return A reader that ends at the end offset.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static BufferedReader readRecords(FileChannel channel, long start,
+                                              long end) throws IOException {
+        channel.position(start);
+        InputStream input = new FilterInputStream(
+                Channels.newInputStream(channel)) {
+            private long remaining = end - start;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    return -1;
+                }
+                int character = super.read();
+                if (character >= 0) {
+                    remaining--;
+                }
+                return character;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length)
+                    throws IOException {
+                if (remaining == 0) {
+                    return -1;
+                }
+                int count = super.read(bytes, offset,
+                        (int) Math.min(length, remaining));
+                if (count > 0) {
+                    remaining -= count;
+                }
+                return count;
+            }
+        };
+        return new BufferedReader(
+                new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Truncates an incomplete last record, left by a write that was
+     * interrupted, so that new records are not appended to it.
+     *
+     * @param channel The log file, open for writing.
+     * @return The size of the complete records, where new ones start.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static long truncateIncompleteRecord(FileChannel channel)
+            throws IOException {
+        long completeSize = completeSize(channel);
+        if (completeSize < channel.size()) {
+            channel.truncate(completeSize);
+        }
+        return completeSize;
+    }
+
+    /**
+     * Returns the size of the complete records of the log, up to and
+     * including the last line break. Readers do not hold the StoreLock, so
+     * the log may be reset while it is scanned, in which case the scan starts
+     * again from its new end.
+     *
+     * @param channel The open log file.
+     * @return The size of the complete records in bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static long completeSize(FileChannel channel) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(4096);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - chunk.capacity());
+            chunk.clear().limit((int) (end - start));
+            if (!readFully(channel, chunk, start)) {
+                end = channel.size();
+                continue;
+            }
+            for (int i = chunk.limit() - 1; i >= 0; i--) {
+                if (chunk.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Fills a buffer with the bytes of a file from a position on.
+     *
+     * @param channel  The file.
+     * @param buffer   The buffer, filled up to its limit.
+     * @param position The position of the first byte in the file.
+     * @return False if the end of the file was reached first.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer,
+                                     long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
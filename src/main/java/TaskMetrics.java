@@ -0,0 +1,311 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency metrics of the phases of commands, kept in one LatencyHistogram
+ * per phase for the whole process. Each phase is timed by a Timer, which also
+ * emits a PhaseEvent for Flight Recorder.
+ * <p>
+ * Metrics are added to a stats file when the process ends, so that those of
+ * separate commands can be reported together. Recording can be turned off
+ * with the "tasktracker.metrics" system property set to "false".
+ */
+public class TaskMetrics {
+    private static final int MAGIC = 0x54544d31; // "TTM1"
+    // System property that turns recording off when set to "false"
+    private static final String METRICS_PROPERTY = "tasktracker.metrics";
+    private static final boolean ENABLED = Boolean.parseBoolean(
+            System.getProperty(METRICS_PROPERTY, "true"));
+
+    private static final Map<Phase, LatencyHistogram> HISTOGRAMS =
+            new EnumMap<>(Phase.class);
+
+    static {
+        for (Phase phase : Phase.values()) {
+            HISTOGRAMS.put(phase, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Phases of a command that are timed.
+     */
+    public enum Phase {
+        // From the start of the JVM to the start of the command
+        STARTUP,
+        // Reading and parsing stored tasks
+        LOAD,
+        // Applying a change to the tasks in memory
+        MUTATE,
+        // Serializing changes and writing them to storage
+        COMMIT,
+        // Forcing written changes to the storage device
+        SYNC,
+        // Printing tasks
+        RENDER
+    }
+
+    /**
+     * Times a phase from its creation until it is closed, and then records
+     * it. Meant to be used in a try-with-resources statement.
+     */
+    public static class Timer implements AutoCloseable {
+        private final Phase phase;
+        private final long start;
+        private final PhaseEvent event;
+
+        /**
+         * Starts timing a phase.
+         *
+         * @param phase The phase.
+         */
+        private Timer(Phase phase) {
+            this.phase = phase;
+            event = new PhaseEvent();
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        /**
+         * Stops timing the phase and records its duration.
+         */
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - start;
+            if (ENABLED) {
+                HISTOGRAMS.get(phase).record(nanos);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name().toLowerCase();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Prevents instantiation, since all metrics belong to the process.
+     */
+    private TaskMetrics() {
+    }
+
+    /**
+     * Starts timing a phase.
+     *
+     * @param phase The phase.
+     * @return The timer, which records the phase when it is closed.
+     */
+    public static Timer time(Phase phase) {
+        return new Timer(phase);
+    }
+
+    /**
+     * Records the duration of a phase that was timed by other means.
+     *
+     * @param phase The phase.
+     * @param nanos The duration in nanoseconds.
+     */
+    public static void record(Phase phase, long nanos) {
+        if (ENABLED) {
+            HISTOGRAMS.get(phase).record(nanos);
+        }
+    }
+
+    /**
+     * Adds the metrics recorded since the last save to the stats file, and
+     * clears them. The file is locked meanwhile, so that processes ending at
+     * the same time do not lose each other's metrics. A file that cannot be
+     * read is started over.
+     *
+     * @param path The stats file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    public static void save(Path path) throws IOException {
+        if (!ENABLED || !hasRecords()) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            Map<Phase, LatencyHistogram> histograms = read(channel);
+            if (histograms == null) {
+                histograms = newHistograms();
+            }
+            for (Phase phase : Phase.values()) {
+                histograms.get(phase).add(HISTOGRAMS.get(phase));
+                HISTOGRAMS.get(phase).clear();
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(MAGIC);
+            output.writeInt(histograms.size());
+            for (Map.Entry<Phase, LatencyHistogram> entry :
+                    histograms.entrySet()) {
+                output.writeUTF(entry.getKey().name());
+                entry.getValue().write(output);
+            }
+            output.flush();
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(bytes.toByteArray()), 0);
+        }
+    }
+
+    /**
+     * Discards all metrics, both those in the stats file and those recorded
+     * since the last save.
+     *
+     * @param path The stats file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    public static void reset(Path path) throws IOException {
+        for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+            histogram.clear();
+        }
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            channel.truncate(0);
+        }
+    }
+
+    /**
+     * Prints a table with the count and the latencies of each phase, adding
+     * up those in the stats file and those recorded since the last save.
+     *
+     * @param path The stats file.
+     * @param out  The stream to print to.
+     * @throws IOException If an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    public static void print(Path path, PrintStream out) throws IOException {
+        Map<Phase, LatencyHistogram> histograms = null;
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path);
+                 FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+                histograms = read(channel);
+            }
+        }
+        if (histograms == null) {
+            histograms = newHistograms();
+        }
+
+        out.printf("%-8s %8s %10s %10s %10s%n", "Phase", "Count", "p50", "p99",
+                "Max");
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            histogram.add(HISTOGRAMS.get(phase));
+            out.printf("%-8s %8d %10s %10s %10s%n",
+                    phase.name().toLowerCase(), histogram.getCount(),
+                    formatNanos(histogram.getPercentile(50)),
+                    formatNanos(histogram.getPercentile(99)),
+                    formatNanos(histogram.getMax()));
+        }
+    }
+
+    /**
+     * Checks whether anything was recorded since the last save.
+     *
+     * @return True if any phase has been recorded.
+     */
+    private static boolean hasRecords() {
+        for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+            if (histogram.getCount() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates an empty histogram for every phase.
+     *
+     * @return The histograms by phase.
+     */
+    private static Map<Phase, LatencyHistogram> newHistograms() {
+        Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+        return histograms;
+    }
+
+    /**
+     * Reads the histograms of a stats file. Phases that are no longer known
+     * are skipped.
+     *
+     * @param channel The channel of the stats file.
+     * @return The histograms by phase, or null if the file is empty or not
+     *         valid.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static Map<Phase, LatencyHistogram> read(FileChannel channel)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        if (buffer.position() == 0) {
+            return null;
+        }
+
+        Map<Phase, LatencyHistogram> histograms = newHistograms();
+        try (DataInputStream input = new DataInputStream(
+                new ByteArrayInputStream(buffer.array(), 0,
+                        buffer.position()))) {
+            if (input.readInt() != MAGIC) {
+                return null;
+            }
+            int phaseCount = input.readInt();
+            for (int i = 0; i < phaseCount; i++) {
+                String name = input.readUTF();
+                LatencyHistogram histogram = new LatencyHistogram();
+                histogram.read(input);
+                for (Phase phase : Phase.values()) {
+                    if (phase.name().equals(name)) {
+                        histograms.get(phase).add(histogram);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Left partially written by a crash, so it is started over
+            return null;
+        }
+        return histograms;
+    }
+
+    /**
+     * Formats a duration with a unit that keeps it short.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @return The formatted duration.
+     */
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        } else if (nanos < 1_000_000) {
+            return String.format("%.1f us", nanos / 1e3);
+        } else if (nanos < 1_000_000_000) {
+            return String.format("%.1f ms", nanos / 1e6);
+        } else {
+            return String.format("%.2f s", nanos / 1e9);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Index from task ID to the byte offset at which the task's JSON object starts
+ * in a snapshot file. The index is built with one scan over the bytes of the
+ * snapshot, which only looks for object boundaries and IDs instead of parsing
+ * tasks, and is kept in a sidecar file so it is only built once per snapshot.
+ * <p>
+ * The sidecar file holds a header with the size and modification time of the
+ * snapshot it was built from, followed by entries sorted by ID, which are
+ * searched in place through a memory mapping.
+ */
+public class TaskOffsetIndex {
+    private static final int MAGIC = 0x54544958; // "TTIX"
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 12;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private final MappedByteBuffer entries;
+    private final int count;
+    private final int maxId;
+
+    /**
+     * Creates a TaskOffsetIndex over a mapped sidecar file.
+     *
+     * @param entries The mapped sidecar file.
+     */
+    private TaskOffsetIndex(MappedByteBuffer entries) {
+        this.entries = entries;
+        this.count = entries.getInt(4);
+        this.maxId = entries.getInt(8);
+    }
+
+    /**
+     * Opens the index of a snapshot file, building it first if the sidecar
+     * file does not exist or was built from a different version of the
+     * snapshot.
+     *
+     * @param snapshotPath The JSON snapshot file.
+     * @param indexPath    The sidecar file.
+     * @return The index.
+     * @throws IOException If an I/O error occurs or the snapshot is malformed.
+     */
+    public static TaskOffsetIndex open(Path snapshotPath, Path indexPath)
+            throws IOException {
+        long snapshotSize = Files.size(snapshotPath);
+        long snapshotModified =
+                Files.getLastModifiedTime(snapshotPath).toMillis();
+
+        if (Files.exists(indexPath)) {
+            TaskOffsetIndex index = map(indexPath);
+            if (index.entries.getLong(16) == snapshotSize &&
+                    index.entries.getLong(24) == snapshotModified) {
+                return index;
+            }
+        }
+
+        build(snapshotPath, indexPath, snapshotSize, snapshotModified);
+        return map(indexPath);
+    }
+
+    /**
+     * Returns the offset of the object of a task in the snapshot.
+     *
+     * @param id The task ID.
+     * @return The byte offset, or -1 if the task is not in the snapshot.
+     */
+    public long find(int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = entries.getInt(HEADER_SIZE + middle * ENTRY_SIZE);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return entries.getLong(HEADER_SIZE + middle * ENTRY_SIZE + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the highest ID in the snapshot.
+     *
+     * @return The highest ID, or 0 if the snapshot has no tasks.
+     */
+    public int getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * Returns the offsets of objects that split the snapshot into about the
+     * provided number of parts, to read them in parallel. The objects are
+     * taken at even intervals of the entries, which are sorted by ID, so the
+     * parts are even when tasks are stored in about the order of their IDs.
+     *
+     * @param parts The number of parts.
+     * @return The distinct offsets, in ascending order.
+     */
+    public long[] splitOffsets(int parts) {
+        long[] offsets = new long[Math.max(0, Math.min(parts, count) - 1)];
+        for (int i = 0; i < offsets.length; i++) {
+            int entry = (int) ((long) count * (i + 1) / (offsets.length + 1));
+            offsets[i] = entries.getLong(HEADER_SIZE + entry * ENTRY_SIZE + 4);
+        }
+        Arrays.sort(offsets);
+
+        int distinct = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (distinct == 0 || offsets[distinct - 1] != offsets[i]) {
+                offsets[distinct++] = offsets[i];
+            }
+        }
+        return Arrays.copyOf(offsets, distinct);
+    }
+
+    /**
+     * Maps an existing sidecar file.
+     *
+     * @param indexPath The sidecar file.
+     * @return The index.
+     * @throws IOException If an I/O error occurs or the file is not valid.
+     */
+    private static TaskOffsetIndex map(Path indexPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath)) {
+            MappedByteBuffer entries = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER_SIZE || entries.getInt(0) != MAGIC) {
+                throw new IOException("Not a task offset index file");
+            }
+            return new TaskOffsetIndex(entries);
+        }
+    }
+
+    /**
+     * Scans a snapshot for the offset and ID of every task object, and writes
+     * them sorted by ID to the sidecar file. The file is written under a
+     * temporary name and then moved into place, so it is never seen partially
+     * written.
+     *
+     * @param snapshotPath     The JSON snapshot file.
+     * @param indexPath        The sidecar file.
+     * @param snapshotSize     The size of the snapshot.
+     * @param snapshotModified The modification time of the snapshot.
+     * @throws IOException If an I/O error occurs or the snapshot is malformed.
+     */
+    private static void build(Path snapshotPath, Path indexPath,
+                              long snapshotSize, long snapshotModified)
+            throws IOException {
+        int[] ids = new int[1024];
+        long[] offsets = new long[1024];
+        int count = 0;
+
+        // Scanner state, carried over from one buffer to the next
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        boolean expectingKey = false;
+        int keyLength = 0;
+        boolean keyIsId = false;
+        boolean readingId = false;
+        boolean idFound = false;
+        long idValue = 0;
+        boolean idNegative = false;
+        long objectStart = 0;
+
+        try (FileChannel channel = FileChannel.open(snapshotPath)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            long position = 0;
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                for (int i = 0; i < buffer.limit(); i++, position++) {
+                    byte character = buffer.get(i);
+
+                    if (inString) {
+                        // Look for the end of the string, and match keys
+                        if (escaped) {
+                            escaped = false;
+                            keyIsId = false;
+                        } else if (character == '\\') {
+                            escaped = true;
+                        } else if (character == '"') {
+                            inString = false;
+                            keyIsId &= keyLength == 2;
+                        } else if (keyIsId) {
+                            keyIsId = keyLength < 2 &&
+                                    character == "id".charAt(keyLength);
+                            keyLength++;
+                        }
+                        continue;
+                    }
+
+                    if (readingId) {
+                        if (character >= '0' && character <= '9') {
+                            idValue = idValue * 10 + (character - '0');
+                            idFound = true;
+                            continue;
+                        } else if (character == '-' && !idFound) {
+                            idNegative = true;
+                            continue;
+                        } else if (character == ' ' || character == '\n' ||
+                                character == '\r' || character == '\t') {
+                            if (!idFound) {
+                                continue;
+                            }
+                        }
+                        readingId = false;
+                    }
+
+                    switch (character) {
+                        case '"':
+                            inString = true;
+                            keyIsId = expectingKey && depth == 2;
+                            keyLength = 0;
+                            expectingKey = false;
+                            break;
+                        case ':':
+                            if (keyIsId) {
+                                readingId = true;
+                                idValue = 0;
+                                idNegative = false;
+                                keyIsId = false;
+                            }
+                            break;
+                        case ',':
+                            expectingKey = depth == 2;
+                            break;
+                        case '[':
+                            depth++;
+                            break;
+                        case '{':
+                            depth++;
+                            if (depth == 2) {
+                                objectStart = position;
+                                idFound = false;
+                                expectingKey = true;
+                            }
+                            break;
+                        case ']':
+                            depth--;
+                            break;
+                        case '}':
+                            depth--;
+                            if (depth == 1) {
+                                if (!idFound) {
+                                    throw new IOException("Task without ID " +
+                                            "at byte " + objectStart);
+                                }
+                                if (count == ids.length) {
+                                    ids = Arrays.copyOf(ids, count * 2);
+                                    offsets = Arrays.copyOf(offsets, count * 2);
+                                }
+                                ids[count] = (int) (idNegative ?
+                                        -idValue : idValue);
+                                offsets[count] = objectStart;
+                                count++;
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                buffer.clear();
+            }
+        }
+
+        /*
+        Sort the entries by ID. Each key packs an ID in its high bits with the
+        position of its entry in the unsorted arrays in its low bits.
+         */
+        long[] keys = new long[count];
+        int maxId = 0;
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) ids[i] << 32) | i;
+            maxId = Math.max(maxId, ids[i]);
+        }
+        Arrays.sort(keys);
+
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + count * ENTRY_SIZE);
+        file.putInt(MAGIC).putInt(count).putInt(maxId).putInt(0)
+                .putLong(snapshotSize).putLong(snapshotModified);
+        for (long key : keys) {
+            int entry = (int) key;
+            file.putInt(ids[entry]).putLong(offsets[entry]);
+        }
+
+        // Each process uses its own temporary file, in case several build it
+        Path temporaryPath = indexPath.resolveSibling(
+                indexPath.getFileName() + "." + ProcessHandle.current().pid() +
+                        ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                file.flip();
+                while (file.hasRemaining()) {
+                    channel.write(file);
+                }
+            }
+            Files.move(temporaryPath, indexPath,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.time.LocalDateTime;
+
+/**
+ * Prints tasks to an output stream through one large buffer. Every task is
+ * rendered into the same reusable builder, and timestamps are formatted by
+ * hand directly into it, so printing does not allocate per task.
+ */
+public class TaskPrinter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String CSV_HEADER =
+            "id,description,status,createdAt,updatedAt\n";
+
+    /**
+     * Formats in which tasks can be printed.
+     */
+    public enum Format {
+        // Multi-line format meant to be read by people
+        TEXT,
+        // One JSON object per line, meant to be read by scripts
+        JSON,
+        // One record per line after a header, meant for spreadsheets
+        CSV
+    }
+
+    private final Writer writer;
+    private final Format format;
+    private final StringBuilder builder = new StringBuilder(256);
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferLength;
+
+    /**
+     * Creates a TaskPrinter that writes to the provided stream in the default
+     * charset.
+     *
+     * @param output The stream to print to.
+     * @param format The format in which tasks are printed.
+     */
+    public TaskPrinter(OutputStream output, Format format) {
+        this(output, format, Charset.defaultCharset());
+    }
+
+    /**
+     * Creates a TaskPrinter that writes to the provided stream. CSV output
+     * starts with a header line.
+     *
+     * @param output  The stream to print to.
+     * @param format  The format in which tasks are printed.
+     * @param charset The charset in which text is encoded.
+     */
+    public TaskPrinter(OutputStream output, Format format, Charset charset) {
+        this.writer = new OutputStreamWriter(output, charset);
+        this.format = format;
+        if (format == Format.CSV) {
+            CSV_HEADER.getChars(0, CSV_HEADER.length(), buffer, 0);
+            bufferLength = CSV_HEADER.length();
+        }
+    }
+
+    /**
+     * Prints a task. Output is held in the buffer until it fills up or the
+     * printer is flushed.
+     *
+     * @param task The task to print.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void print(Task task) throws IOException {
+        builder.setLength(0);
+        switch (format) {
+            case JSON:
+                JsonConverter.appendJsonObject(builder, task);
+                break;
+            case CSV:
+                appendCsv(builder, task);
+                break;
+            default:
+                appendText(builder, task);
+                break;
+        }
+        builder.append('\n');
+
+        // Copy the builder into the buffer, writing it out each time it fills
+        int start = 0;
+        while (start < builder.length()) {
+            int count = Math.min(builder.length() - start,
+                    buffer.length - bufferLength);
+            builder.getChars(start, start + count, buffer, bufferLength);
+            bufferLength += count;
+            start += count;
+            if (bufferLength == buffer.length) {
+                writeBuffer();
+            }
+        }
+    }
+
+    /**
+     * Writes out all buffered output.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void flush() throws IOException {
+        writeBuffer();
+        writer.flush();
+    }
+
+    /**
+     * Writes the contents of the buffer to the underlying writer.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeBuffer() throws IOException {
+        writer.write(buffer, 0, bufferLength);
+        bufferLength = 0;
+    }
+
+    /**
+     * Appends the human-readable representation of a task to a builder.
+     *
+     * @param builder The builder to append to.
+     * @param task    The task to represent.
+     * @return The builder.
+     */
+    public static StringBuilder appendText(StringBuilder builder, Task task) {
+        builder.append("ID ").append(task.getId()).append(':')
+                .append("\n  Description: \"").append(task.getDescription())
+                .append('"')
+                .append("\n  Status: ").append(task.getStatus().getLabel())
+                .append("\n  Created at: ");
+        appendDateTime(builder, task.getCreatedAt());
+        builder.append("\n  Updated at: ");
+        appendDateTime(builder, task.getUpdatedAt());
+        return builder;
+    }
+
+    /**
+     * Appends the CSV record of a task to a builder, with the same columns as
+     * the header. The description is quoted if it holds commas, quotes or
+     * line breaks.
+     *
+     * @param builder The builder to append to.
+     * @param task    The task to represent.
+     * @return The builder.
+     */
+    public static StringBuilder appendCsv(StringBuilder builder, Task task) {
+        builder.append(task.getId()).append(',');
+        String description = task.getDescription();
+        boolean quoted = false;
+        for (int i = 0; i < description.length() && !quoted; i++) {
+            char character = description.charAt(i);
+            quoted = character == ',' || character == '"' ||
+                    character == '\n' || character == '\r';
+        }
+        if (quoted) {
+            builder.append('"').append(description.replace("\"", "\"\""))
+                    .append('"');
+        } else {
+            builder.append(description);
+        }
+        return builder.append(',').append(task.getStatus())
+                .append(',').append(task.getCreatedAt())
+                .append(',').append(task.getUpdatedAt());
+    }
+
+    /**
+     * Appends a timestamp with the pattern "yyyy-MM-dd HH:mm" to a builder.
+     *
+     * @param builder  The builder to append to.
+     * @param dateTime The timestamp to format.
+     */
+    private static void appendDateTime(StringBuilder builder,
+                                       LocalDateTime dateTime) {
+        appendPadded(builder, dateTime.getYear(), 4);
+        builder.append('-');
+        appendPadded(builder, dateTime.getMonthValue(), 2);
+        builder.append('-');
+        appendPadded(builder, dateTime.getDayOfMonth(), 2);
+        builder.append(' ');
+        appendPadded(builder, dateTime.getHour(), 2);
+        builder.append(':');
+        appendPadded(builder, dateTime.getMinute(), 2);
+    }
+
+    /**
+     * Appends a number padded with leading zeros to a builder.
+     *
+     * @param builder The builder to append to.
+     * @param value   The number, which must not be negative.
+     * @param width   The minimum number of digits.
+     */
+    private static void appendPadded(StringBuilder builder, int value,
+                                     int width) {
+        for (int limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        builder.append(value);
+    }
+}
@@ -0,0 +1,263 @@
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Criteria for listing tasks: an optional status, and an optional time range
+ * on either the creation or the update time of the tasks. Tasks can also be
+ * sorted, and only a page of them listed, given by an offset and a limit.
+ */
+public class TaskQuery {
+    /**
+     * Timestamps of a task a time range can apply to.
+     */
+    public enum TimeField {
+        CREATED,
+        UPDATED;
+
+        /**
+         * Returns this timestamp of a task.
+         *
+         * @param task The task.
+         * @return The creation or update time, or null if the task has none.
+         */
+        public LocalDateTime of(Task task) {
+            return this == CREATED ? task.getCreatedAt() : task.getUpdatedAt();
+        }
+    }
+
+    /**
+     * Fields tasks can be sorted by.
+     */
+    public enum SortField {
+        ID,
+        CREATED,
+        UPDATED
+    }
+
+    private TaskStatus status;
+    private LocalDateTime since;
+    private LocalDateTime until;
+    private TimeField timeField = TimeField.UPDATED;
+    private SortField sortField;
+    private boolean descending;
+    private int offset;
+    private int limit = -1;
+
+    /**
+     * Returns the status of the tasks to list.
+     *
+     * @return The status, or null for tasks with any status.
+     */
+    public TaskStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Sets the status of the tasks to list.
+     *
+     * @param status The status, or null for tasks with any status.
+     */
+    public void setStatus(TaskStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * Returns the start of the time range.
+     *
+     * @return The start of the range, inclusive, or null for no start.
+     */
+    public LocalDateTime getSince() {
+        return since;
+    }
+
+    /**
+     * Sets the start of the time range.
+     *
+     * @param since The start of the range, inclusive, or null for no start.
+     */
+    public void setSince(LocalDateTime since) {
+        this.since = since;
+    }
+
+    /**
+     * Returns the end of the time range.
+     *
+     * @return The end of the range, exclusive, or null for no end.
+     */
+    public LocalDateTime getUntil() {
+        return until;
+    }
+
+    /**
+     * Sets the end of the time range.
+     *
+     * @param until The end of the range, exclusive, or null for no end.
+     */
+    public void setUntil(LocalDateTime until) {
+        this.until = until;
+    }
+
+    /**
+     * Returns the timestamp the time range applies to.
+     *
+     * @return The timestamp the time range applies to.
+     */
+    public TimeField getTimeField() {
+        return timeField;
+    }
+
+    /**
+     * Sets the timestamp the time range applies to.
+     *
+     * @param timeField The timestamp the time range applies to.
+     */
+    public void setTimeField(TimeField timeField) {
+        this.timeField = timeField;
+    }
+
+    /**
+     * Returns the field tasks are sorted by.
+     *
+     * @return The sort field, or null to list tasks in the order they are
+     *         stored.
+     */
+    public SortField getSortField() {
+        return sortField;
+    }
+
+    /**
+     * Sets the field tasks are sorted by.
+     *
+     * @param sortField The sort field, or null to list tasks in the order they
+     *                  are stored.
+     */
+    public void setSortField(SortField sortField) {
+        this.sortField = sortField;
+    }
+
+    /**
+     * Checks whether tasks are sorted from the highest value to the lowest.
+     *
+     * @return True if tasks are sorted in descending order.
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Sets whether tasks are sorted from the highest value to the lowest.
+     *
+     * @param descending True to sort tasks in descending order.
+     */
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    /**
+     * Returns the number of matching tasks skipped before listing any.
+     *
+     * @return The offset.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Sets the number of matching tasks skipped before listing any.
+     *
+     * @param offset The offset, which must not be negative.
+     */
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the largest number of tasks listed.
+     *
+     * @return The limit, or -1 for no limit.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the largest number of tasks listed.
+     *
+     * @param limit The limit, or -1 for no limit.
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Checks whether the number of tasks listed is limited.
+     *
+     * @return True if the query has a limit.
+     */
+    public boolean hasLimit() {
+        return limit >= 0;
+    }
+
+    /**
+     * Returns the order of the sort field, with ties broken by ID.
+     *
+     * @return The comparator, or null if tasks are not sorted.
+     */
+    public Comparator<Task> getOrder() {
+        if (sortField == null) {
+            return null;
+        }
+        Comparator<Task> order = Comparator.comparingInt(Task::getId);
+        if (sortField != SortField.ID) {
+            order = Comparator.comparing(this::getSortTime)
+                    .thenComparing(order);
+        }
+        return descending ? order.reversed() : order;
+    }
+
+    /**
+     * Returns the timestamp of a task that it is sorted by.
+     *
+     * @param task The task.
+     * @return The creation or update time, or null if tasks are not sorted
+     *         by time or the task has no such timestamp.
+     */
+    public LocalDateTime getSortTime(Task task) {
+        if (sortField == SortField.CREATED) {
+            return task.getCreatedAt();
+        } else if (sortField == SortField.UPDATED) {
+            return task.getUpdatedAt();
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the query has a time range.
+     *
+     * @return True if the query has a start or an end of a time range.
+     */
+    public boolean hasTimeRange() {
+        return since != null || until != null;
+    }
+
+    /**
+     * Checks whether a task meets the criteria of the query.
+     *
+     * @param task The task.
+     * @return True if the task has the status and is in the time range, if
+     *         the query has them.
+     */
+    public boolean matches(Task task) {
+        if (status != null && task.getStatus() != status) {
+            return false;
+        }
+        if (!hasTimeRange()) {
+            return true;
+        }
+
+        LocalDateTime time = timeField == TimeField.CREATED ?
+                task.getCreatedAt() : task.getUpdatedAt();
+        return time != null && (since == null || !time.isBefore(since)) &&
+                (until == null || time.isBefore(until));
+    }
+}
@@ -1,37 +1,236 @@
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 /**
- * Serves as a repository for managing tasks stored in a JSON file.
+ * Serves as a repository for managing tasks kept in a storage engine.
+ * <p>
+ * Several processes can use the same storage at once. Each one changes its
+ * own copy of the tasks, and only holds the StoreLock while it commits them.
+ * If another process has committed in the meantime, each changed task is
+ * checked against its stored version: changes to tasks that were changed by
+ * the other process too are rejected, new tasks are given the next free IDs,
+ * and all other changes are committed as usual.
+ * <p>
+ * Public methods are synchronized, since a TaskFlusher may write changes from
+ * its own thread in the meantime.
  */
 public class TaskRepository {
+    // Name of the task list kept directly in the default directory
+    public static final String DEFAULT_LIST = "default";
     private static final String ERROR_TASK_NOT_FOUND =
             "ERROR: Task with ID %s not found";
-    private static final Path FILE_PATH =
-            Path.of("src/main/resources/tasks.json");
-    private List<Task> tasks;
+    private static final String ERROR_TASK_CHANGED =
+            "ERROR: Task with ID %s was changed by another process";
+    private static final String ERROR_TASK_REASSIGNED =
+            "ERROR: Task with ID %s was saved with ID %s instead";
+    // Directory of the default task list, which holds the stats file and
+    // the directories of the other lists too
+    private static final Path DEFAULT_DIRECTORY =
+            Path.of("src/main/resources");
+    private static final Path LISTS_DIRECTORY =
+            DEFAULT_DIRECTORY.resolve("lists");
+    private static final Path STATS_PATH =
+            DEFAULT_DIRECTORY.resolve("tasks.stats");
+    private static final Pattern LIST_NAME_PATTERN =
+            Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    // System property that selects the storage engine: "json" or "binary"
+    private static final String STORAGE_PROPERTY = "tasktracker.storage";
+    // System property that enables loading tasks only when they are needed
+    private static final String LAZY_PROPERTY = "tasktracker.lazy";
+    // System property that selects the Durability: "sync", "group" or
+    // "buffered"
+    private static final String DURABILITY_PROPERTY = "tasktracker.durability";
+    // System property that enables confirming changes before they are written
+    private static final String WRITE_BEHIND_PROPERTY =
+            "tasktracker.writeBehind";
+    // System properties with the longest time between flushes, in
+    // milliseconds, and the number of pending changes that triggers one
+    private static final String FLUSH_INTERVAL_PROPERTY =
+            "tasktracker.flushInterval";
+    private static final String FLUSH_CHANGES_PROPERTY =
+            "tasktracker.flushChanges";
+    // System property that enables reloading changes as soon as other
+    // processes commit them
+    private static final String WATCH_PROPERTY = "tasktracker.watch";
+    // Number of imported tasks committed together
+    private static final int IMPORT_BATCH_SIZE = 10000;
+    private TaskIndex tasks = new TaskIndex();
+    private TaskStorage storage;
+    // Files of the store, all in the directory of the task list
+    private final Path filePath;
+    private final Path logPath;
+    private final Path recordsPath;
+    private final Path heapPath;
+    private final Path offsetIndexPath;
+    private final Path manifestPath;
+    private final Path lockPath;
+    private final Path searchPath;
+    private final Path searchLogPath;
+    private final Path archivePath;
+    private final SearchIndex searchIndex;
+    private final TaskArchive archive;
+
+    // Whether all tasks are loaded, and the IDs deleted while they are not
+    private boolean loaded;
+    private final Set<Integer> deletedIds = new HashSet<>();
+    // Whether the loaded tasks are exactly those the storage engine last
+    // read, so that it can reload only what changed since
+    private boolean synced;
+
+    // Version of the store that the loaded tasks correspond to
+    private long knownVersion;
+
+    // Changes and confirmations held back until the open batch is committed
+    private int batchDepth;
+    private final ChangeSet batchChanges = new ChangeSet();
+    private final List<Confirmation> confirmations = new ArrayList<>();
+
+    // How commits are forced to disk, and whether some are not forced yet
+    private Durability durability = Durability.SYNC;
+    private boolean unsynced;
+
+    // Changes confirmed but not written yet in write-behind mode, and the
+    // thread that writes them, or that forces commits in group durability
+    private boolean writeBehind;
+    private int flushChanges;
+    private final ChangeSet pendingChanges = new ChangeSet();
+    private TaskFlusher flusher;
+
+    // Thread that reloads changes committed by other processes
+    private TaskWatcher watcher;
+
+    /**
+     * Message printed once a change to a task has been persisted.
+     */
+    private static class Confirmation {
+        private final int id;
+        private final Supplier<String> message;
+
+        /**
+         * Creates a Confirmation for a change to a task.
+         *
+         * @param id      The task ID.
+         * @param message The message, built once the change is persisted.
+         */
+        private Confirmation(int id, Supplier<String> message) {
+            this.id = id;
+            this.message = message;
+        }
+    }
 
     /**
-     * Initializes the repository by loading tasks from the JSON file. If the
-     * file does not exist, it is created.
+     * Initializes the repository by loading tasks from the storage engine
+     * selected with the "tasktracker.storage" system property. The JSON file
+     * is used by default. A store left inconsistent by a process that died
+     * while writing it is recovered first.
+     * <p>
+     * If the "tasktracker.lazy" system property is "true", only the sequence
+     * of IDs is loaded at first. Tasks are then loaded one by one as commands
+     * need them, and all at once only when they are listed.
+     * <p>
+     * The "tasktracker.durability" system property selects how commits are
+     * forced to disk, every one by default. If "tasktracker.writeBehind" is
+     * "true", changes are confirmed right away and written in the background
+     * together, once every "tasktracker.flushInterval" milliseconds or every
+     * "tasktracker.flushChanges" changes.
+     * <p>
+     * If "tasktracker.watch" is "true", changes committed by other processes
+     * are applied to the loaded tasks as soon as they are committed, instead
+     * of when the next command is executed.
      */
     public TaskRepository() {
+        this(DEFAULT_LIST);
+    }
+
+    /**
+     * Initializes the repository of a named task list, as the default one
+     * is. Each list has its own directory, with its own store, lock, search
+     * index and archive, so that commands on one list neither load nor lock
+     * the tasks of the others. The directory is created if the list does not
+     * exist yet.
+     *
+     * @param listName The name of the task list, which must be valid.
+     * @throws IllegalArgumentException If the name is not valid.
+     */
+    @SuppressWarnings("try")
+    public TaskRepository(String listName) {
+        if (!isValidListName(listName)) {
+            throw new IllegalArgumentException(
+                    "Invalid list name \"" + listName + "\"");
+        }
+        Path directory = listName.equals(DEFAULT_LIST) ? DEFAULT_DIRECTORY :
+                LISTS_DIRECTORY.resolve(listName);
+        filePath = directory.resolve("tasks.json");
+        logPath = directory.resolve("tasks.log");
+        recordsPath = directory.resolve("tasks.bin");
+        heapPath = directory.resolve("tasks.heap");
+        offsetIndexPath = directory.resolve("tasks.idx");
+        manifestPath = directory.resolve("tasks.manifest");
+        lockPath = directory.resolve("tasks.lock");
+        searchPath = directory.resolve("tasks.search");
+        searchLogPath = directory.resolve("tasks.search.log");
+        archivePath = directory.resolve("archive");
+        searchIndex = new SearchIndex(searchPath, searchLogPath);
+        archive = new TaskArchive(archivePath);
+
         try {
-            if (!Files.exists(FILE_PATH)) {
-                Files.createFile(FILE_PATH);
-                tasks = new ArrayList<>();
-            } else {
-                String fileContent = Files.readString(FILE_PATH).trim();
-                if (fileContent.isEmpty()) {
-                    tasks = new ArrayList<>();
+            if (directory != DEFAULT_DIRECTORY) {
+                Files.createDirectories(directory);
+            }
+            durability = parseDurability(
+                    System.getProperty(DURABILITY_PROPERTY, "sync"));
+            storage = createStorage(
+                    System.getProperty(STORAGE_PROPERTY, "json"));
+            // A process died while writing the store, which other processes
+            // see as a new version once it is recovered
+            if (storage.needsRecovery()) {
+                try (StoreLock lock = StoreLock.acquire(lockPath)) {
+                    // Unless another process recovered it meanwhile
+                    if (storage.needsRecovery()) {
+                        lock.increment();
+                        storage.recover();
+                    }
+                }
+            }
+            // Read before the tasks, so that later commits are not missed
+            knownVersion = StoreLock.readVersion(lockPath);
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.LOAD)) {
+                if (Boolean.getBoolean(LAZY_PROPERTY)) {
+                    tasks.advanceNextId(storage.loadNextId());
                 } else {
-                    tasks = JsonConverter.jsonArrayToTasks(fileContent);
+                    storage.load(tasks);
+                    loaded = true;
+                    synced = true;
                 }
             }
+
+            // Only started once the tasks are loaded, so it has them to write
+            writeBehind = Boolean.getBoolean(WRITE_BEHIND_PROPERTY);
+            flushChanges = Math.max(1,
+                    Integer.getInteger(FLUSH_CHANGES_PROPERTY, 1000));
+            if (writeBehind || durability == Durability.GROUP) {
+                flusher = new TaskFlusher(Math.max(1, Long.getLong(
+                        FLUSH_INTERVAL_PROPERTY, 1000)), this::flush);
+            }
+            if (Boolean.getBoolean(WATCH_PROPERTY)) {
+                watcher = new TaskWatcher(lockPath, this::reload);
+            }
         } catch (IOException e) {
             System.out.println("ERROR: Failed to load tasks: " +
                     e.getMessage());
@@ -39,12 +238,551 @@ public class TaskRepository {
     }
 
     /**
-     * Saves the updated list of tasks to the JSON file.
+     * Creates the storage engine with the provided name.
+     *
+     * @param name The name of the storage engine: "json" or "binary".
+     * @return The storage engine.
+     * @throws IOException If an I/O error occurs or the name is not valid.
+     */
+    private TaskStorage createStorage(String name) throws IOException {
+        switch (name.toLowerCase()) {
+            case "json":
+                return new JsonTaskStorage(filePath, logPath,
+                        offsetIndexPath, manifestPath);
+            case "binary":
+                return new BinaryTaskStorage(recordsPath, heapPath);
+            default:
+                throw new IOException("Unknown storage engine \"" + name +
+                        "\"");
+        }
+    }
+
+    /**
+     * Returns the durability with the provided name.
+     *
+     * @param name The name of the durability: "sync", "group" or "buffered".
+     * @return The durability.
+     * @throws IOException If the name is not valid.
+     */
+    private static Durability parseDurability(String name) throws IOException {
+        switch (name.toLowerCase()) {
+            case "sync":
+                return Durability.SYNC;
+            case "group":
+                return Durability.GROUP;
+            case "buffered":
+                return Durability.BUFFERED;
+            default:
+                throw new IOException("Unknown durability \"" + name + "\"");
+        }
+    }
+
+    /**
+     * Starts timing a phase of a command. The timer is never referenced in
+     * the try statement it is opened by, which is why the methods using it
+     * suppress the "try" lint warning.
+     *
+     * @param phase The phase.
+     * @return The timer, which records the phase when it is closed.
+     */
+    private static TaskMetrics.Timer time(TaskMetrics.Phase phase) {
+        return TaskMetrics.time(phase);
+    }
+
+    /**
+     * Checks whether a name can be used for a task list, which it can if it
+     * is made of 1 to 64 letters, digits, hyphens and underscores, so that it
+     * is also a valid directory name.
+     *
+     * @param listName The name of the task list.
+     * @return True if the name is valid.
+     */
+    public static boolean isValidListName(String listName) {
+        return listName != null &&
+                LIST_NAME_PATTERN.matcher(listName).matches();
+    }
+
+    /**
+     * Stops the watcher and the flusher, commits the open batch if there is
+     * one, writes and forces the changes the flusher had not written yet, and
+     * closes the storage engine.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close() throws IOException {
+        // Not synchronized, since the threads may be waiting for the lock
+        if (watcher != null) {
+            watcher.close();
+        }
+        if (flusher != null) {
+            flusher.close();
+        }
+        synchronized (this) {
+            if (batchDepth > 0) {
+                batchDepth = 0;
+                persistChanges("ERROR: Failed to save changes: ");
+            }
+            flush();
+            if (storage != null) {
+                storage.close();
+            }
+        }
+        saveStats();
+    }
+
+    /**
+     * Adds the metrics recorded by this process to the stats file, unless
+     * there is no storage directory to keep it in yet. Errors are printed to
+     * the standard error, since metrics are not part of any command.
+     */
+    public static void saveStats() {
+        if (!Files.isDirectory(STATS_PATH.getParent())) {
+            return;
+        }
+        try {
+            TaskMetrics.save(STATS_PATH);
+        } catch (IOException e) {
+            System.err.println("ERROR: Failed to save stats: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the changes confirmed in write-behind mode, and forces the
+     * commits not forced yet in group durability. Called by the flusher, so
+     * errors are printed to the standard error, since there is no command to
+     * report them to. The same goes for added tasks whose confirmed IDs were
+     * taken by another process meanwhile, and which are saved with other IDs.
+     * Changes that cannot be written are kept, and written again by the next
+     * flush.
+     */
+    @SuppressWarnings("try")
+    public synchronized void flush() {
+        try {
+            if (!pendingChanges.isEmpty()) {
+                // Committing gives the added tasks new IDs if theirs are taken
+                List<Integer> addedIds = new ArrayList<>();
+                List<Task> addedTasks = new ArrayList<>();
+                for (int id : pendingChanges.getIds()) {
+                    if (pendingChanges.isAdded(id) &&
+                            pendingChanges.get(id) != null) {
+                        addedIds.add(id);
+                        addedTasks.add(pendingChanges.get(id));
+                    }
+                }
+                for (int id : commit(pendingChanges)) {
+                    System.err.printf(ERROR_TASK_CHANGED + "\n", id);
+                }
+                for (int i = 0; i < addedTasks.size(); i++) {
+                    int id = addedTasks.get(i).getId();
+                    if (id != addedIds.get(i)) {
+                        System.err.printf(ERROR_TASK_REASSIGNED + "\n",
+                                addedIds.get(i), id);
+                    }
+                }
+                pendingChanges.clear();
+            }
+            if (unsynced) {
+                try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.SYNC)) {
+                    storage.sync();
+                }
+                unsynced = false;
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: Failed to save changes: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the changes committed by other processes since the tasks were
+     * loaded. Called by the watcher, so errors are printed to the standard
+     * error, since there is no command to report them to.
+     */
+    public synchronized void reload() {
+        try {
+            checkVersion();
+        } catch (IOException e) {
+            System.err.println("ERROR: Failed to reload tasks: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the task with the provided ID, loading it from storage if it is
+     * not loaded yet.
+     *
+     * @param id The task ID.
+     * @return The task, or null if there is none with that ID.
+     * @throws IOException If the task cannot be loaded.
+     */
+    @SuppressWarnings("try")
+    private Task findTask(int id) throws IOException {
+        checkVersion();
+        Task task = tasks.get(id);
+        if (task == null && !loaded && !deletedIds.contains(id)) {
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.LOAD)) {
+                task = storage.load(id);
+            }
+            if (task != null) {
+                tasks.put(task);
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Loads the tasks with the provided IDs ahead of a command that changes
+     * them one at a time, so that they are read from storage in a single pass
+     * rather than once each. Tasks that cannot be loaded are left to the
+     * command, which loads them again and reports the error.
+     *
+     * @param ids The task IDs.
+     */
+    public synchronized void prefetchTasks(int[] ids) {
+        try {
+            checkVersion();
+            loadTasks(ids);
+        } catch (IOException e) {
+            // Reported by the command for each task
+        }
+    }
+
+    /**
+     * Loads the tasks with the provided IDs that are not loaded yet, all at
+     * once.
+     *
+     * @param ids The task IDs.
+     * @throws IOException If the tasks cannot be loaded.
+     */
+    @SuppressWarnings("try")
+    private void loadTasks(int[] ids) throws IOException {
+        if (loaded) {
+            return;
+        }
+
+        int[] missingIds = new int[ids.length];
+        int count = 0;
+        for (int id : ids) {
+            if (tasks.get(id) == null && !deletedIds.contains(id)) {
+                missingIds[count++] = id;
+            }
+        }
+        try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.LOAD)) {
+            storage.load(Arrays.copyOf(missingIds, count), tasks);
+        }
+    }
+
+    /**
+     * Loads all tasks, if they are not loaded yet. Tasks that were already
+     * loaded, and possibly changed, take precedence over the stored ones.
+     *
+     * @throws IOException If the tasks cannot be loaded.
+     */
+    private void loadAll() throws IOException {
+        checkVersion();
+        loadRemaining();
+    }
+
+    /**
+     * Loads the tasks that are not loaded yet, without checking the version
+     * of the store first.
+     *
+     * @throws IOException If the tasks cannot be loaded.
+     */
+    @SuppressWarnings("try")
+    private void loadRemaining() throws IOException {
+        if (loaded) {
+            return;
+        }
+
+        TaskIndex allTasks = new TaskIndex();
+        try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.LOAD)) {
+            storage.load(allTasks);
+        }
+        // Tasks loaded before may be older than the stored ones
+        synced = tasks.size() == 0 && deletedIds.isEmpty();
+        for (Task task : tasks) {
+            allTasks.put(task);
+        }
+        for (int id : deletedIds) {
+            allTasks.remove(id);
+        }
+        allTasks.advanceNextId(tasks.getNextId());
+
+        tasks = allTasks;
+        deletedIds.clear();
+        loaded = true;
+    }
+
+    /**
+     * Brings the loaded tasks up to date if another process has committed
+     * changes since they were loaded. If all tasks are loaded, only those that
+     * changed are reloaded; otherwise the loaded tasks are discarded, so that
+     * they are loaded again as needed. Tasks are never changed while a batch
+     * is open or changes are waiting to be flushed, since they may hold
+     * changes that are not persisted yet.
+     *
+     * @throws IOException If the version of the store cannot be read, or the
+     *                     tasks cannot be reloaded.
+     */
+    private void checkVersion() throws IOException {
+        if (batchDepth > 0 || !pendingChanges.isEmpty()) {
+            return;
+        }
+        long version = StoreLock.readVersion(lockPath);
+        if (version == knownVersion) {
+            return;
+        }
+        if (!loaded) {
+            discardTasks();
+            knownVersion = version;
+            return;
+        }
+
+        // Held, since a commit increments the version before writing
+        try (StoreLock lock = StoreLock.acquire(lockPath)) {
+            if (lock.getVersion() != knownVersion) {
+                reloadTasks();
+                knownVersion = lock.getVersion();
+            }
+        }
+    }
+
+    /**
+     * Applies the changes committed by other processes to the loaded tasks,
+     * replacing only the tasks that changed. The storage engine reloads them
+     * incrementally if the loaded tasks are exactly those it last read;
+     * otherwise, all tasks are loaded again and diffed by ID and update time.
+     * Must be called while holding the StoreLock, with all tasks loaded.
+     *
+     * @throws IOException If the tasks cannot be reloaded.
+     */
+    @SuppressWarnings("try")
+    private void reloadTasks() throws IOException {
+        try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.LOAD)) {
+            storage.refresh();
+            if (!synced || !storage.reload(tasks)) {
+                TaskIndex storedTasks = new TaskIndex();
+                storage.load(storedTasks);
+                tasks.merge(storedTasks);
+            }
+        }
+        synced = true;
+        searchIndex.unload();
+    }
+
+    /**
+     * Discards all loaded tasks, keeping only the sequence of IDs.
+     *
+     * @throws IOException If the sequence of IDs cannot be loaded.
+     */
+    private void discardTasks() throws IOException {
+        storage.refresh();
+        tasks = new TaskIndex();
+        tasks.advanceNextId(storage.loadNextId());
+        loaded = false;
+        deletedIds.clear();
+        searchIndex.unload();
+    }
+
+    /**
+     * Persists a set of changes and prints a confirmation. If a batch is open,
+     * both are deferred until it is committed.
+     *
+     * @param changes        The changes to persist.
+     * @param id             The ID of the changed task.
+     * @param successMessage The message to print once they are persisted.
+     * @param failureMessage The message to print, followed by the cause, if
+     *                       they cannot be persisted.
+     */
+    private void saveChanges(ChangeSet changes, int id,
+                             Supplier<String> successMessage,
+                             String failureMessage) {
+        batchChanges.addAll(changes);
+        confirmations.add(new Confirmation(id, successMessage));
+        if (batchDepth == 0) {
+            persistChanges(failureMessage);
+        }
+    }
+
+    /**
+     * Opens a batch. Changes made until the matching call to commitBatch()
+     * are applied in memory right away, but persisted together only once the
+     * batch is committed. Batches can be nested, in which case the changes are
+     * persisted when the outermost batch is committed.
+     */
+    public synchronized void beginBatch() {
+        if (batchDepth == 0) {
+            try {
+                checkVersion();
+            } catch (IOException e) {
+                System.out.println("ERROR: Failed to load tasks: " +
+                        e.getMessage());
+            }
+        }
+        batchDepth++;
+    }
+
+    /**
+     * Commits the open batch, persisting all its changes with a single write
+     * and then printing the confirmation of each of them. Errors, such as IDs
+     * that are not found, are printed as they happen instead.
+     */
+    public synchronized void commitBatch() {
+        if (batchDepth == 0 || --batchDepth > 0) {
+            return;
+        }
+        persistChanges("ERROR: Failed to save changes: ");
+    }
+
+    /**
+     * Persists the pending changes and prints their confirmations, or an error
+     * for each task whose changes were rejected. In write-behind mode, the
+     * confirmations are printed right away, and the changes are left for the
+     * flusher, which is woken up early once enough of them are waiting.
+     *
+     * @param failureMessage The message to print, followed by the cause, if
+     *                       the changes cannot be persisted.
+     */
+    private void persistChanges(String failureMessage) {
+        if (writeBehind) {
+            pendingChanges.addAll(batchChanges);
+            for (Confirmation confirmation : confirmations) {
+                System.out.println(confirmation.message.get());
+            }
+            batchChanges.clear();
+            confirmations.clear();
+            if (pendingChanges.size() >= flushChanges) {
+                flusher.request();
+            }
+            return;
+        }
+
+        try {
+            Set<Integer> conflicts = batchChanges.isEmpty() ?
+                    Collections.emptySet() : commit(batchChanges);
+            Set<Integer> reported = new HashSet<>();
+            for (Confirmation confirmation : confirmations) {
+                if (!conflicts.contains(confirmation.id)) {
+                    System.out.println(confirmation.message.get());
+                } else if (reported.add(confirmation.id)) {
+                    System.out.printf(ERROR_TASK_CHANGED + "\n",
+                            confirmation.id);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(failureMessage + e.getMessage());
+        } finally {
+            batchChanges.clear();
+            confirmations.clear();
+        }
+    }
+
+    /**
+     * Writes a set of changes to storage while holding the StoreLock. If the
+     * version of the store shows that another process has committed since the
+     * tasks were loaded, the changes are checked against the stored tasks
+     * first, and the loaded tasks are discarded afterwards.
+     *
+     * @param changes The changes to write, from which rejected ones are
+     *                removed.
+     * @return The IDs of the tasks whose changes were rejected.
+     * @throws IOException If an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    private Set<Integer> commit(ChangeSet changes) throws IOException {
+        try (StoreLock lock = StoreLock.acquire(lockPath)) {
+            boolean current = lock.getVersion() == knownVersion;
+            Set<Integer> conflicts = Collections.emptySet();
+            if (!current) {
+                storage.refresh();
+                conflicts = resolveConflicts(changes);
+            }
+
+            if (!changes.isEmpty()) {
+                lock.increment();
+                try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.COMMIT)) {
+                    // Index first, since extra candidates are filtered out
+                    searchIndex.append(changes);
+                    // Other tasks may be out of date if the store was not
+                    // current
+                    storage.save(changes, loaded && current ? tasks : null);
+                }
+                syncCommit();
+            }
+            if (!current) {
+                if (loaded) {
+                    // Only some changes were saved, so the store cannot be
+                    // replayed on top of the loaded tasks
+                    synced = false;
+                    reloadTasks();
+                } else {
+                    discardTasks();
+                }
+            }
+            knownVersion = lock.getVersion();
+            return conflicts;
+        }
+    }
+
+    /**
+     * Forces a commit to disk as the durability requires: right away, or later
+     * by the flusher.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @SuppressWarnings("try")
+    private void syncCommit() throws IOException {
+        if (durability == Durability.SYNC) {
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.SYNC)) {
+                storage.sync();
+            }
+        } else if (durability == Durability.GROUP) {
+            unsynced = true;
+        }
+    }
+
+    /**
+     * Checks a set of changes against the stored tasks, which other processes
+     * may have changed. Changes to tasks whose stored version differs from
+     * their base version are removed, and added tasks whose IDs were taken in
+     * the meantime are given the next free IDs.
      *
+     * @param changes The changes to check.
+     * @return The IDs of the tasks whose changes were removed.
      * @throws IOException If an I/O error occurs.
      */
-    private void saveTasks() throws IOException {
-        Files.writeString(FILE_PATH, JsonConverter.tasksToJsonArray(tasks));
+    private Set<Integer> resolveConflicts(ChangeSet changes)
+            throws IOException {
+        Set<Integer> conflicts = new HashSet<>();
+        List<Task> addedTasks = new ArrayList<>();
+        for (int id : changes.getIds()) {
+            if (changes.isAdded(id)) {
+                // Added tasks are given their IDs again below
+                if (changes.get(id) != null) {
+                    addedTasks.add(changes.get(id));
+                }
+                changes.remove(id);
+            } else if (changes.getBaseVersion(id) != null) {
+                Task stored = storage.load(id);
+                if (stored == null || !stored.getUpdatedAt()
+                        .equals(changes.getBaseVersion(id))) {
+                    changes.remove(id);
+                    conflicts.add(id);
+                }
+            }
+        }
+
+        int nextId = storage.loadNextId();
+        for (Task task : addedTasks) {
+            if (task.getId() < nextId) {
+                task.setId(nextId);
+            }
+            nextId = task.getId() + 1;
+            changes.put(task, null);
+        }
+        return conflicts;
     }
 
     /**
@@ -53,26 +791,30 @@ public class TaskRepository {
      *
      * @param description The task description.
      */
-    public void addTask(String description) {
-        // Extract the highest existing ID to set a new unique ID
-        int id = 0;
-        if (!tasks.isEmpty()) {
-            for (Task task : tasks) {
-                id = Math.max(task.getId(), id);
-            }
+    @SuppressWarnings("try")
+    public synchronized void addTask(String description) {
+        try {
+            checkVersion();
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to load tasks: " +
+                    e.getMessage());
+            return;
         }
-        id++;
+
+        // Take the next ID of the sequence, which is never reused
+        int id = tasks.getNextId();
 
         // Create and add the new task
-        Task task = new Task(id, description);
-        tasks.add(task);
-        try {
-            saveTasks();
-            System.out.println("Task \"" + description +
-                    "\" added successfully with ID " + id);
-        } catch (IOException e) {
-            System.out.println("ERROR: Failed to add task: " + e.getMessage());
+        Task task;
+        try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.MUTATE)) {
+            task = new Task(id, description);
+            tasks.put(task);
         }
+        // The ID may change if another process takes it first
+        saveChanges(new ChangeSet().put(task, null), id,
+                () -> "Task \"" + description +
+                        "\" added successfully with ID " + task.getId(),
+                "ERROR: Failed to add task: ");
     }
 
     /**
@@ -82,29 +824,29 @@ public class TaskRepository {
      * @param id          The task ID.
      * @param description The new task description.
      */
-    public void updateTask(int id, String description) {
+    @SuppressWarnings("try")
+    public synchronized void updateTask(int id, String description) {
         // Search for the task with the provided ID
-        boolean taskExists = false;
-        for (Task task : tasks) {
-            if (task.getId() == id) {
-                // If found, update the corresponding fields
-                task.setDescription(description);
-                task.setUpdatedAt(LocalDateTime.now());
-                taskExists = true;
-                break;
-            }
+        Task task;
+        try {
+            task = findTask(id);
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to load task: " + e.getMessage());
+            return;
         }
 
-        // If found, save the changes
-        if (taskExists) {
-            try {
-                saveTasks();
-                System.out.println("Task with ID " + id + " updated to \"" +
-                        description + "\" successfully");
-            } catch (IOException e) {
-                System.out.println("ERROR: Failed to update task: " +
-                        e.getMessage());
+        // If found, update the corresponding fields and save the changes
+        if (task != null) {
+            LocalDateTime baseVersion = task.getUpdatedAt();
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.MUTATE)) {
+                task.setDescription(description);
+                task.setUpdatedAt(LocalDateTime.now());
+                tasks.put(task);
             }
+            saveChanges(new ChangeSet().put(task, baseVersion), id,
+                    () -> "Task with ID " + id + " updated to \"" +
+                            description + "\" successfully",
+                    "ERROR: Failed to update task: ");
         } else {
             System.out.printf(ERROR_TASK_NOT_FOUND + "\n", id);
         }
@@ -115,30 +857,31 @@ public class TaskRepository {
      *
      * @param id The task ID.
      */
-    public void deleteTask(int id) {
+    @SuppressWarnings("try")
+    public synchronized void deleteTask(int id) {
         // Search for the task with the provided ID
-        boolean taskExists = false;
-        for (Task task : tasks) {
-            if (task.getId() == id) {
-                // If found, remove it from the list
-                tasks.remove(task);
-                taskExists = true;
-                break;
-            }
+        Task task;
+        try {
+            task = findTask(id);
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to load task: " + e.getMessage());
+            return;
         }
 
-        // If found, save the changes
-        if (taskExists) {
-            try {
-                saveTasks();
-                System.out.println("Task with ID " + id +
-                        " deleted successfully");
-            } catch (IOException e) {
-                System.out.println("ERROR: Failed to delete task: " +
-                        e.getMessage());
+        // If found, remove it and save the changes
+        if (task != null) {
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.MUTATE)) {
+                tasks.remove(id);
+                if (!loaded) {
+                    deletedIds.add(id);
+                }
             }
+            saveChanges(new ChangeSet().delete(id, task.getUpdatedAt()), id,
+                    () -> "Task with ID " + id + " deleted successfully",
+                    "ERROR: Failed to delete task: ");
         } else {
-            System.out.printf(ERROR_TASK_NOT_FOUND + "\n", id);        }
+            System.out.printf(ERROR_TASK_NOT_FOUND + "\n", id);
+        }
     }
 
     /**
@@ -148,52 +891,724 @@ public class TaskRepository {
      * @param id     The task ID.
      * @param status The new task status.
      */
-    public void markTask(int id, TaskStatus status) {
+    @SuppressWarnings("try")
+    public synchronized void markTask(int id, TaskStatus status) {
         // Search for the task with the provided ID
-        boolean taskExists = false;
-        for (Task task : tasks) {
-            if (task.getId() == id) {
-                // If found, update its status
+        Task task;
+        try {
+            task = findTask(id);
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to load task: " + e.getMessage());
+            return;
+        }
+
+        // If found, update its status and save the changes
+        if (task != null) {
+            LocalDateTime baseVersion = task.getUpdatedAt();
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.MUTATE)) {
                 task.setStatus(status);
                 task.setUpdatedAt(LocalDateTime.now());
-                taskExists = true;
-                break;
+                // Put the task again to move it to its new status in the index
+                tasks.put(task);
             }
+            saveChanges(new ChangeSet().put(task, baseVersion), id,
+                    () -> "Task with ID " + id + " marked as \"" +
+                            status.getLabel() + "\" successfully",
+                    "ERROR: Failed to update task status: ");
+        } else {
+            System.out.printf(ERROR_TASK_NOT_FOUND + "\n", id);
         }
+    }
 
-        // If found, save the changes
-        if (taskExists) {
-            try {
-                saveTasks();
-                System.out.println("Task with ID " + id + " marked as \"" +
-                        status.getLabel() + "\" successfully");
-            } catch (IOException e) {
-                System.out.println("ERROR: Failed to update task status: " +
-                        e.getMessage());
+    /**
+     * Prints the tasks that match a query: all existing tasks, or only those
+     * with a status, in a time range, or both. Tasks in a time range are found
+     * through the time indexes and printed in order of the chosen timestamp;
+     * otherwise they are printed in insertion order, unless the query sorts
+     * them. Only the page of tasks between the offset and the limit of the
+     * query is printed. Archived tasks are only read if the query can match
+     * done tasks, and are streamed rather than loaded: sorted tasks and tasks
+     * in a time range go through a selection of the tasks up to the end of
+     * the page, and other tasks are printed as they are read. Segments of the
+     * archive are skipped once their summaries show that none of their tasks
+     * can be printed. All output goes through a single buffer, which is
+     * flushed at the end.
+     *
+     * @param query  The criteria the tasks must match.
+     * @param format The format in which tasks are printed.
+     */
+    @SuppressWarnings("try")
+    public synchronized void listTasks(TaskQuery query,
+                                       TaskPrinter.Format format) {
+        TaskPrinter printer = new TaskPrinter(System.out, format);
+        TaskStatus status = query.getStatus();
+        try {
+            loadAll();
+            // Only done tasks are archived
+            boolean archived = archive.exists() && (status == null ||
+                    status == TaskStatus.DONE);
+            // Only the tasks up to the end of the page are kept
+            int selected = query.hasLimit() ? (int) Math.min(Integer.MAX_VALUE,
+                    (long) query.getOffset() + query.getLimit()) : -1;
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.RENDER)) {
+                Page page = new Page(printer, query);
+                if (query.getSortField() != null) {
+                    TaskSelection selection =
+                            new TaskSelection(query.getOrder(), selected);
+                    selectTasks(tasks, query, selection);
+                    if (archived) {
+                        TaskQuery.SortField sortField = query.getSortField();
+                        TaskQuery.TimeField timeField =
+                                sortField == TaskQuery.SortField.CREATED ?
+                                        TaskQuery.TimeField.CREATED :
+                                        TaskQuery.TimeField.UPDATED;
+                        selectArchivedTasks(query, selection,
+                                sortField == TaskQuery.SortField.ID ? null :
+                                        timeField, query.isDescending());
+                    }
+                    page.printAll(selection.toList());
+                } else if (query.hasTimeRange()) {
+                    TaskQuery.TimeField timeField = query.getTimeField();
+                    List<Task> archivedTasks = Collections.emptyList();
+                    if (archived) {
+                        TaskSelection selection = new TaskSelection(
+                                Comparator.comparing(timeField::of)
+                                        .thenComparingInt(Task::getId),
+                                selected);
+                        selectArchivedTasks(query, selection, timeField,
+                                false);
+                        archivedTasks = selection.toList();
+                    }
+                    page.printAll(mergeByTime(archivedTasks,
+                            findInTimeRange(tasks, query), timeField));
+                } else {
+                    // Archived tasks are older, so they are printed first
+                    if (archived) {
+                        archive.forEach(summary -> !page.isFull() &&
+                                summary.mayMatch(query), task -> {
+                            if (!page.isFull() && query.matches(task) &&
+                                    tasks.get(task.getId()) == null) {
+                                page.print(task);
+                            }
+                        });
+                    }
+                    page.printAll(status == null ? tasks :
+                            tasks.withStatus(status));
+                }
+                printer.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to list tasks: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the tasks whose descriptions contain all the words of a query,
+     * found through the search index, after those found in the archive. The
+     * index is built from all tasks the first time it is needed, and kept up
+     * to date from then on. Archived tasks are only read from the segments
+     * whose summaries have all the words.
+     *
+     * @param query  The query.
+     * @param format The format in which tasks are printed.
+     */
+    @SuppressWarnings("try")
+    public synchronized void searchTasks(String query,
+                                         TaskPrinter.Format format) {
+        List<String> words = SearchIndex.tokenize(query);
+        TaskPrinter printer = new TaskPrinter(System.out, format);
+        try {
+            checkVersion();
+            if (!searchIndex.isLoaded()) {
+                // Hold the lock, so that no commit is missed by the index
+                try (StoreLock lock = StoreLock.acquire(lockPath)) {
+                    if (searchIndex.exists()) {
+                        searchIndex.load();
+                    } else {
+                        // The version was checked above, and the lock is
+                        // already held
+                        loadRemaining();
+                        searchIndex.build(tasks);
+                    }
+                }
             }
+
+            // Only the segments that have all the words are read
+            TaskIndex archivedTasks = loadArchivedTasks(
+                    summary -> summary.containsAll(words),
+                    task -> SearchIndex.matches(task.getDescription(), words));
+            for (Task task : archivedTasks) {
+                printer.print(task);
+            }
+
+            int[] ids = searchIndex.find(words);
+            loadTasks(ids);
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.RENDER)) {
+                for (int id : ids) {
+                    Task task = tasks.get(id);
+                    // The index may list tasks that no longer match
+                    if (task != null &&
+                            SearchIndex.matches(task.getDescription(), words)) {
+                        printer.print(task);
+                    }
+                }
+                printer.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to search tasks: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Moves the done tasks last updated before a point in time to a new
+     * segment of the archive. They are then deleted from the storage engine,
+     * which is compacted so that loading no longer reads them. The StoreLock
+     * is held throughout, so that no other process changes them meanwhile.
+     * Archived tasks can still be listed and searched, but not changed.
+     *
+     * @param before The point in time before which tasks are archived.
+     */
+    @SuppressWarnings("try")
+    public synchronized void archiveTasks(LocalDateTime before) {
+        // Changes confirmed in write-behind mode are written first
+        flush();
+        if (!pendingChanges.isEmpty()) {
+            System.out.println("ERROR: Failed to archive tasks: " +
+                    "pending changes could not be saved");
+            return;
+        }
+
+        int count;
+        try (StoreLock lock = StoreLock.acquire(lockPath)) {
+            if (lock.getVersion() != knownVersion) {
+                if (loaded) {
+                    reloadTasks();
+                } else {
+                    discardTasks();
+                }
+                knownVersion = lock.getVersion();
+            }
+            loadRemaining();
+
+            List<Task> archivedTasks =
+                    tasks.updatedBetween(null, before, TaskStatus.DONE);
+            if (archivedTasks.isEmpty()) {
+                System.out.println("No done tasks to archive");
+                return;
+            }
+            // Written before they are deleted, so that none is ever lost
+            count = archive.write(archivedTasks);
+
+            ChangeSet changes = new ChangeSet();
+            for (Task task : archivedTasks) {
+                tasks.remove(task.getId());
+                changes.delete(task.getId());
+            }
+            lock.increment();
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.COMMIT)) {
+                searchIndex.append(changes);
+                storage.save(changes, tasks);
+                storage.compact(tasks);
+            }
+            // The store was rewritten from the loaded tasks
+            synced = true;
+            syncCommit();
+            knownVersion = lock.getVersion();
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to archive tasks: " +
+                    e.getMessage());
+            return;
+        }
+        System.out.println(count + " tasks archived successfully");
+    }
+
+    /**
+     * Finds the tasks of an index in the time range of a query, through its
+     * time indexes.
+     *
+     * @param index The index to search.
+     * @param query The criteria the tasks must match, with a time range.
+     * @return The matching tasks, in order of the chosen timestamp.
+     */
+    private static List<Task> findInTimeRange(TaskIndex index,
+                                              TaskQuery query) {
+        return query.getTimeField() == TaskQuery.TimeField.CREATED ?
+                index.createdBetween(query.getSince(), query.getUntil(),
+                        query.getStatus()) :
+                index.updatedBetween(query.getSince(), query.getUntil(),
+                        query.getStatus());
+    }
+
+    /**
+     * Offers the tasks of an index that match a sorting query to a selection.
+     * When sorting by a timestamp, tasks are read in its order through the
+     * time indexes, or through the time range of the query if it is on the
+     * same timestamp, and reading stops once the selection is full and the
+     * tasks reached can no longer be selected. Since the indexes only have
+     * millisecond precision, that is only known once the tasks reached are in
+     * a later millisecond than the last one selected. Tasks without the
+     * timestamp are left out.
+     *
+     * @param index     The index of the tasks.
+     * @param query     The query, which sorts the tasks.
+     * @param selection The selection to offer the tasks to.
+     */
+    private static void selectTasks(TaskIndex index, TaskQuery query,
+                                    TaskSelection selection) {
+        // A limit of 0 selects nothing, and has no last task to stop at
+        if (selection.isFull() && selection.getLast() == null) {
+            return;
+        }
+        TaskQuery.SortField sortField = query.getSortField();
+        boolean descending = query.isDescending();
+        Iterable<Task> candidates;
+        boolean ordered = true;
+        if (query.hasTimeRange()) {
+            List<Task> rangeTasks = findInTimeRange(index, query);
+            ordered = query.getTimeField() == TaskQuery.TimeField.CREATED ?
+                    sortField == TaskQuery.SortField.CREATED :
+                    sortField == TaskQuery.SortField.UPDATED;
+            if (ordered && descending) {
+                Collections.reverse(rangeTasks);
+            }
+            candidates = rangeTasks;
+        } else if (sortField == TaskQuery.SortField.CREATED) {
+            candidates = index.byCreated(descending, query.getStatus());
+        } else if (sortField == TaskQuery.SortField.UPDATED) {
+            candidates = index.byUpdated(descending, query.getStatus());
         } else {
-            System.out.printf(ERROR_TASK_NOT_FOUND + "\n", id);        }
+            candidates = query.getStatus() == null ? index :
+                    index.withStatus(query.getStatus());
+            ordered = false;
+        }
+
+        boolean byTime = sortField != TaskQuery.SortField.ID;
+        for (Task task : candidates) {
+            if (byTime && query.getSortTime(task) == null) {
+                continue;
+            }
+            if (ordered && selection.isFull()) {
+                long millis = toEpochMillis(query.getSortTime(task));
+                long lastMillis = toEpochMillis(
+                        query.getSortTime(selection.getLast()));
+                if (descending ? millis < lastMillis : millis > lastMillis) {
+                    break;
+                }
+            }
+            selection.offer(task);
+        }
     }
 
     /**
-     * Prints all existing tasks.
+     * Converts a timestamp to milliseconds, as kept in the time indexes.
+     * Timestamps have no time zone, so they are taken as UTC, which keeps
+     * their order.
+     *
+     * @param time The timestamp.
+     * @return The milliseconds since the epoch.
      */
-    public void listTasks() {
-        for (Task task : tasks) {
-            System.out.println(task.toString());
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Offers the archived tasks that match a query to a selection, leaving
+     * out those that are still in the storage engine, which take precedence.
+     * That only happens if archiving was interrupted before deleting them.
+     * Once the selection is full, the segments whose summaries show that
+     * none of their tasks comes before the last task selected are skipped.
+     * Must be called with all tasks loaded.
+     *
+     * @param query      The criteria the tasks must match.
+     * @param selection  The selection to offer the tasks to.
+     * @param timeField  The timestamp the selection is ordered by before the
+     *                   ID, or null if it is ordered by ID only. Tasks without
+     *                   it are left out.
+     * @param descending Whether the selection is in descending order.
+     * @throws IOException If the archive cannot be read.
+     */
+    private void selectArchivedTasks(TaskQuery query, TaskSelection selection,
+                                     TaskQuery.TimeField timeField,
+                                     boolean descending) throws IOException {
+        archive.forEach(summary -> summary.mayMatch(query) &&
+                mayBeSelected(summary, selection, timeField, descending),
+                task -> {
+                    if (query.matches(task) &&
+                            (timeField == null || timeField.of(task) != null) &&
+                            tasks.get(task.getId()) == null) {
+                        selection.offer(task);
+                    }
+                });
+    }
+
+    /**
+     * Checks whether a segment of the archive may hold tasks that a selection
+     * would keep, from the ID and time ranges of its summary.
+     *
+     * @param summary    The summary of the segment.
+     * @param selection  The selection.
+     * @param timeField  The timestamp the selection is ordered by before the
+     *                   ID, or null if it is ordered by ID only.
+     * @param descending Whether the selection is in descending order.
+     * @return False if no task of the segment would be kept.
+     */
+    private static boolean mayBeSelected(SegmentSummary summary,
+                                         TaskSelection selection,
+                                         TaskQuery.TimeField timeField,
+                                         boolean descending) {
+        if (!selection.isFull()) {
+            return true;
+        }
+        Task last = selection.getLast();
+        if (last == null) {
+            // A limit of 0 keeps no task
+            return false;
         }
+        if (timeField == null) {
+            return descending ? summary.getMaxId() > last.getId() :
+                    summary.getMinId() < last.getId();
+        }
+        // Tasks at the same time as the last one may still come before it
+        LocalDateTime bound = descending ? summary.getMaxTime(timeField) :
+                summary.getMinTime(timeField);
+        return bound != null && (descending ?
+                !bound.isBefore(timeField.of(last)) :
+                !bound.isAfter(timeField.of(last)));
     }
 
     /**
-     * Prints all existing tasks with the provided status.
+     * Page of tasks a query asks for, printed as tasks are offered to it:
+     * those before the offset of the query are skipped, and those after its
+     * limit are ignored.
+     */
+    private static class Page {
+        private final TaskPrinter printer;
+        private final TaskQuery query;
+        private int skipped;
+        private int printed;
+
+        /**
+         * Creates an empty Page.
+         *
+         * @param printer The printer to print the tasks with.
+         * @param query   The query, with the offset and limit of the page.
+         */
+        private Page(TaskPrinter printer, TaskQuery query) {
+            this.printer = printer;
+            this.query = query;
+        }
+
+        /**
+         * Checks whether the page has as many tasks as the limit, so that no
+         * more are printed.
+         *
+         * @return True if the query has a limit and it has been reached.
+         */
+        private boolean isFull() {
+            return query.hasLimit() && printed >= query.getLimit();
+        }
+
+        /**
+         * Prints a task, unless it is before the offset or after the limit.
+         *
+         * @param task The next matching task, in the order they are listed.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void print(Task task) throws IOException {
+            if (isFull()) {
+                return;
+            }
+            if (skipped < query.getOffset()) {
+                skipped++;
+                return;
+            }
+            printer.print(task);
+            printed++;
+        }
+
+        /**
+         * Prints tasks until the page is full.
+         *
+         * @param tasks The next matching tasks, in the order they are listed.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void printAll(Iterable<Task> tasks) throws IOException {
+            for (Task task : tasks) {
+                if (isFull()) {
+                    return;
+                }
+                print(task);
+            }
+        }
+    }
+
+    /**
+     * Loads the archived tasks that pass a filter, leaving out those that
+     * are still in the storage engine, which take precedence. That only
+     * happens if archiving was interrupted before deleting them. Only the
+     * segments whose summaries pass another filter are read.
      *
-     * @param status The task status.
+     * @param segmentFilter The condition the summary of a segment must meet
+     *                      for its tasks to be read.
+     * @param filter        The condition archived tasks must meet to be
+     *                      loaded.
+     * @return The archived tasks, in the order they were archived.
+     * @throws IOException If the archive or the tasks cannot be read.
      */
-    public void listTasks(TaskStatus status) {
-        for (Task task : tasks) {
-            if (task.getStatus() == status) {
-                System.out.println(task.toString());
+    private TaskIndex loadArchivedTasks(
+            Predicate<SegmentSummary> segmentFilter, Predicate<Task> filter)
+            throws IOException {
+        TaskIndex archivedTasks = new TaskIndex();
+        if (!archive.exists()) {
+            return archivedTasks;
+        }
+        archive.load(segmentFilter, filter, archivedTasks);
+
+        int[] ids = new int[archivedTasks.size()];
+        int count = 0;
+        for (Task task : archivedTasks) {
+            ids[count++] = task.getId();
+        }
+        loadTasks(ids);
+        for (int id : ids) {
+            if (tasks.get(id) != null) {
+                archivedTasks.remove(id);
             }
         }
+        return archivedTasks;
+    }
+
+    /**
+     * Merges two lists of tasks sorted by a timestamp, keeping them sorted.
+     * Tasks with the same timestamp are sorted by ID.
+     *
+     * @param first     The first list.
+     * @param second    The second list.
+     * @param timeField The timestamp the lists are sorted by.
+     * @return The merged list.
+     */
+    private static List<Task> mergeByTime(List<Task> first, List<Task> second,
+                                          TaskQuery.TimeField timeField) {
+        if (first.isEmpty()) {
+            return second;
+        }
+        Comparator<Task> order = Comparator.comparing(
+                timeField == TaskQuery.TimeField.CREATED ?
+                        Task::getCreatedAt : Task::getUpdatedAt);
+        order = order.thenComparingInt(Task::getId);
+
+        List<Task> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            if (order.compare(first.get(i), second.get(j)) <= 0) {
+                merged.add(first.get(i++));
+            } else {
+                merged.add(second.get(j++));
+            }
+        }
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+        return merged;
+    }
+
+    /**
+     * Prints the latency metrics of every phase, those of earlier commands
+     * included, followed by the size of every file of the store. Metrics are
+     * discarded instead if requested.
+     *
+     * @param reset Whether to discard the metrics instead of printing them.
+     */
+    public synchronized void printStats(boolean reset) {
+        try {
+            if (reset) {
+                Files.createDirectories(STATS_PATH.getParent());
+                TaskMetrics.reset(STATS_PATH);
+                System.out.println("Stats reset successfully");
+                return;
+            }
+
+            TaskMetrics.print(STATS_PATH, System.out);
+            System.out.println();
+            System.out.printf("%-20s %12s%n", "File", "Size");
+            long total = 0;
+            for (Path path : new Path[]{filePath, logPath, offsetIndexPath,
+                    manifestPath, recordsPath, heapPath, searchPath,
+                    searchLogPath}) {
+                if (Files.exists(path)) {
+                    long size = Files.size(path);
+                    System.out.printf("%-20s %12d%n", path.getFileName(), size);
+                    total += size;
+                }
+            }
+            long archiveSize = archive.size();
+            if (archiveSize > 0) {
+                System.out.printf("%-20s %12d%n", archivePath.getFileName() +
+                        "/", archiveSize);
+                total += archiveSize;
+            }
+            System.out.printf("%-20s %12d%n", "total", total);
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to print stats: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Imports tasks from a file with one JSON object per line, or with CSV
+     * records as written by exportTasks(). Every task is given the next ID of
+     * the sequence, whatever ID it had before. A missing status is set to "To
+     * do", a missing creation time to the current time, and a missing update
+     * time to the creation time. Records that cannot be read are reported and
+     * skipped.
+     * <p>
+     * The file is read as a stream, and tasks are committed in batches, so
+     * that only one batch is held in memory besides the tasks kept loaded.
+     *
+     * @param path   The file to read.
+     * @param format The format of the file: JSON or CSV.
+     */
+    public synchronized void importTasks(Path path, TaskPrinter.Format format) {
+        // Changes confirmed in write-behind mode are written first
+        flush();
+        if (!pendingChanges.isEmpty()) {
+            System.out.println("ERROR: Failed to import tasks: " +
+                    "pending changes could not be saved");
+            return;
+        }
+
+        int count = 0;
+        ChangeSet changes = new ChangeSet();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            checkVersion();
+            CsvTaskReader csvReader = format == TaskPrinter.Format.CSV ?
+                    new CsvTaskReader(reader) : null;
+            int lineNumber = 0;
+            while (true) {
+                Task task;
+                try {
+                    if (csvReader != null) {
+                        task = csvReader.next();
+                        lineNumber = csvReader.getLineNumber();
+                    } else {
+                        String line = reader.readLine();
+                        lineNumber++;
+                        if (line != null && line.isBlank()) {
+                            continue;
+                        }
+                        task = line == null ? null :
+                                JsonConverter.jsonObjectToTask(line);
+                    }
+                    if (task != null && task.getDescription() == null) {
+                        throw new IllegalArgumentException(
+                                "Missing description");
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println("ERROR: Line " + lineNumber + ": " +
+                            e.getMessage());
+                    continue;
+                }
+                if (task == null) {
+                    break;
+                }
+
+                prepareImportedTask(task);
+                changes.put(task, null);
+                if (changes.size() == IMPORT_BATCH_SIZE) {
+                    commit(changes);
+                    count += changes.size();
+                    changes.clear();
+                }
+            }
+            if (!changes.isEmpty()) {
+                commit(changes);
+                count += changes.size();
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to import tasks: " +
+                    e.getMessage());
+            // Batches committed before the error are kept
+            if (count > 0) {
+                System.out.println(count + " tasks were imported before " +
+                        "the error");
+            }
+            return;
+        }
+        System.out.println(count + " tasks imported successfully");
+    }
+
+    /**
+     * Gives an imported task the next ID of the sequence and fills in the
+     * fields it is missing. The task is only kept in memory if all tasks are
+     * loaded, since it can otherwise be loaded from storage when needed.
+     *
+     * @param task The imported task.
+     */
+    private void prepareImportedTask(Task task) {
+        task.setId(tasks.getNextId());
+        if (task.getStatus() == null) {
+            task.setStatus(TaskStatus.TODO);
+        }
+        if (task.getCreatedAt() == null) {
+            task.setCreatedAt(LocalDateTime.now());
+        }
+        if (task.getUpdatedAt() == null) {
+            task.setUpdatedAt(task.getCreatedAt());
+        }
+
+        if (loaded) {
+            tasks.put(task);
+        } else {
+            tasks.advanceNextId(task.getId() + 1);
+        }
+    }
+
+    /**
+     * Exports all tasks, archived ones first, as one JSON object per line or
+     * as CSV records after a header line. Tasks are written as they are read
+     * from the archive and the loaded tasks, through a single buffer.
+     *
+     * @param path   The file to write, which is replaced if it exists, or null
+     *               to print the tasks to the standard output.
+     * @param format The format of the file: JSON or CSV.
+     */
+    @SuppressWarnings("try")
+    public synchronized void exportTasks(Path path, TaskPrinter.Format format) {
+        int[] count = new int[1];
+        try {
+            loadAll();
+            OutputStream output = path == null ? System.out :
+                    Files.newOutputStream(path);
+            try (TaskMetrics.Timer timer = time(TaskMetrics.Phase.RENDER)) {
+                TaskPrinter printer = path == null ?
+                        new TaskPrinter(output, format) :
+                        new TaskPrinter(output, format, StandardCharsets.UTF_8);
+                // Tasks still in storage take precedence over archived copies
+                archive.forEach(task -> {
+                    if (tasks.get(task.getId()) == null) {
+                        printer.print(task);
+                        count[0]++;
+                    }
+                });
+                for (Task task : tasks) {
+                    printer.print(task);
+                    count[0]++;
+                }
+                printer.flush();
+            } finally {
+                if (path != null) {
+                    output.close();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to export tasks: " +
+                    e.getMessage());
+            return;
+        }
+        if (path != null) {
+            System.out.println(count[0] + " tasks exported successfully");
+        }
     }
 }
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the repositories of the task lists used recently open, so that
+ * long-running modes do not load a list again for every command on it. At
+ * most a fixed number of lists are kept, and the one used least recently is
+ * closed when another one has to be opened, so that memory use does not grow
+ * with the number of lists.
+ * <p>
+ * A batch opened on the cache spans all the lists used until it is
+ * committed: each one is added to the batch when it is first used. The lists
+ * of the open batch are kept open until it is committed, even beyond the
+ * number of lists kept open, so that its changes are committed together.
+ * <p>
+ * Methods are synchronized, since the daemon flushes the open repositories
+ * from a shutdown hook.
+ */
+public class TaskRepositoryCache {
+    // System property with the number of task lists kept open at most
+    private static final String OPEN_LISTS_PROPERTY = "tasktracker.openLists";
+
+    private final int capacity;
+    private final LinkedHashMap<String, TaskRepository> repositories;
+
+    // Repositories added to the open batch, which is open if depth is not 0
+    private int batchDepth;
+    private final Set<TaskRepository> batchRepositories = new HashSet<>();
+
+    /**
+     * Creates an empty TaskRepositoryCache that keeps as many task lists open
+     * as the "tasktracker.openLists" system property, 8 by default.
+     */
+    public TaskRepositoryCache() {
+        this(Integer.getInteger(OPEN_LISTS_PROPERTY, 8));
+    }
+
+    /**
+     * Creates an empty TaskRepositoryCache.
+     *
+     * @param capacity The number of task lists kept open at most, which is at
+     *                 least 1.
+     */
+    public TaskRepositoryCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        // Iterated from the least to the most recently used
+        repositories = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, TaskRepository> eldest) {
+                // The eldest list may belong to the open batch
+                evict();
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the repository of a task list, opening it if it is not open,
+     * which may close the list used least recently outside the open batch. The
+     * repository is added to the open batch, if there is one.
+     *
+     * @param listName The name of the task list, which must be valid.
+     * @return The repository.
+     * @throws IllegalArgumentException If the name is not valid.
+     */
+    public synchronized TaskRepository get(String listName) {
+        TaskRepository repository = repositories.get(listName);
+        if (repository == null) {
+            repository = new TaskRepository(listName);
+            // Added to the batch first, so that it is not closed to make room
+            // when every other list belongs to the batch
+            if (batchDepth > 0) {
+                batchRepositories.add(repository);
+                repository.beginBatch();
+            }
+            repositories.put(listName, repository);
+        } else if (batchDepth > 0 && batchRepositories.add(repository)) {
+            repository.beginBatch();
+        }
+        return repository;
+    }
+
+    /**
+     * Opens a batch, or nests one within the open batch, on all the task
+     * lists used until it is committed.
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Commits the open batch on every task list it was used on, unless it is
+     * nested within another one. Lists kept open for the batch beyond the
+     * number of lists kept open are then closed.
+     */
+    public synchronized void commitBatch() {
+        if (batchDepth == 0 || --batchDepth > 0) {
+            return;
+        }
+        for (TaskRepository repository : batchRepositories) {
+            repository.commitBatch();
+        }
+        batchRepositories.clear();
+        evict();
+    }
+
+    /**
+     * Writes the pending changes of every open task list.
+     */
+    public synchronized void flush() {
+        for (TaskRepository repository : repositories.values()) {
+            repository.flush();
+        }
+    }
+
+    /**
+     * Closes every open task list, committing the open batch.
+     */
+    public synchronized void close() {
+        List<TaskRepository> open = new ArrayList<>(repositories.values());
+        repositories.clear();
+        batchDepth = 0;
+        batchRepositories.clear();
+        for (TaskRepository repository : open) {
+            close(repository);
+        }
+    }
+
+    /**
+     * Closes the task lists used least recently until no more than the
+     * number of lists kept open are, skipping those of the open batch.
+     */
+    private void evict() {
+        Iterator<TaskRepository> iterator = repositories.values().iterator();
+        while (repositories.size() > capacity && iterator.hasNext()) {
+            TaskRepository repository = iterator.next();
+            if (!batchRepositories.contains(repository)) {
+                iterator.remove();
+                close(repository);
+            }
+        }
+    }
+
+    /**
+     * Closes the repository of a task list and removes it from the open
+     * batch. Errors are printed, since the list is closed on behalf of
+     * whichever command needed the space.
+     *
+     * @param repository The repository.
+     */
+    private void close(TaskRepository repository) {
+        batchRepositories.remove(repository);
+        try {
+            repository.close();
+        } catch (IOException e) {
+            System.out.println("ERROR: Failed to close tasks: " +
+                    e.getMessage());
+        }
+    }
+}
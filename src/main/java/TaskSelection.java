@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the first tasks in an order among those offered to it, up to a
+ * limit, without keeping the others. Selected tasks are kept in a heap with
+ * the last of them on top, so an offer costs a comparison with it, plus a
+ * logarithmic update if the offered task takes its place. Memory use depends
+ * on the limit, not on the number of tasks offered.
+ * <p>
+ * Without a limit, all offered tasks are kept, and sorted once at the end.
+ */
+public class TaskSelection {
+    // Largest heap allocated up front, since limits may be much larger than
+    // the number of tasks offered
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private final Comparator<Task> order;
+    private final int limit;
+    private final PriorityQueue<Task> heap;
+    private final List<Task> tasks;
+
+    /**
+     * Creates an empty TaskSelection.
+     *
+     * @param order The order in which tasks are selected.
+     * @param limit The number of tasks to select, or -1 to keep them all.
+     */
+    public TaskSelection(Comparator<Task> order, int limit) {
+        this.order = order;
+        this.limit = limit;
+        if (limit >= 0) {
+            heap = new PriorityQueue<>(
+                    Math.max(1, Math.min(limit, MAX_INITIAL_CAPACITY)),
+                    order.reversed());
+            tasks = null;
+        } else {
+            heap = null;
+            tasks = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Offers a task, which is kept if it comes before the last of those
+     * selected so far, or if fewer than the limit have been selected.
+     *
+     * @param task The task.
+     */
+    public void offer(Task task) {
+        if (heap == null) {
+            tasks.add(task);
+        } else if (heap.size() < limit) {
+            heap.add(task);
+        } else if (limit > 0 && order.compare(task, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(task);
+        }
+    }
+
+    /**
+     * Checks whether as many tasks as the limit have been selected, so that
+     * an offered task is only kept if it comes before the last of them.
+     *
+     * @return True if the selection has a limit and has reached it.
+     */
+    public boolean isFull() {
+        return heap != null && heap.size() == limit;
+    }
+
+    /**
+     * Returns the last of the selected tasks.
+     *
+     * @return The last task, or null if none has been selected or there is
+     *         no limit.
+     */
+    public Task getLast() {
+        return heap == null ? null : heap.peek();
+    }
+
+    /**
+     * Returns the selected tasks in order.
+     *
+     * @return A new list with the selected tasks.
+     */
+    public List<Task> toList() {
+        List<Task> selected = heap == null ? new ArrayList<>(tasks) :
+                new ArrayList<>(heap);
+        Collections.sort(selected, order);
+        return selected;
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Storage engine in which a TaskRepository keeps its tasks.
+ */
+public interface TaskStorage extends Closeable {
+
+    /**
+     * Loads all stored tasks, along with the sequence of IDs.
+     *
+     * @param tasks The index to load the tasks into.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    void load(TaskIndex tasks) throws IOException;
+
+    /**
+     * Brings tasks up to date with the stored ones, which other processes may
+     * have changed, replacing only the tasks that changed and removing the
+     * deleted ones. The tasks must be exactly those last loaded, saved or
+     * reloaded through this storage engine. Only called while holding the
+     * StoreLock, after refresh().
+     *
+     * @param tasks All tasks, as last loaded, saved or reloaded.
+     * @return False if the changes cannot be told apart, in which case the
+     *         tasks are left unchanged and must be loaded again.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    boolean reload(TaskIndex tasks) throws IOException;
+
+    /**
+     * Loads a single task, without loading the others.
+     *
+     * @param id The task ID.
+     * @return The task, or null if there is none with that ID.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    Task load(int id) throws IOException;
+
+    /**
+     * Loads the tasks with the provided IDs, without loading the others. IDs
+     * of tasks that do not exist are skipped.
+     *
+     * @param ids   The task IDs.
+     * @param tasks The index to load the tasks into.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    void load(int[] ids, TaskIndex tasks) throws IOException;
+
+    /**
+     * Loads only the next ID of the sequence, without loading any task.
+     *
+     * @return The next ID of the sequence.
+     * @throws IOException If an I/O error occurs or the stored data is invalid.
+     */
+    int loadNextId() throws IOException;
+
+    /**
+     * Persists a set of changes. Only called while holding the StoreLock, so
+     * no other process writes to the files at the same time.
+     *
+     * @param changes The changes to persist.
+     * @param tasks   All tasks, with the changes already applied, or null if
+     *                only some of the tasks have been loaded.
+     * @throws IOException If an I/O error occurs.
+     */
+    void save(ChangeSet changes, TaskIndex tasks) throws IOException;
+
+    /**
+     * Rewrites the stored files without the space taken by deleted tasks, so
+     * that loading does not have to skip over them. Only called while holding
+     * the StoreLock, after save().
+     *
+     * @param tasks All tasks, or null if only some of the tasks have been
+     *              loaded.
+     * @throws IOException If an I/O error occurs.
+     */
+    void compact(TaskIndex tasks) throws IOException;
+
+    /**
+     * Forces everything written by save() to the storage device, so that it
+     * survives a crash of the operating system.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void sync() throws IOException;
+
+    /**
+     * Discards anything cached from the stored files, since another process
+     * may have changed them.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void refresh() throws IOException;
+
+    /**
+     * Checks cheaply whether the stored files may have been left inconsistent
+     * by a process that died while writing them, so that recover() must be
+     * called before tasks are loaded.
+     *
+     * @return True if the stored files must be recovered.
+     * @throws IOException If an I/O error occurs.
+     */
+    boolean needsRecovery() throws IOException;
+
+    /**
+     * Verifies the stored files and brings them back to a consistent state,
+     * from the most recent copies that are intact. Only called while holding
+     * the StoreLock, once needsRecovery() has returned true under it.
+     *
+     * @throws IOException If an I/O error occurs or no intact copy is left.
+     */
+    void recover() throws IOException;
+}
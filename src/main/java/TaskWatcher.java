@@ -0,0 +1,100 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Background thread that watches a file through a WatchService, and reloads
+ * the tasks of a TaskRepository whenever it is changed. The file is the lock
+ * file of the store, whose version every commit increments, so that changes
+ * made by other processes are applied as soon as they are committed, instead
+ * of when the next command checks the version.
+ * <p>
+ * Events are only hints: the reload action checks the version itself, so
+ * events caused by this process, or several for the same commit, are cheap.
+ */
+public class TaskWatcher implements Closeable {
+    private final WatchService watchService;
+    private final Path fileName;
+    private final Runnable reload;
+    private final Thread thread;
+
+    /**
+     * Creates a TaskWatcher and starts its thread. The thread does not keep
+     * the JVM running.
+     *
+     * @param path   The file to watch. Its directory is created if it does
+     *               not exist yet, since directories are what is watched.
+     * @param reload The action that reloads the tasks.
+     * @throws IOException If an I/O error occurs.
+     */
+    public TaskWatcher(Path path, Runnable reload) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        this.fileName = path.getFileName();
+        this.reload = reload;
+        watchService = FileSystems.getDefault().newWatchService();
+        try {
+            directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        thread = new Thread(this::run, "tasktracker-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the thread, waiting for a reload in progress to end. The caller
+     * must not hold any lock that the reload action needs.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // The thread stops anyway once it sees the service closed
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for events on the watched file, and reloads once for all the
+     * events received together.
+     */
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // An overflow may have dropped events for the file
+                    changed |= event.kind() ==
+                            StandardWatchEventKinds.OVERFLOW ||
+                            fileName.equals(event.context());
+                }
+                if (changed) {
+                    reload.run();
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+}
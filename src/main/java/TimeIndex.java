@@ -0,0 +1,286 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Sorted index of task IDs by a timestamp, in epoch milliseconds, used to
+ * find the tasks in a time range without scanning them all.
+ * <p>
+ * Entries are kept in order of time, then ID, in blocks of primitive arrays
+ * of limited size. A block is found by binary search over the first entries
+ * of all blocks, and an entry within it by binary search too, so adding or
+ * removing an entry only moves the entries of one block, and a range query
+ * costs a search plus the size of the result.
+ */
+public class TimeIndex {
+    private static final int BLOCK_SIZE = 512;
+
+    // Times and IDs of the entries of each block, and the number of entries
+    private long[][] times = new long[4][];
+    private int[][] ids = new int[4][];
+    private int[] sizes = new int[4];
+    private int blockCount;
+    private int size;
+
+    /**
+     * Adds an entry.
+     *
+     * @param time The timestamp, in epoch milliseconds.
+     * @param id   The task ID.
+     */
+    public void add(long time, int id) {
+        if (blockCount == 0) {
+            insertBlock(0);
+        }
+
+        int block = findBlock(time, id);
+        int position = findPosition(block, time, id);
+        if (sizes[block] == BLOCK_SIZE) {
+            if (block == blockCount - 1 && position == BLOCK_SIZE) {
+                // Entries mostly come in order, so start a new block
+                insertBlock(blockCount);
+                block++;
+                position = 0;
+            } else {
+                splitBlock(block);
+                if (position > BLOCK_SIZE / 2) {
+                    block++;
+                    position -= BLOCK_SIZE / 2;
+                }
+            }
+        }
+
+        int count = sizes[block] - position;
+        System.arraycopy(times[block], position, times[block], position + 1,
+                count);
+        System.arraycopy(ids[block], position, ids[block], position + 1, count);
+        times[block][position] = time;
+        ids[block][position] = id;
+        sizes[block]++;
+        size++;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param time The timestamp the entry was added with.
+     * @param id   The task ID.
+     * @return True if the entry was found and removed.
+     */
+    public boolean remove(long time, int id) {
+        if (blockCount == 0) {
+            return false;
+        }
+
+        int block = findBlock(time, id);
+        int position = findPosition(block, time, id);
+        if (position == sizes[block] || times[block][position] != time ||
+                ids[block][position] != id) {
+            return false;
+        }
+
+        int count = sizes[block] - position - 1;
+        System.arraycopy(times[block], position + 1, times[block], position,
+                count);
+        System.arraycopy(ids[block], position + 1, ids[block], position, count);
+        sizes[block]--;
+        size--;
+        if (sizes[block] == 0) {
+            removeBlock(block);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the IDs of the entries in a time range, in order of time.
+     *
+     * @param from The start of the range, inclusive, in epoch milliseconds.
+     * @param to   The end of the range, exclusive, in epoch milliseconds.
+     * @return The IDs in the range.
+     */
+    public int[] between(long from, long to) {
+        int[] result = new int[16];
+        int count = 0;
+        if (blockCount == 0 || from >= to) {
+            return new int[0];
+        }
+
+        int block = findBlock(from, Integer.MIN_VALUE);
+        int position = findPosition(block, from, Integer.MIN_VALUE);
+        while (block < blockCount) {
+            for (; position < sizes[block]; position++) {
+                if (times[block][position] >= to) {
+                    return Arrays.copyOf(result, count);
+                }
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = ids[block][position];
+            }
+            block++;
+            position = 0;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the IDs of all entries in order of time, from the oldest or from
+     * the newest. IDs are read from the blocks as they are reached, so taking
+     * the first few costs as much as those few. The index must not change
+     * while the iterator is used.
+     *
+     * @param descending True to start from the newest entry.
+     * @return An iterator over the IDs.
+     */
+    public PrimitiveIterator.OfInt iterator(boolean descending) {
+        return new PrimitiveIterator.OfInt() {
+            private int block = descending ? blockCount - 1 : 0;
+            private int position = descending && blockCount > 0 ?
+                    sizes[blockCount - 1] - 1 : 0;
+
+            @Override
+            public boolean hasNext() {
+                return descending ? block >= 0 : block < blockCount;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int id = ids[block][position];
+                // Blocks are never empty, so the next one has an entry
+                if (descending) {
+                    if (--position < 0 && --block >= 0) {
+                        position = sizes[block] - 1;
+                    }
+                } else if (++position == sizes[block]) {
+                    block++;
+                    position = 0;
+                }
+                return id;
+            }
+        };
+    }
+
+    /**
+     * Finds the last block whose first entry is not after the provided one.
+     *
+     * @param time The timestamp of the entry.
+     * @param id   The task ID of the entry.
+     * @return The block, or 0 if every block starts after the entry.
+     */
+    private int findBlock(long time, int id) {
+        int low = 1;
+        int high = blockCount - 1;
+        int found = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compare(times[middle][0], ids[middle][0], time, id) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the position of the first entry of a block that is not before
+     * the provided one.
+     *
+     * @param block The block.
+     * @param time  The timestamp of the entry.
+     * @param id    The task ID of the entry.
+     * @return The position, or the size of the block if all entries are before.
+     */
+    private int findPosition(int block, long time, int id) {
+        int low = 0;
+        int high = sizes[block];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(times[block][middle], ids[block][middle], time,
+                    id) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares two entries by time, then by ID.
+     *
+     * @param time1 The timestamp of the first entry.
+     * @param id1   The task ID of the first entry.
+     * @param time2 The timestamp of the second entry.
+     * @param id2   The task ID of the second entry.
+     * @return A negative number, zero or a positive number if the first entry
+     * is before, equal to or after the second.
+     */
+    private static int compare(long time1, int id1, long time2, int id2) {
+        int comparison = Long.compare(time1, time2);
+        return comparison != 0 ? comparison : Integer.compare(id1, id2);
+    }
+
+    /**
+     * Inserts an empty block.
+     *
+     * @param block The position of the new block.
+     */
+    private void insertBlock(int block) {
+        if (blockCount == sizes.length) {
+            times = Arrays.copyOf(times, blockCount * 2);
+            ids = Arrays.copyOf(ids, blockCount * 2);
+            sizes = Arrays.copyOf(sizes, blockCount * 2);
+        }
+        int count = blockCount - block;
+        System.arraycopy(times, block, times, block + 1, count);
+        System.arraycopy(ids, block, ids, block + 1, count);
+        System.arraycopy(sizes, block, sizes, block + 1, count);
+        times[block] = new long[BLOCK_SIZE];
+        ids[block] = new int[BLOCK_SIZE];
+        sizes[block] = 0;
+        blockCount++;
+    }
+
+    /**
+     * Removes an empty block.
+     *
+     * @param block The block.
+     */
+    private void removeBlock(int block) {
+        int count = blockCount - block - 1;
+        System.arraycopy(times, block + 1, times, block, count);
+        System.arraycopy(ids, block + 1, ids, block, count);
+        System.arraycopy(sizes, block + 1, sizes, block, count);
+        blockCount--;
+        times[blockCount] = null;
+        ids[blockCount] = null;
+    }
+
+    /**
+     * Moves the second half of a full block to a new block after it.
+     *
+     * @param block The full block.
+     */
+    private void splitBlock(int block) {
+        insertBlock(block + 1);
+        int half = BLOCK_SIZE / 2;
+        System.arraycopy(times[block], half, times[block + 1], 0, half);
+        System.arraycopy(ids[block], half, ids[block + 1], 0, half);
+        sizes[block] = half;
+        sizes[block + 1] = half;
+    }
+}
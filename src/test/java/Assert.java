@@ -0,0 +1,80 @@
+import java.util.Objects;
+
+/**
+ * Assertions used by the tests, which throw an AssertionError describing
+ * the difference when they fail.
+ */
+public class Assert {
+
+    /**
+     * A call that is expected to throw an exception.
+     */
+    public interface Call {
+
+        /**
+         * Runs the call.
+         *
+         * @throws Exception If the call fails.
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Checks that two values are equal.
+     *
+     * @param expected The expected value.
+     * @param actual   The actual value.
+     */
+    public static void assertEquals(Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError("Expected <" + expected + "> but was <" +
+                    actual + ">");
+        }
+    }
+
+    /**
+     * Checks that a condition holds.
+     *
+     * @param message   The description of the condition.
+     * @param condition The condition.
+     */
+    public static void assertTrue(String message, boolean condition) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Checks that a value is null.
+     *
+     * @param actual The value.
+     */
+    public static void assertNull(Object actual) {
+        if (actual != null) {
+            throw new AssertionError("Expected null but was <" + actual + ">");
+        }
+    }
+
+    /**
+     * Checks that a call throws an exception of a type.
+     *
+     * @param type The type of the expected exception.
+     * @param call The call.
+     * @param <T>  The type of the expected exception.
+     * @return The exception thrown.
+     */
+    public static <T extends Throwable> T assertThrows(Class<T> type,
+                                                       Call call) {
+        try {
+            call.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                return type.cast(e);
+            }
+            throw new AssertionError("Expected " + type.getSimpleName() +
+                    " but " + e + " was thrown", e);
+        }
+        throw new AssertionError("Expected " + type.getSimpleName() +
+                " but nothing was thrown");
+    }
+}
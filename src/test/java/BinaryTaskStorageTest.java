@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Tests of BinaryTaskStorage, and of its compaction.
+ */
+public class BinaryTaskStorageTest {
+
+    /**
+     * Creates a storage engine with its files in a directory.
+     *
+     * @param directory The directory.
+     * @return The storage engine.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static BinaryTaskStorage open(Path directory) throws IOException {
+        return new BinaryTaskStorage(directory.resolve("tasks.bin"),
+                directory.resolve("tasks.heap"));
+    }
+
+    /**
+     * Loads all tasks of a storage engine.
+     *
+     * @param storage The storage engine.
+     * @return The tasks.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static TaskIndex load(TaskStorage storage) throws IOException {
+        TaskIndex tasks = new TaskIndex();
+        storage.load(tasks);
+        return tasks;
+    }
+
+    /**
+     * Saves tasks 1 to 5 and deletes the even ones.
+     *
+     * @param storage The storage engine.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void fill(TaskStorage storage) throws IOException {
+        ChangeSet changes = new ChangeSet();
+        for (int id = 1; id <= 5; id++) {
+            changes.put(TestTasks.task(id, "task " + id, TaskStatus.TODO, id));
+        }
+        storage.save(changes, null);
+        storage.save(new ChangeSet().delete(2).delete(4), null);
+        storage.sync();
+    }
+
+    /**
+     * Tests that compaction keeps the other tasks and the next ID, and that
+     * tasks saved afterwards are found.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testCompactsRecords() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try (BinaryTaskStorage storage = open(directory)) {
+            fill(storage);
+            long size = Files.size(directory.resolve("tasks.bin"));
+            storage.compact(null);
+            Assert.assertTrue("Smaller records file",
+                    Files.size(directory.resolve("tasks.bin")) < size);
+            Assert.assertEquals("1,3,5", TestTasks.ids(load(storage)));
+
+            Task changed = TestTasks.task(3, "three", TaskStatus.DONE, 9);
+            storage.save(new ChangeSet().put(changed)
+                    .put(TestTasks.task(6, "six", TaskStatus.TODO, 10)), null);
+            storage.sync();
+            try (BinaryTaskStorage reopened = open(directory)) {
+                TaskIndex tasks = load(reopened);
+                Assert.assertEquals("1,3,5,6", TestTasks.ids(tasks));
+                TestTasks.assertSameTask(changed, tasks.get(3));
+                Assert.assertEquals(7, reopened.loadNextId());
+            }
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that a storage engine that had the records file open before
+     * another one compacted it reads the new file once refreshed.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testRefreshSeesCompactedFile() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try (BinaryTaskStorage storage = open(directory);
+             BinaryTaskStorage other = open(directory)) {
+            fill(storage);
+            Assert.assertEquals("1,3,5", TestTasks.ids(load(other)));
+            storage.compact(null);
+            storage.save(new ChangeSet().put(
+                    TestTasks.task(6, "six", TaskStatus.TODO, 10)), null);
+            storage.sync();
+
+            other.refresh();
+            TaskIndex tasks = load(other);
+            Assert.assertTrue("Refreshed", other.reload(tasks));
+            Assert.assertEquals("1,3,5,6", TestTasks.ids(tasks));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that the new file of a compaction that died before replacing the
+     * records file asks for recovery, which keeps the records as they were.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testRecoversFromUnfinishedCompaction() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            try (BinaryTaskStorage storage = open(directory)) {
+                fill(storage);
+            }
+            Files.write(directory.resolve("tasks.bin.compact"), new byte[10]);
+            try (BinaryTaskStorage storage = open(directory)) {
+                Assert.assertTrue("Unfinished compaction",
+                        storage.needsRecovery());
+                storage.recover();
+                Assert.assertTrue("Recovered", !storage.needsRecovery());
+                Assert.assertEquals("1,3,5", TestTasks.ids(load(storage)));
+            }
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+}
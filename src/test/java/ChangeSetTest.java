@@ -0,0 +1,108 @@
+import java.time.LocalDateTime;
+
+/**
+ * Tests of ChangeSet, and of the detection of conflicting changes from its
+ * base versions when two repositories commit to the same store.
+ */
+public class ChangeSetTest {
+
+    /**
+     * Tests that only the latest change to a task is kept, along with the
+     * base version of the first one.
+     */
+    public void testKeepsFirstBaseVersion() {
+        LocalDateTime first = TestTasks.BASE_TIME;
+        LocalDateTime second = first.plusMinutes(1);
+        ChangeSet changes = new ChangeSet();
+        changes.put(TestTasks.task(1, "a", TaskStatus.TODO, 1), first);
+        changes.put(TestTasks.task(1, "b", TaskStatus.DONE, 2), second);
+        changes.put(TestTasks.task(2, "new", TaskStatus.TODO, 3), null);
+        changes.delete(3, second);
+
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals("b", changes.get(1).getDescription());
+        Assert.assertEquals(first, changes.getBaseVersion(1));
+        Assert.assertTrue("Added", changes.isAdded(2));
+        Assert.assertTrue("Not added", !changes.isAdded(1));
+        Assert.assertNull(changes.get(3));
+        Assert.assertEquals("[3]", changes.getDeletedIds().toString());
+        Assert.assertEquals("1,2", TestTasks.ids(changes.getSavedTasks()));
+    }
+
+    /**
+     * Tests that merging another ChangeSet takes its changes, but keeps the
+     * base versions already recorded.
+     */
+    public void testMergeKeepsRecordedBaseVersions() {
+        LocalDateTime first = TestTasks.BASE_TIME;
+        ChangeSet changes = new ChangeSet()
+                .put(TestTasks.task(1, "a", TaskStatus.TODO, 1), first);
+        ChangeSet other = new ChangeSet()
+                .delete(1, first.plusMinutes(1))
+                .put(TestTasks.task(2, "b", TaskStatus.TODO, 2), first);
+        changes.addAll(other);
+
+        Assert.assertNull(changes.get(1));
+        Assert.assertEquals(first, changes.getBaseVersion(1));
+        Assert.assertEquals(first, changes.getBaseVersion(2));
+        changes.remove(1);
+        Assert.assertEquals("[2]", changes.getIds().toString());
+        changes.clear();
+        Assert.assertTrue("Empty", changes.isEmpty());
+    }
+
+    /**
+     * Tests that a change to a task that another repository changed since it
+     * was read is rejected, while changes to other tasks are committed, and
+     * new tasks are given the next free IDs.
+     *
+     * @throws Exception If the store cannot be used.
+     */
+    public void testRejectsConflictingChanges() throws Exception {
+        TestFiles.resetResources();
+        TaskRepository setup = new TaskRepository();
+        TestOutput.capture(() -> {
+            setup.addTask("first");
+            setup.addTask("second");
+        });
+        setup.close();
+
+        TaskRepository mine = new TaskRepository();
+        TaskRepository theirs = new TaskRepository();
+        try {
+            // Task 1 is read by both before either commits
+            mine.beginBatch();
+            String output = TestOutput.capture(() -> {
+                mine.updateTask(1, "mine");
+                TestOutput.capture(() -> {
+                    theirs.updateTask(1, "theirs");
+                    theirs.addTask("their new task");
+                });
+                mine.markTask(2, TaskStatus.DONE);
+                mine.addTask("my new task");
+                mine.commitBatch();
+            });
+            Assert.assertEquals("ERROR: Task with ID 1 was changed by " +
+                    "another process\n" +
+                    "Task with ID 2 marked as \"Done\" successfully\n" +
+                    "Task \"my new task\" added successfully with ID 4\n",
+                    output);
+        } finally {
+            mine.close();
+            theirs.close();
+        }
+
+        TaskRepository check = new TaskRepository();
+        String list = TestOutput.capture(() -> check.listTasks(new TaskQuery(),
+                TaskPrinter.Format.JSON));
+        check.close();
+        Assert.assertTrue(list, list.contains("\"id\":1,\"description\":" +
+                "\"theirs\""));
+        Assert.assertTrue(list, list.contains("\"id\":2,\"description\":" +
+                "\"second\",\"status\":\"DONE\""));
+        Assert.assertTrue(list, list.contains("\"id\":3,\"description\":" +
+                "\"their new task\""));
+        Assert.assertTrue(list, list.contains("\"id\":4,\"description\":" +
+                "\"my new task\""));
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Tests of JsonTaskReader.
+ */
+public class JsonTaskReaderTest {
+
+    /**
+     * Reads all tasks of a JSON string as an array.
+     *
+     * @param json The JSON array.
+     * @return The tasks.
+     * @throws IOException If the JSON is malformed.
+     */
+    private static List<Task> read(String json) throws IOException {
+        return JsonConverter.jsonArrayToTasks(new StringReader(json));
+    }
+
+    /**
+     * Tests that every field of the tasks of an array is read, whatever the
+     * whitespace between tokens.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    public void testReadsArray() throws IOException {
+        List<Task> tasks = read(" [ {\"id\": 1, \"description\": \"a\", " +
+                "\"status\": \"TODO\", \"createdAt\": \"2024-05-01T09:00\", " +
+                "\"updatedAt\": \"2024-05-01T09:30:15\"} ,\n" +
+                "{\"id\":2,\"description\":\"b\",\"status\":\"DONE\"," +
+                "\"createdAt\":\"2024-05-01T10:00\"," +
+                "\"updatedAt\":\"2024-05-01T10:00\"}\n]\n");
+
+        Assert.assertEquals(2, tasks.size());
+        Task first = tasks.get(0);
+        Assert.assertEquals(1, first.getId());
+        Assert.assertEquals("a", first.getDescription());
+        Assert.assertEquals(TaskStatus.TODO, first.getStatus());
+        Assert.assertEquals(LocalDateTime.of(2024, 5, 1, 9, 0),
+                first.getCreatedAt());
+        Assert.assertEquals(LocalDateTime.of(2024, 5, 1, 9, 30, 15),
+                first.getUpdatedAt());
+        Assert.assertEquals(TaskStatus.DONE, tasks.get(1).getStatus());
+    }
+
+    /**
+     * Tests that empty input and an empty array are read as no tasks.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    public void testReadsEmptyArray() throws IOException {
+        Assert.assertEquals(0, read("").size());
+        Assert.assertEquals(0, read(" [ ] ").size());
+    }
+
+    /**
+     * Tests that every escape sequence is decoded, including surrogate pairs
+     * written as two escaped code units.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    public void testUnescapesStrings() throws IOException {
+        Task task = JsonConverter.jsonObjectToTask("{\"description\":" +
+                "\"q\\\"b\\\\s\\/n\\nr\\rt\\tb\\bf\\f\\u00e9\\ud83d\\ude00\"}");
+        Assert.assertEquals("q\"b\\s/n\nr\rt\tb\bf\f\u00e9\ud83d\ude00",
+                task.getDescription());
+    }
+
+    /**
+     * Tests that characters outside the basic plane are read as they are.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    public void testReadsSurrogatePairs() throws IOException {
+        Task task = JsonConverter.jsonObjectToTask(
+                "{\"description\":\"\ud83d\ude00 \u6f22\"}");
+        Assert.assertEquals("\ud83d\ude00 \u6f22", task.getDescription());
+    }
+
+    /**
+     * Tests that strings longer than the buffer of the reader are read whole.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    public void testReadsStringsAcrossBuffers() throws IOException {
+        String description = "x\\\"".repeat(5000);
+        Task task = JsonConverter.jsonObjectToTask(
+                "{\"description\":\"" + description + "\"}");
+        Assert.assertEquals("x\"".repeat(5000), task.getDescription());
+    }
+
+    /**
+     * Tests that every layout of LocalDateTime.toString() is read, along with
+     * layouts that only LocalDateTime.parse() reads.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    public void testReadsTimestamps() throws IOException {
+        String[] texts = {"2024-05-01T09:00", "2024-05-01T09:00:01",
+                "2024-05-01T09:00:01.5", "2024-05-01T09:00:01.123",
+                "2024-05-01T09:00:01.123456", "2024-05-01T09:00:01.123456789",
+                "+12024-05-01T09:00"};
+        for (String text : texts) {
+            Task task = JsonConverter.jsonObjectToTask(
+                    "{\"createdAt\":\"" + text + "\"}");
+            Assert.assertEquals(LocalDateTime.parse(text),
+                    task.getCreatedAt());
+        }
+    }
+
+    /**
+     * Tests that invalid timestamps are rejected.
+     */
+    public void testRejectsInvalidTimestamps() {
+        for (String text : new String[]{"2024-13-01T09:00", "2024-05-01T25:00",
+                "2024-05-01", "yesterday"}) {
+            Assert.assertThrows(IllegalArgumentException.class, () ->
+                    JsonConverter.jsonObjectToTask(
+                            "{\"createdAt\":\"" + text + "\"}"));
+        }
+    }
+
+    /**
+     * Tests that keys other than those of a task are skipped, whatever their
+     * values.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    public void testSkipsUnknownKeys() throws IOException {
+        Task task = JsonConverter.jsonObjectToTask("{\"tags\":[\"a\",{\"b\":" +
+                "[1,2]}],\"id\":7,\"done\":true,\"score\":-1.5e3," +
+                "\"note\":null,\"description\":\"kept\"}");
+        Assert.assertEquals(7, task.getId());
+        Assert.assertEquals("kept", task.getDescription());
+    }
+
+    /**
+     * Tests that IDs out of the range of an int, and unknown statuses, are
+     * rejected.
+     */
+    public void testRejectsInvalidValues() {
+        Assert.assertThrows(IllegalArgumentException.class, () ->
+                JsonConverter.jsonObjectToTask("{\"id\":2147483648}"));
+        Assert.assertThrows(IllegalArgumentException.class, () ->
+                JsonConverter.jsonObjectToTask("{\"status\":\"LATER\"}"));
+        Assert.assertEquals(Integer.MIN_VALUE, JsonConverter.jsonObjectToTask(
+                "{\"id\":-2147483648}").getId());
+    }
+
+    /**
+     * Tests that malformed JSON is rejected with the position of the error.
+     */
+    public void testRejectsMalformedJson() {
+        IOException e = Assert.assertThrows(IOException.class, () ->
+                read("[{\"id\":1}{\"id\":2}]"));
+        Assert.assertTrue(e.getMessage(),
+                e.getMessage().startsWith("Malformed JSON at character 9"));
+        Assert.assertThrows(IOException.class, () -> read("[{\"id\":1}"));
+        Assert.assertThrows(IOException.class, () ->
+                read("[{\"description\":\"\\x\"}]"));
+    }
+
+    /**
+     * Tests that a single object is rejected if anything but whitespace
+     * follows it.
+     */
+    public void testRejectsTrailingContent() {
+        IllegalArgumentException e = Assert.assertThrows(
+                IllegalArgumentException.class, () ->
+                        JsonConverter.jsonObjectToTask("{\"id\":1} x"));
+        Assert.assertTrue(e.getMessage(), e.getMessage().startsWith(
+                "Malformed JSON at character 9: expected end of input"));
+        Assert.assertThrows(IllegalArgumentException.class, () ->
+                JsonConverter.jsonObjectToTask("{\"id\":1}{\"id\":2}"));
+        Assert.assertEquals(1,
+                JsonConverter.jsonObjectToTask("{\"id\":1} \r").getId());
+    }
+
+    /**
+     * Tests that the parts of an array split after a comma are read as the
+     * whole array is.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    public void testReadsPartsOfArray() throws IOException {
+        String json = "[\n{\"id\":1},\n{\"id\":2},\n{\"id\":3}\n]\n";
+        int split = json.indexOf("{\"id\":3}");
+        List<Task> first = JsonConverter.jsonArrayPartToTasks(
+                new StringReader(json.substring(0, split)));
+        List<Task> second = JsonConverter.jsonArrayPartToTasks(
+                new StringReader(json.substring(split)));
+        Assert.assertEquals("1,2", TestTasks.ids(first));
+        Assert.assertEquals("3", TestTasks.ids(second));
+    }
+}
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+/**
+ * Tests of JsonTaskStorage, and of its recovery from damaged snapshots.
+ */
+public class JsonTaskStorageTest {
+
+    /**
+     * Creates a storage engine with all its files in a directory.
+     *
+     * @param directory The directory.
+     * @return The storage engine.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static JsonTaskStorage open(Path directory) throws IOException {
+        return new JsonTaskStorage(directory.resolve("tasks.json"),
+                directory.resolve("tasks.log"), directory.resolve("tasks.idx"),
+                directory.resolve("tasks.manifest"));
+    }
+
+    /**
+     * Loads all tasks of a storage engine.
+     *
+     * @param storage The storage engine.
+     * @return The tasks.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static TaskIndex load(TaskStorage storage) throws IOException {
+        TaskIndex tasks = new TaskIndex();
+        storage.load(tasks);
+        return tasks;
+    }
+
+    /**
+     * Checks that two indexes hold the same tasks in the same order.
+     *
+     * @param expected The expected tasks.
+     * @param actual   The actual tasks.
+     */
+    private static void assertSameTasks(TaskIndex expected, TaskIndex actual) {
+        Assert.assertEquals(TestTasks.ids(expected), TestTasks.ids(actual));
+        for (Task task : expected) {
+            TestTasks.assertSameTask(task, actual.get(task.getId()));
+        }
+        Assert.assertEquals(expected.getNextId(), actual.getNextId());
+    }
+
+    /**
+     * Saves a change to a task, both in memory and in storage.
+     *
+     * @param storage The storage engine.
+     * @param tasks   The tasks in memory.
+     * @param task    The added or changed task.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void save(TaskStorage storage, TaskIndex tasks, Task task)
+            throws IOException {
+        tasks.put(task);
+        storage.save(new ChangeSet().put(task), tasks);
+    }
+
+    /**
+     * Fills a store with two generations of snapshots: the previous one with
+     * tasks 1 and 2, the current one with task 2 changed and task 3 added,
+     * and task 4 only in the log.
+     *
+     * @param storage The storage engine.
+     * @return The tasks in memory.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static TaskIndex fill(TaskStorage storage) throws IOException {
+        TaskIndex tasks = load(storage);
+        save(storage, tasks, TestTasks.task(1, "one", TaskStatus.TODO, 1));
+        save(storage, tasks, TestTasks.task(2, "two", TaskStatus.TODO, 2));
+        storage.compact(tasks);
+        save(storage, tasks, TestTasks.task(2, "two!", TaskStatus.DONE, 3));
+        save(storage, tasks, TestTasks.task(3, "three", TaskStatus.TODO, 4));
+        storage.compact(tasks);
+        save(storage, tasks, TestTasks.task(4, "four", TaskStatus.TODO, 5));
+        tasks.remove(1);
+        storage.save(new ChangeSet().delete(1), tasks);
+        return tasks;
+    }
+
+    /**
+     * Tests that saved and compacted tasks are loaded back, and that the
+     * previous snapshot is kept.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testLoadsSavedTasks() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            TaskIndex tasks = fill(open(directory));
+            TaskStorage storage = open(directory);
+            Assert.assertTrue("Clean store", !storage.needsRecovery());
+            assertSameTasks(tasks, load(storage));
+            Assert.assertEquals(5, storage.loadNextId());
+            Assert.assertTrue("Previous snapshot kept",
+                    Files.exists(directory.resolve("tasks.json.prev")));
+            Assert.assertTrue("Next snapshot removed",
+                    !Files.exists(directory.resolve("tasks.json.next")));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that tasks are recovered from the previous snapshot and both logs
+     * when the current snapshot is damaged, which is kept aside.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testRecoversFromPreviousSnapshot() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            TaskIndex tasks = fill(open(directory));
+            Path filePath = directory.resolve("tasks.json");
+            byte[] bytes = Files.readAllBytes(filePath);
+            // Same size, so that only the checksum tells it is damaged
+            bytes[bytes.length / 2] ^= 0x20;
+            Files.write(filePath, bytes);
+            Files.setLastModifiedTime(filePath,
+                    FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+            TaskStorage storage = open(directory);
+            Assert.assertTrue("Damaged store", storage.needsRecovery());
+            storage.recover();
+            Assert.assertTrue("Recovered store", !storage.needsRecovery());
+            assertSameTasks(tasks, load(open(directory)));
+            Assert.assertTrue("Damaged snapshot kept",
+                    Files.exists(directory.resolve("tasks.json.damaged")));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that a snapshot that was only touched is verified and trusted,
+     * without being rewritten.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testTrustsTouchedSnapshot() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            TaskIndex tasks = fill(open(directory));
+            Path filePath = directory.resolve("tasks.json");
+            byte[] bytes = Files.readAllBytes(filePath);
+            Files.setLastModifiedTime(filePath,
+                    FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+            TaskStorage storage = open(directory);
+            Assert.assertTrue("Touched store", storage.needsRecovery());
+            storage.recover();
+            Assert.assertTrue("Recovered store", !storage.needsRecovery());
+            Assert.assertTrue("Snapshot unchanged",
+                    Arrays.equals(bytes, Files.readAllBytes(filePath)));
+            assertSameTasks(tasks, load(open(directory)));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that recovery fails when no snapshot is intact, rather than
+     * losing tasks silently.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testFailsWithoutIntactSnapshot() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            fill(open(directory));
+            Files.writeString(directory.resolve("tasks.json"), "[");
+            Files.writeString(directory.resolve("tasks.json.prev"), "[");
+            TaskStorage storage = open(directory);
+            Assert.assertTrue("Damaged store", storage.needsRecovery());
+            Assert.assertThrows(IOException.class, storage::recover);
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that a store written before there were manifests is trusted.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testTrustsStoreWithoutManifest() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            Files.writeString(directory.resolve("tasks.json"), "[\n" +
+                    JsonConverter.taskToJsonObject(TestTasks.task(1, "old",
+                            TaskStatus.TODO, 0)) + "\n]\n");
+            TaskStorage storage = open(directory);
+            Assert.assertTrue("Legacy store", !storage.needsRecovery());
+            Assert.assertEquals("1", TestTasks.ids(load(storage)));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+}
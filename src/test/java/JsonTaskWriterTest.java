@@ -0,0 +1,137 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests of JsonTaskWriter, through round trips with JsonTaskReader.
+ */
+public class JsonTaskWriterTest {
+
+    /**
+     * Writes tasks as a JSON array.
+     *
+     * @param tasks The tasks.
+     * @return The JSON array.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static String write(List<Task> tasks) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonConverter.tasksToJsonArray(tasks, Channels.newChannel(output));
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes tasks as a JSON array and reads them back.
+     *
+     * @param tasks The tasks.
+     * @return The tasks read back.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static List<Task> roundTrip(List<Task> tasks) throws IOException {
+        return JsonConverter.jsonArrayToTasks(new StringReader(write(tasks)));
+    }
+
+    /**
+     * Tests that no tasks are written as an empty array.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testWritesEmptyArray() throws IOException {
+        Assert.assertEquals("[]\n", write(new ArrayList<>()));
+    }
+
+    /**
+     * Tests that each task is written on a line of its own, as JsonConverter
+     * writes a single task.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testWritesOneTaskPerLine() throws IOException {
+        Task first = TestTasks.task(1, "first", TaskStatus.TODO, 0);
+        Task second = TestTasks.task(2, "second\nline", TaskStatus.DONE, 5);
+        Assert.assertEquals("[\n" + JsonConverter.taskToJsonObject(first) +
+                        ",\n" + JsonConverter.taskToJsonObject(second) +
+                        "\n]\n",
+                write(List.of(first, second)));
+    }
+
+    /**
+     * Tests that characters that must be escaped, control characters and
+     * characters of every UTF-8 length are read back as they were.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testRoundTripsEscapes() throws IOException {
+        String description = "\"quoted\" back\\slash\n\r\t\u0001\u001f " +
+                "caf\u00e9 \u6f22\u5b57 \ud83d\ude00 end";
+        Task task = TestTasks.task(1, description, TaskStatus.IN_PROGRESS, 0);
+        List<Task> tasks = roundTrip(List.of(task));
+        TestTasks.assertSameTask(task, tasks.get(0));
+        Assert.assertEquals(description, tasks.get(0).getDescription());
+    }
+
+    /**
+     * Tests that unpaired surrogates, which cannot be encoded as UTF-8, are
+     * written as "?", as String.getBytes() does.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testReplacesUnpairedSurrogates() throws IOException {
+        Task task = TestTasks.task(1, "a\ud83db\ude00c\ud83d",
+                TaskStatus.TODO, 0);
+        Assert.assertEquals("a?b?c?",
+                roundTrip(List.of(task)).get(0).getDescription());
+    }
+
+    /**
+     * Tests that timestamps of every precision, and outside the years of four
+     * digits, are read back as they were.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testRoundTripsTimestamps() throws IOException {
+        LocalDateTime[] times = {LocalDateTime.of(2024, 5, 1, 9, 0),
+                LocalDateTime.of(2024, 5, 1, 9, 0, 1),
+                LocalDateTime.of(2024, 5, 1, 9, 0, 0, 500_000_000),
+                LocalDateTime.of(2024, 5, 1, 9, 0, 0, 123_456_000),
+                LocalDateTime.of(2024, 5, 1, 9, 0, 0, 123_456_789),
+                LocalDateTime.of(1, 1, 1, 0, 0),
+                LocalDateTime.of(12024, 12, 31, 23, 59, 59, 1),
+                LocalDateTime.of(-5, 1, 1, 0, 0)};
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < times.length; i++) {
+            Task task = TestTasks.task(i + 1, "t", TaskStatus.TODO, 0);
+            task.setCreatedAt(times[i]);
+            task.setUpdatedAt(times[times.length - 1 - i]);
+            tasks.add(task);
+        }
+        List<Task> read = roundTrip(tasks);
+        for (int i = 0; i < times.length; i++) {
+            TestTasks.assertSameTask(tasks.get(i), read.get(i));
+        }
+    }
+
+    /**
+     * Tests that arrays larger than the buffer of the writer are written
+     * whole, including characters split across the end of the buffer.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testRoundTripsLargeArrays() throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 5000; i++) {
+            tasks.add(TestTasks.task(i, "task \u00e9\ud83d\ude00 " + i,
+                    TaskStatus.values()[i % 3], i));
+        }
+        List<Task> read = roundTrip(tasks);
+        Assert.assertEquals(tasks.size(), read.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            TestTasks.assertSameTask(tasks.get(i), read.get(i));
+        }
+    }
+}
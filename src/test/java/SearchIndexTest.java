@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Tests of SearchIndex and of its log.
+ */
+public class SearchIndexTest {
+
+    /**
+     * Creates a search index with its files in a directory.
+     *
+     * @param directory The directory.
+     * @return The search index.
+     */
+    private static SearchIndex open(Path directory) {
+        return new SearchIndex(directory.resolve("tasks.search"),
+                directory.resolve("tasks.search.log"));
+    }
+
+    /**
+     * Finds the candidates for a query.
+     *
+     * @param index The search index.
+     * @param query The words searched.
+     * @return The candidate IDs.
+     */
+    private static String find(SearchIndex index, String query) {
+        return Arrays.toString(index.find(SearchIndex.tokenize(query)));
+    }
+
+    /**
+     * Tests that tasks are only found by the words of their latest
+     * descriptions, and no longer once deleted, both in memory and once the
+     * index is loaded again from its files.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testRemovesChangedAndDeletedTasks() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            SearchIndex index = open(directory);
+            index.build(List.of(
+                    TestTasks.task(1, "write report", TaskStatus.TODO, 0),
+                    TestTasks.task(2, "read report", TaskStatus.TODO, 1),
+                    TestTasks.task(3, "report bug", TaskStatus.TODO, 2)));
+            index.append(new ChangeSet().put(
+                    TestTasks.task(1, "write plan", TaskStatus.TODO, 3))
+                    .delete(3));
+
+            for (SearchIndex loaded : new SearchIndex[]{index,
+                    open(directory)}) {
+                if (!loaded.isLoaded()) {
+                    loaded.load();
+                }
+                Assert.assertEquals("[2]", find(loaded, "report"));
+                Assert.assertEquals("[1]", find(loaded, "plan"));
+                Assert.assertEquals("[]", find(loaded, "bug"));
+                Assert.assertEquals("[1]", find(loaded, "write"));
+            }
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that the log is folded into a new snapshot once it grows too
+     * large, as changes are appended rather than only when it is loaded.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testCompactsLogOnAppend() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            SearchIndex index = open(directory);
+            index.build(List.of());
+            index.unload();
+            Path logPath = directory.resolve("tasks.search.log");
+            boolean folded = false;
+            for (int id = 1; id <= 5000 && !folded; id++) {
+                StringBuilder description = new StringBuilder("lorem");
+                for (int i = 0; i < 50; i++) {
+                    description.append(" w").append(id).append('x').append(i);
+                }
+                index.append(new ChangeSet().put(TestTasks.task(id,
+                        description.toString(), TaskStatus.TODO, id)));
+                folded = !Files.exists(logPath);
+            }
+            Assert.assertTrue("Log folded into the snapshot", folded);
+
+            SearchIndex loaded = open(directory);
+            loaded.load();
+            Assert.assertEquals("[7]", find(loaded, "lorem w7x3"));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests random changes and deletions against a map of descriptions, in
+     * an order of IDs that makes tasks be added to and removed from the
+     * middle of the postings, which must stay in ascending order, both in
+     * memory and once the index is loaded again from its files.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testMatchesMapUnderRandomChanges() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            Random random = new Random(42);
+            SearchIndex index = open(directory);
+            index.build(List.of());
+            Map<Integer, String> descriptions = new TreeMap<>();
+            for (int i = 0; i < 5000; i++) {
+                int id = 1 + random.nextInt(500);
+                if (random.nextInt(4) == 0) {
+                    index.append(new ChangeSet().delete(id));
+                    descriptions.remove(id);
+                } else {
+                    String description = "w" + random.nextInt(5) + " w" +
+                            (5 + random.nextInt(5));
+                    index.append(new ChangeSet().put(
+                            TestTasks.task(id, description, TaskStatus.TODO,
+                                    i)));
+                    descriptions.put(id, description);
+                }
+            }
+
+            for (SearchIndex loaded : new SearchIndex[]{index,
+                    open(directory)}) {
+                if (!loaded.isLoaded()) {
+                    loaded.load();
+                }
+                for (int word = 0; word < 10; word++) {
+                    StringBuilder expected = new StringBuilder();
+                    for (Map.Entry<Integer, String> entry :
+                            descriptions.entrySet()) {
+                        if (SearchIndex.matches(entry.getValue(),
+                                List.of("w" + word))) {
+                            expected.append(expected.length() > 0 ? ", " :
+                                    "").append(entry.getKey());
+                        }
+                    }
+                    Assert.assertEquals("[" + expected + "]",
+                            find(loaded, "w" + word));
+                }
+            }
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests of TaskArchive and of the summaries of its segments.
+ */
+public class TaskArchiveTest {
+
+    /**
+     * Creates tasks with consecutive IDs, done, created and updated a minute
+     * apart.
+     *
+     * @param firstId     The ID of the first task.
+     * @param count       The number of tasks.
+     * @param description The description of every task.
+     * @return The tasks.
+     */
+    private static List<Task> tasks(int firstId, int count,
+                                    String description) {
+        List<Task> tasks = new ArrayList<>();
+        for (int id = firstId; id < firstId + count; id++) {
+            tasks.add(TestTasks.task(id, description + " " + id,
+                    TaskStatus.DONE, id));
+        }
+        return tasks;
+    }
+
+    /**
+     * Tests that a summary records the ID range, statuses, time range and
+     * words of its tasks, and tells which queries its segment may match.
+     */
+    public void testSummarizesTasks() {
+        SegmentSummary summary = new SegmentSummary();
+        for (Task task : tasks(10, 5, "Quarterly report")) {
+            summary.add(task);
+        }
+
+        Assert.assertEquals(5, summary.getCount());
+        Assert.assertEquals(10, summary.getMinId());
+        Assert.assertEquals(14, summary.getMaxId());
+        Assert.assertEquals(5, summary.count(TaskStatus.DONE));
+        Assert.assertEquals(0, summary.count(TaskStatus.TODO));
+        Assert.assertTrue("Words", summary.containsAll(
+                SearchIndex.tokenize("report QUARTERLY")));
+        Assert.assertTrue("Missing word", !summary.containsAll(
+                SearchIndex.tokenize("quarterly plan")));
+
+        TaskQuery query = new TaskQuery();
+        Assert.assertTrue("Any task", summary.mayMatch(query));
+        query.setStatus(TaskStatus.TODO);
+        Assert.assertTrue("No task to do", !summary.mayMatch(query));
+        query.setStatus(TaskStatus.DONE);
+        query.setSince(TestTasks.BASE_TIME.plusMinutes(14));
+        Assert.assertTrue("Last task in range", summary.mayMatch(query));
+        query.setSince(TestTasks.BASE_TIME.plusMinutes(15));
+        Assert.assertTrue("After the range", !summary.mayMatch(query));
+        query.setSince(null);
+        query.setUntil(TestTasks.BASE_TIME.plusMinutes(10));
+        Assert.assertTrue("Before the range", !summary.mayMatch(query));
+    }
+
+    /**
+     * Tests that only the segments whose summaries pass the filter are read,
+     * and that a missing summary is built again from its segment.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testSkipsSegmentsBySummary() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            TaskArchive archive = new TaskArchive(directory);
+            archive.write(tasks(1, 3, "alpha"));
+            archive.write(tasks(4, 3, "beta"));
+            archive.write(tasks(7, 3, "gamma"));
+            Path summaryPath = directory.resolve("segment-000002.summary");
+            Assert.assertTrue("Summary written", Files.exists(summaryPath));
+            Files.delete(summaryPath);
+
+            TaskArchive reopened = new TaskArchive(directory);
+            List<Task> read = new ArrayList<>();
+            reopened.forEach(summary -> summary.containsAll(
+                    SearchIndex.tokenize("beta")), read::add);
+            Assert.assertEquals("4,5,6", TestTasks.ids(read));
+            Assert.assertTrue("Summary rebuilt", Files.exists(summaryPath));
+
+            read.clear();
+            reopened.forEach(summary -> summary.getMaxId() >= 5 &&
+                    summary.getMinId() <= 7, read::add);
+            Assert.assertEquals("4,5,6,7,8,9", TestTasks.ids(read));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests of TaskIndex.
+ */
+public class TaskIndexTest {
+
+    /**
+     * Checks that an index holds the same tasks as a map, in the same order.
+     *
+     * @param expected The tasks by ID, in insertion order.
+     * @param index    The index.
+     */
+    private static void assertSameTasks(Map<Integer, Task> expected,
+                                        TaskIndex index) {
+        Assert.assertEquals(expected.size(), index.size());
+        Assert.assertEquals(TestTasks.ids(expected.values()),
+                TestTasks.ids(index));
+        for (Task task : expected.values()) {
+            TestTasks.assertSameTask(task, index.get(task.getId()));
+        }
+        for (TaskStatus status : TaskStatus.values()) {
+            List<Task> withStatus = new ArrayList<>();
+            for (Task task : expected.values()) {
+                if (task.getStatus() == status) {
+                    withStatus.add(task);
+                }
+            }
+            Assert.assertEquals(withStatus.size(), index.count(status));
+            Assert.assertEquals(TestTasks.ids(withStatus),
+                    TestTasks.ids(index.withStatus(status)));
+        }
+    }
+
+    /**
+     * Tests that tasks are found by ID, and that replacing a task keeps its
+     * position.
+     */
+    public void testPutGetRemove() {
+        TaskIndex index = new TaskIndex();
+        index.put(TestTasks.task(1, "a", TaskStatus.TODO, 0));
+        index.put(TestTasks.task(2, "b", TaskStatus.TODO, 1));
+        index.put(TestTasks.task(3, "c", TaskStatus.TODO, 2));
+        index.put(TestTasks.task(1, "a2", TaskStatus.DONE, 3));
+
+        Assert.assertEquals("1,2,3", TestTasks.ids(index));
+        Assert.assertEquals("a2", index.get(1).getDescription());
+        Assert.assertEquals(TaskStatus.DONE, index.get(1).getStatus());
+        Assert.assertEquals("b", index.remove(2).getDescription());
+        Assert.assertNull(index.remove(2));
+        Assert.assertNull(index.get(2));
+        Assert.assertEquals("1,3", TestTasks.ids(index));
+        Assert.assertEquals(2, index.size());
+    }
+
+    /**
+     * Tests that the sequence of IDs never goes back, even when the task with
+     * the highest ID is removed.
+     */
+    public void testNextIdNeverGoesBack() {
+        TaskIndex index = new TaskIndex();
+        Assert.assertEquals(1, index.getNextId());
+        index.put(TestTasks.task(5, "a", TaskStatus.TODO, 0));
+        Assert.assertEquals(6, index.getNextId());
+        index.remove(5);
+        Assert.assertEquals(6, index.getNextId());
+        index.advanceNextId(3);
+        Assert.assertEquals(6, index.getNextId());
+        index.advanceNextId(10);
+        Assert.assertEquals(10, index.getNextId());
+    }
+
+    /**
+     * Tests random puts and removes against a map, which makes the hash table
+     * grow, shift entries back on removal and reclaim the slots of removed
+     * tasks.
+     */
+    public void testMatchesMapUnderRandomChanges() {
+        Random random = new Random(42);
+        TaskIndex index = new TaskIndex();
+        Map<Integer, Task> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            // IDs that collide in the table, and a small range so tasks are
+            // often replaced or removed
+            int id = random.nextInt(2000) * 64;
+            if (random.nextInt(3) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                Task task = TestTasks.task(id, "task " + i,
+                        TaskStatus.values()[random.nextInt(3)], i);
+                index.put(task);
+                // A replaced task keeps its position in both
+                expected.put(id, task);
+            }
+        }
+        assertSameTasks(expected, index);
+    }
+
+    /**
+     * Tests that descriptions survive the compaction of the heap they are
+     * packed in, which happens once most of it is no longer used.
+     */
+    public void testCompactsDescriptionHeap() {
+        TaskIndex index = new TaskIndex();
+        Map<Integer, Task> expected = new LinkedHashMap<>();
+        for (int i = 1; i <= 100; i++) {
+            Task task = TestTasks.task(i, "first " + i, TaskStatus.TODO, i);
+            index.put(task);
+            expected.put(i, task);
+        }
+        for (int round = 0; round < 50; round++) {
+            for (int i = 1; i <= 100; i += 2) {
+                Task task = TestTasks.task(i, ("round " + round + " ")
+                        .repeat(50) + "\u00e9\ud83d\ude00", TaskStatus.DONE, i);
+                index.put(task);
+                expected.put(i, task);
+            }
+        }
+        assertSameTasks(expected, index);
+    }
+
+    /**
+     * Tests that replacing a task whose description did not change keeps the
+     * stored description, rather than appending it to the heap again.
+     *
+     * @throws ReflectiveOperationException If the heap cannot be inspected.
+     */
+    public void testKeepsUnchangedDescription()
+            throws ReflectiveOperationException {
+        TaskIndex index = new TaskIndex();
+        index.put(TestTasks.task(1, "same", TaskStatus.TODO, 0));
+        index.put(TestTasks.task(2, "", TaskStatus.TODO, 0));
+        Field heapSize = TaskIndex.class.getDeclaredField("heapSize");
+        heapSize.setAccessible(true);
+        int size = heapSize.getInt(index);
+        for (int i = 1; i <= 10; i++) {
+            index.put(TestTasks.task(1, "same", i % 2 == 0 ? TaskStatus.TODO :
+                    TaskStatus.DONE, i));
+            index.put(TestTasks.task(2, "", TaskStatus.DONE, i));
+        }
+        Assert.assertEquals(size, heapSize.getInt(index));
+        Assert.assertEquals("same", index.get(1).getDescription());
+        Assert.assertEquals(TaskStatus.TODO, index.get(1).getStatus());
+
+        index.put(TestTasks.task(1, "changed", TaskStatus.DONE, 11));
+        Assert.assertEquals(size + 7, heapSize.getInt(index));
+        Assert.assertEquals("changed", index.get(1).getDescription());
+    }
+
+    /**
+     * Tests that an empty description stored after others is still read once
+     * the heap is compacted into a smaller one.
+     */
+    public void testCompactsHeapWithEmptyDescription() {
+        TaskIndex index = new TaskIndex();
+        Map<Integer, Task> expected = new LinkedHashMap<>();
+        for (int i = 1; i <= 100; i++) {
+            Task task = TestTasks.task(i, "x".repeat(1000), TaskStatus.TODO, i);
+            index.put(task);
+            expected.put(i, task);
+        }
+        Task empty = TestTasks.task(101, "", TaskStatus.TODO, 101);
+        index.put(empty);
+        expected.put(101, empty);
+        for (int i = 1; i <= 100; i++) {
+            index.remove(i);
+            expected.remove(i);
+        }
+        // Enough to fill the heap, which is then compacted
+        for (int i = 102; i <= 150; i++) {
+            Task task = TestTasks.task(i, "y".repeat(1000), TaskStatus.TODO, i);
+            index.put(task);
+            expected.put(i, task);
+        }
+        assertSameTasks(expected, index);
+    }
+
+    /**
+     * Tests that tasks are found by time range and listed in order of time,
+     * after their timestamps change.
+     */
+    public void testFindsTasksByTime() {
+        TaskIndex index = new TaskIndex();
+        for (int i = 1; i <= 10; i++) {
+            index.put(TestTasks.task(i, "t" + i,
+                    i % 2 == 0 ? TaskStatus.DONE : TaskStatus.TODO, 10 - i));
+        }
+        // Task 1 moves from the latest update time to the earliest
+        Task task = index.get(1);
+        task.setUpdatedAt(TestTasks.BASE_TIME.minusMinutes(1));
+        index.put(task);
+
+        LocalDateTime from = TestTasks.BASE_TIME.plusMinutes(2);
+        LocalDateTime to = TestTasks.BASE_TIME.plusMinutes(6);
+        Assert.assertEquals("8,7,6,5",
+                TestTasks.ids(index.createdBetween(from, to, null)));
+        Assert.assertEquals("8,6",
+                TestTasks.ids(index.createdBetween(from, to, TaskStatus.DONE)));
+        Assert.assertEquals("1,10,9",
+                TestTasks.ids(index.updatedBetween(null,
+                        TestTasks.BASE_TIME.plusMinutes(2), null)));
+        Assert.assertEquals("1,2,3,4,5,6,7,8,9,10",
+                TestTasks.ids(index.byCreated(true, null)));
+        Assert.assertEquals("1,10,9,8,7,6,5,4,3,2",
+                TestTasks.ids(index.byUpdated(false, null)));
+        Assert.assertEquals("2,4,6,8,10",
+                TestTasks.ids(index.byUpdated(true, TaskStatus.DONE)));
+
+        index.remove(10);
+        Assert.assertEquals("1,9",
+                TestTasks.ids(index.updatedBetween(null,
+                        TestTasks.BASE_TIME.plusMinutes(2), null)));
+    }
+
+    /**
+     * Tests that merging another index puts the tasks that differ and removes
+     * the missing ones, keeping the others in place.
+     */
+    public void testMergesChangedTasks() {
+        TaskIndex index = new TaskIndex();
+        TaskIndex other = new TaskIndex();
+        for (int i = 1; i <= 4; i++) {
+            index.put(TestTasks.task(i, "t" + i, TaskStatus.TODO, i));
+            other.put(TestTasks.task(i, "t" + i, TaskStatus.TODO, i));
+        }
+        other.remove(2);
+        Task changed = TestTasks.task(3, "changed", TaskStatus.DONE, 30);
+        other.put(changed);
+        other.put(TestTasks.task(7, "new", TaskStatus.TODO, 7));
+
+        Assert.assertEquals(3, index.merge(other));
+        Assert.assertEquals("1,3,4,7", TestTasks.ids(index));
+        TestTasks.assertSameTask(changed, index.get(3));
+        Assert.assertEquals(8, index.getNextId());
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tests of TaskLog.
+ */
+public class TaskLogTest {
+
+    /**
+     * Tests that appended changes are replayed in order, and that replaying
+     * from an offset only applies the changes appended after it.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testReplaysAppendedChanges() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            TaskLog log = new TaskLog(directory.resolve("tasks.log"));
+            Task first = TestTasks.task(1, "first", TaskStatus.TODO, 0);
+            Task second = TestTasks.task(2, "second", TaskStatus.TODO, 1);
+            log.append(new ChangeSet().put(first).put(second));
+            long offset = log.size();
+            Task changed = TestTasks.task(2, "changed", TaskStatus.DONE, 2);
+            Assert.assertEquals(offset,
+                    log.append(new ChangeSet().put(changed).delete(1)));
+
+            TaskIndex tasks = new TaskIndex();
+            Assert.assertEquals(log.size(), log.replay(tasks));
+            Assert.assertEquals("2", TestTasks.ids(tasks));
+            TestTasks.assertSameTask(changed, tasks.get(2));
+
+            TaskIndex later = new TaskIndex();
+            later.put(first);
+            log.replay(later, offset);
+            Assert.assertEquals("2", TestTasks.ids(later));
+            Assert.assertEquals(3, new TaskLog(directory.resolve("tasks.log"))
+                    .getNextId());
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that a last record cut short, as left by a write that was
+     * interrupted, is neither replayed nor kept in front of the next one.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testSkipsTruncatedRecord() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            Path path = directory.resolve("tasks.log");
+            TaskLog log = new TaskLog(path);
+            log.append(new ChangeSet().put(
+                    TestTasks.task(1, "kept", TaskStatus.TODO, 0)));
+            String record = "+" + JsonConverter.taskToJsonObject(
+                    TestTasks.task(2, "cut", TaskStatus.TODO, 1));
+            Files.write(path, record.substring(0, record.length() / 2)
+                            .getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+            TaskIndex tasks = new TaskIndex();
+            TaskLog reader = new TaskLog(path);
+            Assert.assertEquals(log.size(), reader.replay(tasks));
+            Assert.assertEquals("1", TestTasks.ids(tasks));
+            Assert.assertEquals(2, reader.getNextId());
+
+            log.append(new ChangeSet().put(
+                    TestTasks.task(3, "after", TaskStatus.TODO, 2)));
+            tasks = new TaskIndex();
+            new TaskLog(path).replay(tasks);
+            Assert.assertEquals("1,3", TestTasks.ids(tasks));
+            Assert.assertTrue("Ends with a line break", Files.readString(path)
+                    .endsWith("\n"));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that a reset log keeps only the next ID, and that replaying it
+     * from an offset beyond its end asks for a full reload.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testResetKeepsNextId() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            TaskLog log = new TaskLog(directory.resolve("tasks.log"));
+            log.append(new ChangeSet().put(
+                    TestTasks.task(41, "a", TaskStatus.TODO, 0)));
+            long offset = log.size();
+            log.rotate(directory.resolve("tasks.log.prev"), 42);
+
+            TaskIndex tasks = new TaskIndex();
+            Assert.assertEquals(-1L, log.replay(tasks, offset));
+            log.replay(tasks);
+            Assert.assertEquals(0, tasks.size());
+            Assert.assertEquals(42, tasks.getNextId());
+            Assert.assertEquals(42, log.getNextId());
+
+            TaskIndex previous = new TaskIndex();
+            new TaskLog(directory.resolve("tasks.log.prev")).replay(previous);
+            Assert.assertEquals("41", TestTasks.ids(previous));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    /**
+     * Tests that malformed records are reported.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void testRejectsMalformedRecords() throws IOException {
+        Path directory = TestFiles.createDirectory();
+        try {
+            Path path = directory.resolve("tasks.log");
+            Files.writeString(path, "+{\"id\":1}\n?what\n");
+            Assert.assertThrows(IOException.class, () ->
+                    new TaskLog(path).replay(new TaskIndex()));
+            Files.writeString(path, "-x\n");
+            Assert.assertThrows(IOException.class, () ->
+                    new TaskLog(path).replay(new TaskIndex()));
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Tests of TaskRepositoryCache and of batches spanning several task lists.
+ */
+public class TaskRepositoryCacheTest {
+
+    /**
+     * Tests that the lists of an open batch are kept open beyond the
+     * capacity until the batch is committed, so that their changes are only
+     * confirmed then, and that the lists beyond the capacity are closed
+     * afterwards.
+     *
+     * @throws Exception If the tasks cannot be added.
+     */
+    public void testKeepsBatchListsOpen() throws Exception {
+        TestFiles.resetResources();
+        TaskRepositoryCache cache = new TaskRepositoryCache(1);
+        try {
+            TaskRepository[] used = new TaskRepository[2];
+            String added = TestOutput.capture(() -> {
+                cache.beginBatch();
+                used[0] = cache.get("first");
+                used[0].addTask("one");
+                used[1] = cache.get("second");
+                used[1].addTask("two");
+                cache.get("third").addTask("three");
+            });
+            Assert.assertEquals("", added);
+            Assert.assertTrue("Kept open", used[0] == cache.get("first"));
+
+            String committed = TestOutput.capture(cache::commitBatch);
+            Assert.assertTrue(committed, committed.contains("\"one\"") &&
+                    committed.contains("\"two\"") &&
+                    committed.contains("\"three\""));
+            // Only the list used last is kept once the batch is committed
+            Assert.assertTrue("Kept after the batch",
+                    used[0] == cache.get("first"));
+            Assert.assertTrue("Closed after the batch",
+                    used[1] != cache.get("second"));
+        } finally {
+            TestOutput.capture(cache::close);
+        }
+    }
+
+    /**
+     * Tests that the list used least recently is closed when another one is
+     * opened outside a batch.
+     *
+     * @throws Exception If the tasks cannot be added.
+     */
+    public void testClosesListUsedLeastRecently() throws Exception {
+        TestFiles.resetResources();
+        TaskRepositoryCache cache = new TaskRepositoryCache(2);
+        try {
+            TaskRepository first = cache.get("first");
+            TaskRepository second = cache.get("second");
+            Assert.assertTrue("First used again", first == cache.get("first"));
+            cache.get("third");
+            Assert.assertTrue("First kept", first == cache.get("first"));
+            Assert.assertTrue("Second closed", second != cache.get("second"));
+        } finally {
+            TestOutput.capture(cache::close);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Tests of the commands of TaskRepository on the default task list.
+ */
+public class TaskRepositoryTest {
+
+    /**
+     * Creates a repository on a new default task list with a number of
+     * tasks, the even ones marked as done.
+     *
+     * @param count The number of tasks.
+     * @return The repository.
+     * @throws Exception If the tasks cannot be added.
+     */
+    private static TaskRepository create(int count) throws Exception {
+        TestFiles.resetResources();
+        TaskRepository repository = new TaskRepository();
+        TestOutput.capture(() -> {
+            for (int i = 1; i <= count; i++) {
+                repository.addTask("task " + i);
+                if (i % 2 == 0) {
+                    repository.markTask(i, TaskStatus.DONE);
+                }
+            }
+        });
+        return repository;
+    }
+
+    /**
+     * Lists the tasks that match a query, as JSON.
+     *
+     * @param repository The repository.
+     * @param query      The query.
+     * @return The IDs of the listed tasks, in order.
+     * @throws Exception If the tasks cannot be listed.
+     */
+    private static String list(TaskRepository repository, TaskQuery query)
+            throws Exception {
+        String output = TestOutput.capture(() ->
+                repository.listTasks(query, TaskPrinter.Format.JSON));
+        StringBuilder ids = new StringBuilder();
+        for (String line : output.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(JsonConverter.jsonObjectToTask(line).getId());
+        }
+        return ids.toString();
+    }
+
+    /**
+     * Creates a query that sorts tasks and lists a page of them.
+     *
+     * @param sortField  The field tasks are sorted by.
+     * @param descending Whether tasks are sorted in descending order.
+     * @param offset     The number of tasks skipped.
+     * @param limit      The number of tasks listed at most.
+     * @return The query.
+     */
+    private static TaskQuery page(TaskQuery.SortField sortField,
+                                  boolean descending, int offset, int limit) {
+        TaskQuery query = new TaskQuery();
+        query.setSortField(sortField);
+        query.setDescending(descending);
+        query.setOffset(offset);
+        query.setLimit(limit);
+        return query;
+    }
+
+    /**
+     * Tests that a limit of 0 lists no tasks, whatever the sort field.
+     *
+     * @throws Exception If the tasks cannot be listed.
+     */
+    public void testListsNothingAtLimitZero() throws Exception {
+        TaskRepository repository = create(5);
+        try {
+            for (TaskQuery.SortField sortField : TaskQuery.SortField.values()) {
+                Assert.assertEquals("", list(repository,
+                        page(sortField, false, 0, 0)));
+                Assert.assertEquals("", list(repository,
+                        page(sortField, true, 2, 0)));
+                TaskQuery query = page(sortField, true, 0, 0);
+                query.setStatus(TaskStatus.DONE);
+                query.setSince(TestTasks.BASE_TIME);
+                Assert.assertEquals("", list(repository, query));
+            }
+            TaskQuery unsorted = new TaskQuery();
+            unsorted.setLimit(0);
+            Assert.assertEquals("", list(repository, unsorted));
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * Tests that pages of sorted tasks are listed in order, with a status
+     * filter or without.
+     *
+     * @throws Exception If the tasks cannot be listed.
+     */
+    public void testListsSortedPages() throws Exception {
+        TaskRepository repository = create(10);
+        try {
+            Assert.assertEquals("10", list(repository,
+                    page(TaskQuery.SortField.CREATED, true, 0, 1)));
+            Assert.assertEquals("8,7,6", list(repository,
+                    page(TaskQuery.SortField.CREATED, true, 2, 3)));
+            Assert.assertEquals("3,4", list(repository,
+                    page(TaskQuery.SortField.ID, false, 2, 2)));
+            TaskQuery query = page(TaskQuery.SortField.UPDATED, true, 1, 2);
+            query.setStatus(TaskStatus.DONE);
+            Assert.assertEquals("8,6", list(repository, query));
+            Assert.assertEquals("", list(repository,
+                    page(TaskQuery.SortField.ID, false, 10, 5)));
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * Creates a repository with tasks 1 to 10, the even ones done and
+     * archived in two segments: tasks 2 and 4, then tasks 6, 8 and 10.
+     *
+     * @return The repository.
+     * @throws Exception If the tasks cannot be added or archived.
+     */
+    private static TaskRepository createArchived() throws Exception {
+        TestFiles.resetResources();
+        TaskRepository repository = new TaskRepository();
+        TestOutput.capture(() -> {
+            for (int i = 1; i <= 10; i++) {
+                repository.addTask("task " + i);
+            }
+            for (int i = 2; i <= 10; i += 2) {
+                repository.markTask(i, TaskStatus.DONE);
+                if (i == 4 || i == 10) {
+                    repository.archiveTasks(LocalDateTime.now().plusDays(1));
+                }
+            }
+        });
+        return repository;
+    }
+
+    /**
+     * Tests that archived tasks are listed along with the others, in every
+     * kind of listing, and that pages are the same as the full listing cut
+     * at their offset and limit.
+     *
+     * @throws Exception If the tasks cannot be listed.
+     */
+    public void testListsArchivedTasks() throws Exception {
+        TaskRepository repository = createArchived();
+        try {
+            TaskQuery all = new TaskQuery();
+            Assert.assertEquals("2,4,6,8,10,1,3,5,7,9", list(repository, all));
+            TaskQuery done = new TaskQuery();
+            done.setStatus(TaskStatus.DONE);
+            Assert.assertEquals("2,4,6,8,10", list(repository, done));
+            Assert.assertEquals("10,9,8", list(repository,
+                    page(TaskQuery.SortField.ID, true, 0, 3)));
+            Assert.assertEquals("2,3,4", list(repository,
+                    page(TaskQuery.SortField.ID, false, 1, 3)));
+
+            for (int variant = 0; variant < 4; variant++) {
+                TaskQuery full = new TaskQuery();
+                TaskQuery paged = new TaskQuery();
+                for (TaskQuery query : new TaskQuery[]{full, paged}) {
+                    if (variant == 1) {
+                        query.setSince(LocalDateTime.now().minusDays(1));
+                    } else if (variant == 2) {
+                        query.setSortField(TaskQuery.SortField.UPDATED);
+                        query.setDescending(true);
+                    } else if (variant == 3) {
+                        query.setSortField(TaskQuery.SortField.CREATED);
+                        query.setStatus(TaskStatus.DONE);
+                    }
+                }
+                String[] ids = list(repository, full).split(",");
+                paged.setOffset(2);
+                paged.setLimit(3);
+                Assert.assertEquals(String.join(",",
+                        Arrays.copyOfRange(ids, 2,
+                                Math.min(5, ids.length))),
+                        list(repository, paged));
+            }
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * Tests that a segment of the archive is not read once the page is full
+     * and its summary shows that none of its tasks belongs to the page.
+     *
+     * @throws Exception If the tasks cannot be listed.
+     */
+    public void testSkipsArchiveSegmentsOutsidePage() throws Exception {
+        TaskRepository repository = createArchived();
+        try {
+            Path archive = TestFiles.RESOURCES_PATH.resolve("archive");
+            Path first = archive.resolve("segment-000001.ndjson.gz");
+            Path second = archive.resolve("segment-000002.ndjson.gz");
+            byte[] bytes = Files.readAllBytes(first);
+            Files.write(first, new byte[]{1, 2, 3});
+            // Only task 10 of the second segment comes before task 9
+            Assert.assertEquals("10,9", list(repository,
+                    page(TaskQuery.SortField.ID, true, 0, 2)));
+
+            Files.write(first, bytes);
+            Files.write(second, new byte[]{1, 2, 3});
+            TaskQuery query = new TaskQuery();
+            query.setLimit(2);
+            // The first segment fills the page
+            Assert.assertEquals("2,4", list(repository, query));
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * Tests that a task added in write-behind mode, whose confirmed ID is
+     * taken by another process before it is written, is reported with the
+     * ID it is saved with.
+     *
+     * @throws Exception If the tasks cannot be added.
+     */
+    public void testReportsReassignedIdsOnFlush() throws Exception {
+        TestFiles.resetResources();
+        System.setProperty("tasktracker.writeBehind", "true");
+        System.setProperty("tasktracker.flushInterval", "3600000");
+        TaskRepository writeBehind;
+        try {
+            writeBehind = new TaskRepository();
+        } finally {
+            System.clearProperty("tasktracker.writeBehind");
+            System.clearProperty("tasktracker.flushInterval");
+        }
+        TaskRepository other = new TaskRepository();
+        try {
+            Assert.assertEquals(
+                    "Task \"first\" added successfully with ID 1\n",
+                    TestOutput.capture(() -> writeBehind.addTask("first")));
+            TestOutput.capture(() -> other.addTask("second"));
+            Assert.assertEquals(
+                    "ERROR: Task with ID 1 was saved with ID 2 instead\n",
+                    TestOutput.captureError(writeBehind::flush));
+        } finally {
+            writeBehind.close();
+            other.close();
+        }
+    }
+
+    /**
+     * Tests that an imported line with content after its JSON object is
+     * reported with its line number, and that the other lines are imported.
+     *
+     * @throws Exception If the tasks cannot be imported.
+     */
+    public void testRejectsTrailingContentOnImport() throws Exception {
+        TestFiles.resetResources();
+        Path directory = TestFiles.createDirectory();
+        TaskRepository repository = new TaskRepository();
+        try {
+            Path path = directory.resolve("tasks.ndjson");
+            Files.writeString(path, "{\"id\":1,\"description\":\"a\"}\n" +
+                    "{\"id\":2,\"description\":\"b\"} trailing\n" +
+                    "{\"id\":3,\"description\":\"c\"}\n");
+            String output = TestOutput.capture(() ->
+                    repository.importTasks(path, TaskPrinter.Format.JSON));
+            Assert.assertTrue(output, output.startsWith("ERROR: Line 2: " +
+                    "Malformed JSON at character 27: expected end of input"));
+            Assert.assertTrue(output,
+                    output.endsWith("2 tasks imported successfully\n"));
+            String listed = TestOutput.capture(() -> repository.listTasks(
+                    new TaskQuery(), TaskPrinter.Format.JSON));
+            Assert.assertTrue(listed, listed.contains("\"a\"") &&
+                    !listed.contains("\"b\"") && listed.contains("\"c\""));
+        } finally {
+            repository.close();
+            TestFiles.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.Comparator;
+
+/**
+ * Tests of TaskSelection.
+ */
+public class TaskSelectionTest {
+    private static final Comparator<Task> BY_CREATED = Comparator
+            .comparing(Task::getCreatedAt).thenComparingInt(Task::getId);
+
+    /**
+     * Offers tasks created in the order 3, 1, 4, 1, 5, 9, 2, 6 minutes after
+     * the base time, with IDs 1 to 8, to a selection.
+     *
+     * @param selection The selection.
+     * @return The selection.
+     */
+    private static TaskSelection offerAll(TaskSelection selection) {
+        int[] minutes = {3, 1, 4, 1, 5, 9, 2, 6};
+        for (int i = 0; i < minutes.length; i++) {
+            selection.offer(TestTasks.task(i + 1, "t", TaskStatus.TODO,
+                    minutes[i]));
+        }
+        return selection;
+    }
+
+    /**
+     * Tests that a limit of 0 selects nothing, and is full from the start
+     * without a last task.
+     */
+    public void testLimitZero() {
+        TaskSelection selection = new TaskSelection(BY_CREATED, 0);
+        Assert.assertTrue("Full", selection.isFull());
+        Assert.assertNull(selection.getLast());
+        offerAll(selection);
+        Assert.assertEquals(0, selection.toList().size());
+        Assert.assertNull(selection.getLast());
+    }
+
+    /**
+     * Tests that a limit of 1 keeps only the first task in order.
+     */
+    public void testLimitOne() {
+        TaskSelection selection = new TaskSelection(BY_CREATED, 1);
+        Assert.assertTrue("Not full", !selection.isFull());
+        offerAll(selection);
+        Assert.assertTrue("Full", selection.isFull());
+        Assert.assertEquals("2", TestTasks.ids(selection.toList()));
+        Assert.assertEquals(2, selection.getLast().getId());
+        Assert.assertEquals("6", TestTasks.ids(offerAll(new TaskSelection(
+                BY_CREATED.reversed(), 1)).toList()));
+    }
+
+    /**
+     * Tests that the first tasks are selected in order, ties broken by ID.
+     */
+    public void testSelectsFirstTasks() {
+        TaskSelection selection = offerAll(new TaskSelection(BY_CREATED, 4));
+        Assert.assertEquals("2,4,7,1", TestTasks.ids(selection.toList()));
+        Assert.assertEquals(1, selection.getLast().getId());
+    }
+
+    /**
+     * Tests that a limit beyond the number of tasks, or no limit, keeps them
+     * all in order.
+     */
+    public void testKeepsAllTasks() {
+        Assert.assertEquals("2,4,7,1,3,5,8,6", TestTasks.ids(offerAll(
+                new TaskSelection(BY_CREATED, 100)).toList()));
+        TaskSelection unlimited = offerAll(new TaskSelection(BY_CREATED, -1));
+        Assert.assertTrue("Never full", !unlimited.isFull());
+        Assert.assertNull(unlimited.getLast());
+        Assert.assertEquals("2,4,7,1,3,5,8,6",
+                TestTasks.ids(unlimited.toList()));
+    }
+}
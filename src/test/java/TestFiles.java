@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Creates and deletes the files the tests work on.
+ */
+public class TestFiles {
+    // Directory of the default task list, relative to the working directory
+    public static final Path RESOURCES_PATH = Path.of("src/main/resources");
+
+    /**
+     * Creates a new empty directory for a test.
+     *
+     * @return The directory.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Path createDirectory() throws IOException {
+        return Files.createTempDirectory("tasktracker-test");
+    }
+
+    /**
+     * Deletes a directory with everything in it, if it exists.
+     *
+     * @param directory The directory.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Deletes the tasks of every task list kept under the working directory,
+     * so that a test starts without tasks. The tasks of the project itself
+     * are never deleted.
+     *
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If the working directory is the project.
+     */
+    public static void resetResources() throws IOException {
+        if (Files.exists(Path.of("src/main/java"))) {
+            throw new IllegalStateException("The tests must be run from a " +
+                    "directory without tasks");
+        }
+        delete(RESOURCES_PATH);
+        Files.createDirectories(RESOURCES_PATH);
+    }
+}
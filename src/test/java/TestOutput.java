@@ -0,0 +1,51 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Captures what commands print to the standard output and error.
+ */
+public class TestOutput {
+
+    /**
+     * Runs a call and returns what it printed to the standard output, which
+     * is restored afterwards.
+     *
+     * @param call The call.
+     * @return The printed text.
+     * @throws Exception If the call fails.
+     */
+    public static String capture(Assert.Call call) throws Exception {
+        PrintStream standardOutput = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            call.run();
+        } finally {
+            System.out.flush();
+            System.setOut(standardOutput);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs a call and returns what it printed to the standard error, which
+     * is restored afterwards.
+     *
+     * @param call The call.
+     * @return The printed text.
+     * @throws Exception If the call fails.
+     */
+    public static String captureError(Assert.Call call) throws Exception {
+        PrintStream standardError = System.err;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            call.run();
+        } finally {
+            System.err.flush();
+            System.setErr(standardError);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs the tests, which need nothing but the JDK. Every public method whose
+ * name starts with "test" is a test, and runs on a new instance of its class.
+ * A test passes if it returns, and fails if it throws.
+ * <p>
+ * Some tests use a TaskRepository, which keeps its files under
+ * src/main/resources relative to the working directory, so the suite must be
+ * run from a directory without tasks. Test classes whose name contains the
+ * text of the "test.filter" system property are run, all of them by default.
+ */
+public class TestSuite {
+    private static final Class<?>[] TEST_CLASSES = {
+            JsonTaskReaderTest.class,
+            JsonTaskWriterTest.class,
+            TaskIndexTest.class,
+            TimeIndexTest.class,
+            TaskLogTest.class,
+            SearchIndexTest.class,
+            JsonTaskStorageTest.class,
+            BinaryTaskStorageTest.class,
+            TaskSelectionTest.class,
+            ChangeSetTest.class,
+            TaskRepositoryTest.class,
+            TaskRepositoryCacheTest.class,
+            TaskArchiveTest.class,
+    };
+    // Only test classes whose name contains this text are run
+    private static final String FILTER =
+            System.getProperty("test.filter", "");
+
+    /**
+     * Runs the tests and prints the outcome of each one, followed by the
+     * number of failures. The exit status is 1 if any test failed.
+     *
+     * @param args Not used.
+     * @throws Exception If a test class cannot be instantiated.
+     */
+    public static void main(String[] args) throws Exception {
+        int count = 0;
+        List<String> failures = new ArrayList<>();
+        for (Class<?> testClass : TEST_CLASSES) {
+            if (!testClass.getName().contains(FILTER)) {
+                continue;
+            }
+            for (Method method : testMethods(testClass)) {
+                String name = testClass.getName() + "." + method.getName();
+                count++;
+                try {
+                    method.invoke(testClass.getDeclaredConstructor()
+                            .newInstance());
+                    System.out.println("PASS " + name);
+                } catch (InvocationTargetException e) {
+                    System.out.println("FAIL " + name);
+                    e.getCause().printStackTrace(System.out);
+                    failures.add(name);
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.println(count + " tests, " + failures.size() + " failed");
+        for (String failure : failures) {
+            System.out.println("  " + failure);
+        }
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the test methods of a class, in order of name.
+     *
+     * @param testClass The test class.
+     * @return The public methods whose name starts with "test".
+     */
+    private static List<Method> testMethods(Class<?> testClass) {
+        List<Method> methods = new ArrayList<>();
+        for (Method method : testClass.getMethods()) {
+            if (method.getName().startsWith("test") &&
+                    method.getParameterCount() == 0 &&
+                    !Modifier.isStatic(method.getModifiers())) {
+                methods.add(method);
+            }
+        }
+        methods.sort(Comparator.comparing(Method::getName));
+        return methods;
+    }
+}
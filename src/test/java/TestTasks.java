@@ -0,0 +1,59 @@
+import java.time.LocalDateTime;
+
+/**
+ * Creates and compares the tasks the tests work on.
+ */
+public class TestTasks {
+    // Base of the timestamps of created tasks, so that tests are repeatable
+    public static final LocalDateTime BASE_TIME =
+            LocalDateTime.of(2024, 5, 1, 9, 0);
+
+    /**
+     * Creates a task.
+     *
+     * @param id          The task ID.
+     * @param description The task description.
+     * @param status      The task status.
+     * @param minutes     The minutes after the base time at which the task
+     *                    was created and last updated.
+     * @return The task.
+     */
+    public static Task task(int id, String description, TaskStatus status,
+                            int minutes) {
+        Task task = new Task(id, description);
+        task.setStatus(status);
+        task.setCreatedAt(BASE_TIME.plusMinutes(minutes));
+        task.setUpdatedAt(task.getCreatedAt());
+        return task;
+    }
+
+    /**
+     * Checks that two tasks have the same fields.
+     *
+     * @param expected The expected task.
+     * @param actual   The actual task.
+     */
+    public static void assertSameTask(Task expected, Task actual) {
+        Assert.assertTrue("Expected task " + expected.getId() +
+                " but was null", actual != null);
+        Assert.assertEquals(JsonConverter.taskToJsonObject(expected),
+                JsonConverter.taskToJsonObject(actual));
+    }
+
+    /**
+     * Returns the IDs of tasks, in order.
+     *
+     * @param tasks The tasks.
+     * @return The IDs.
+     */
+    public static String ids(Iterable<Task> tasks) {
+        StringBuilder ids = new StringBuilder();
+        for (Task task : tasks) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(task.getId());
+        }
+        return ids.toString();
+    }
+}
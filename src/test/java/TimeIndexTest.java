@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Tests of TimeIndex, against a sorted set of the same entries.
+ */
+public class TimeIndexTest {
+
+    /**
+     * Encodes an entry so that entries sort by time, then ID.
+     *
+     * @param time The timestamp.
+     * @param id   The task ID.
+     * @return The entry as a pair.
+     */
+    private static long[] entry(long time, int id) {
+        return new long[]{time, id};
+    }
+
+    /**
+     * Returns the IDs of the entries of a sorted set in a time range.
+     *
+     * @param entries The entries.
+     * @param from    The start of the range, inclusive.
+     * @param to      The end of the range, exclusive.
+     * @return The IDs, in order.
+     */
+    private static int[] between(TreeSet<long[]> entries, long from, long to) {
+        List<Integer> ids = new ArrayList<>();
+        for (long[] entry : entries) {
+            if (entry[0] >= from && entry[0] < to) {
+                ids.add((int) entry[1]);
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Reads all IDs of an iterator.
+     *
+     * @param iterator The iterator.
+     * @return The IDs, in order.
+     */
+    private static int[] toArray(PrimitiveIterator.OfInt iterator) {
+        List<Integer> ids = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.nextInt());
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Creates an empty set of entries sorted as a TimeIndex sorts them.
+     *
+     * @return The set.
+     */
+    private static TreeSet<long[]> newEntries() {
+        return new TreeSet<>((a, b) -> a[0] != b[0] ?
+                Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+    }
+
+    /**
+     * Tests that an empty index has no entries in any range.
+     */
+    public void testEmptyIndex() {
+        TimeIndex index = new TimeIndex();
+        Assert.assertEquals(0, index.between(0, Long.MAX_VALUE).length);
+        Assert.assertTrue("No entry", !index.iterator(false).hasNext());
+        Assert.assertTrue("No entry", !index.iterator(true).hasNext());
+        Assert.assertTrue("Nothing removed", !index.remove(1, 1));
+    }
+
+    /**
+     * Tests that entries with the same time are kept in order of ID, and that
+     * ranges include their start but not their end.
+     */
+    public void testOrdersByTimeThenId() {
+        TimeIndex index = new TimeIndex();
+        index.add(20, 3);
+        index.add(10, 5);
+        index.add(20, 1);
+        index.add(30, 2);
+        Assert.assertEquals("[5, 1, 3]",
+                Arrays.toString(index.between(10, 30)));
+        Assert.assertEquals("[]", Arrays.toString(index.between(30, 30)));
+        Assert.assertEquals("[]", Arrays.toString(index.between(30, 10)));
+        Assert.assertEquals("[2, 3, 1, 5]",
+                Arrays.toString(toArray(index.iterator(true))));
+    }
+
+    /**
+     * Tests random inserts and removals across many blocks, which splits,
+     * appends and removes blocks.
+     */
+    public void testMatchesSortedSetUnderRandomChanges() {
+        Random random = new Random(7);
+        TimeIndex index = new TimeIndex();
+        TreeSet<long[]> entries = newEntries();
+        List<long[]> added = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            if (!added.isEmpty() && random.nextInt(3) == 0) {
+                long[] entry = added.remove(random.nextInt(added.size()));
+                Assert.assertTrue("Removed", index.remove(entry[0],
+                        (int) entry[1]));
+                entries.remove(entry);
+            } else {
+                // Mostly in order, as timestamps are, with some out of order
+                long time = random.nextInt(10) == 0 ?
+                        random.nextInt(i + 1) : i;
+                long[] entry = entry(time, i);
+                index.add(time, i);
+                entries.add(entry);
+                added.add(entry);
+            }
+        }
+        Assert.assertTrue("Missing entry not removed", !index.remove(-1, 0));
+
+        Assert.assertEquals(entries.size(), index.size());
+        int[] ids = between(entries, Long.MIN_VALUE, Long.MAX_VALUE);
+        Assert.assertEquals(Arrays.toString(ids),
+                Arrays.toString(toArray(index.iterator(false))));
+        int[] reversed = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            reversed[i] = ids[ids.length - 1 - i];
+        }
+        Assert.assertEquals(Arrays.toString(reversed),
+                Arrays.toString(toArray(index.iterator(true))));
+        for (int i = 0; i < 100; i++) {
+            long from = random.nextInt(20000);
+            long to = from + random.nextInt(3000);
+            Assert.assertEquals(Arrays.toString(between(entries, from, to)),
+                    Arrays.toString(index.between(from, to)));
+        }
+    }
+
+    /**
+     * Tests that removing every entry leaves an empty index that can be used
+     * again.
+     */
+    public void testRemovesAllEntries() {
+        TimeIndex index = new TimeIndex();
+        for (int i = 0; i < 2000; i++) {
+            index.add(i / 3, i);
+        }
+        for (int i = 1999; i >= 0; i--) {
+            Assert.assertTrue("Removed", index.remove(i / 3, i));
+        }
+        Assert.assertEquals(0, index.size());
+        Assert.assertTrue("No entry", !index.iterator(false).hasNext());
+        index.add(5, 1);
+        Assert.assertEquals("[1]", Arrays.toString(index.between(0, 10)));
+    }
+}